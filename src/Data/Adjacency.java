@@ -0,0 +1,142 @@
+package Data;
+
+import java.util.Arrays;
+import java.util.List;
+
+// Immutable compressed-sparse-row snapshot of the undirected links of a Topology.
+// Device i's neighbors are neighbors[offsets[i]] .. neighbors[offsets[i + 1] - 1], sorted
+// and without duplicates, as indices into the same device order as the topology.
+// Iterating them allocates nothing:
+//     for (int k = adjacency.start(i); k < adjacency.end(i); k++) { int j = adjacency.neighbor(k); }
+public final class Adjacency {
+    private final Device[] devices;
+    private final int[] offsets;
+    private final int[] neighbors;
+
+    private Adjacency(Device[] devices, int[] offsets, int[] neighbors) {
+        this.devices = devices;
+        this.offsets = offsets;
+        this.neighbors = neighbors;
+    }
+
+    static Adjacency build(List<Device> deviceList) {
+        int n = deviceList.size();
+        Device[] devices = deviceList.toArray(new Device[0]);
+
+        // Collect directed links as declared by the model, both ends must belong to this topology
+        int[] from = new int[Math.max(16, n)];
+        int[] to = new int[from.length];
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            Device device = devices[i];
+            if (device instanceof Computer) {
+                int j = indexIn(((Computer) device).getLinkedDevice(), devices);
+                if (j >= 0 && j != i) {
+                    if (count == from.length) {
+                        from = Arrays.copyOf(from, count * 2);
+                        to = Arrays.copyOf(to, count * 2);
+                    }
+                    from[count] = i;
+                    to[count++] = j;
+                }
+            } else if (device instanceof Switch) {
+                for (Device linked : ((Switch) device).getLinkedDevices()) {
+                    int j = indexIn(linked, devices);
+                    if (j >= 0 && j != i) {
+                        if (count == from.length) {
+                            from = Arrays.copyOf(from, count * 2);
+                            to = Arrays.copyOf(to, count * 2);
+                        }
+                        from[count] = i;
+                        to[count++] = j;
+                    }
+                }
+            }
+        }
+
+        // Counting sort of both directions into rows
+        int[] offsets = new int[n + 1];
+        for (int e = 0; e < count; e++) {
+            offsets[from[e] + 1]++;
+            offsets[to[e] + 1]++;
+        }
+        for (int i = 0; i < n; i++) {
+            offsets[i + 1] += offsets[i];
+        }
+        int[] next = Arrays.copyOf(offsets, n);
+        int[] raw = new int[offsets[n]];
+        for (int e = 0; e < count; e++) {
+            raw[next[from[e]]++] = to[e];
+            raw[next[to[e]]++] = from[e];
+        }
+
+        // Sort each row and drop links declared from both ends
+        int[] neighbors = new int[raw.length];
+        int write = 0;
+        int rowStart = 0;
+        for (int i = 0; i < n; i++) {
+            int rowEnd = offsets[i + 1];
+            Arrays.sort(raw, rowStart, rowEnd);
+            offsets[i] = write;
+            for (int k = rowStart; k < rowEnd; k++) {
+                if (k == rowStart || raw[k] != raw[k - 1]) {
+                    neighbors[write++] = raw[k];
+                }
+            }
+            rowStart = rowEnd;
+        }
+        offsets[n] = write;
+        return new Adjacency(devices, offsets, write == neighbors.length ? neighbors : Arrays.copyOf(neighbors, write));
+    }
+
+    private static int indexIn(Device device, Device[] devices) {
+        if (device == null || device.index < 0 || device.index >= devices.length || devices[device.index] != device) {
+            return -1;
+        }
+        return device.index;
+    }
+
+    public int size() {
+        return devices.length;
+    }
+
+    // Number of undirected links
+    public int edgeCount() {
+        return neighbors.length / 2;
+    }
+
+    public Device device(int i) {
+        return devices[i];
+    }
+
+    // Index of the device in this snapshot, or -1 if it is not part of it
+    public int indexOf(Device device) {
+        return indexIn(device, devices);
+    }
+
+    public int start(int i) {
+        return offsets[i];
+    }
+
+    public int end(int i) {
+        return offsets[i + 1];
+    }
+
+    public int degree(int i) {
+        return offsets[i + 1] - offsets[i];
+    }
+
+    public int neighbor(int k) {
+        return neighbors[k];
+    }
+
+    // Position k of neighbor j in i's row, or -1 when they are not linked
+    public int find(int i, int j) {
+        int k = Arrays.binarySearch(neighbors, offsets[i], offsets[i + 1], j);
+        return k >= 0 ? k : -1;
+    }
+
+    public boolean isLinked(int i, int j) {
+        return find(i, j) >= 0;
+    }
+}
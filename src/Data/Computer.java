@@ -1,13 +1,15 @@
 package Data;
 
-import javax.swing.*;
-import java.util.List;
-
 public class Computer extends Device {
     private Device linkedDevice; // Store Device reference instead of String
 
-    public Computer(String name, String ipAddress, JLabel label, Device linkedDevice) {
-        super(name, ipAddress, label);
+    public Computer(String name, String ipAddress, Device linkedDevice) {
+        super(name, ipAddress);
+        this.linkedDevice = linkedDevice;
+    }
+
+    public Computer(String name, int ip, Device linkedDevice) {
+        super(name, ip);
         this.linkedDevice = linkedDevice;
     }
 
@@ -18,17 +20,15 @@ public class Computer extends Device {
     public void setLinkedDevice(Device newLinkedDevice) {
         // Remove this Computer from the old linked device's linkedDevices (if it’s a Switch)
         if (this.linkedDevice != null && this.linkedDevice instanceof Switch) {
-            ((Switch) this.linkedDevice).getLinkedDevices().remove(this);
+            ((Switch) this.linkedDevice).removeLinkedDevice(this);
         }
 
         this.linkedDevice = newLinkedDevice;
+        linksChanged();
 
         // Add this Computer to the new linked device's linkedDevices (if it’s a Switch)
         if (newLinkedDevice != null && newLinkedDevice instanceof Switch) {
-            List<Device> linkedDevices = ((Switch) newLinkedDevice).getLinkedDevices();
-            if (!linkedDevices.contains(this)) {
-                linkedDevices.add(this);
-            }
+            ((Switch) newLinkedDevice).addLinkedDevice(this);
         }
     }
 
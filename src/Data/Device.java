@@ -1,16 +1,25 @@
 package Data;
 
-import javax.swing.*;
-
 public abstract class Device {
     protected String name;
-    protected String ip;
-    public JLabel label;
+    protected int ip; // IPv4 address, see Ipv4
+    protected String ipText; // null unless the address is not IPv4, as hand-edited files may have
+    protected int x;
+    protected int y;
+
+    // Set by the Topology this device belongs to, index is its position in the device list
+    Topology owner;
+    int index = -1;
+    boolean dirty = true; // changed since the owner last handed it out through takeDirtyDevices()
+
+    public Device(String name, String ipAddress) {
+        this.name = name;
+        assignIp(ipAddress);
+    }
 
-    public Device(String name, String ipAddress, JLabel label) {
+    public Device(String name, int ip) {
         this.name = name;
-        this.ip = ipAddress;
-        this.label = label;
+        this.ip = ip;
     }
 
     public String getName() {
@@ -18,19 +27,116 @@ public abstract class Device {
     }
 
     public void setName(String name) {
+        String oldName = this.name;
         this.name = name;
+        markDirty();
+        if (owner != null) {
+            owner.deviceRenamed(this, oldName);
+        }
     }
 
+    // Formats the address on every call, prefer getIpValue() or appendIp() in bulk code
     public String getIp() {
+        return ipText != null ? ipText : Ipv4.format(ip);
+    }
+
+    public boolean isIpv4() {
+        return ipText == null;
+    }
+
+    // Only meaningful when isIpv4()
+    public int getIpValue() {
         return ip;
     }
 
+    public void appendIp(StringBuilder out) {
+        if (ipText != null) {
+            out.append(ipText);
+        } else {
+            Ipv4.append(ip, out);
+        }
+    }
+
     public void setIp(String ipAddress) {
-        this.ip = ipAddress;
+        int oldIp = this.ip;
+        String oldIpText = this.ipText;
+        assignIp(ipAddress);
+        ipChanged(oldIp, oldIpText);
+    }
+
+    public void setIp(int ip) {
+        int oldIp = this.ip;
+        String oldIpText = this.ipText;
+        this.ip = ip;
+        this.ipText = null;
+        ipChanged(oldIp, oldIpText);
+    }
+
+    private void assignIp(String ipAddress) {
+        long value = Ipv4.parse(ipAddress);
+        ip = value >= 0 ? (int) value : 0;
+        ipText = value >= 0 ? null : (ipAddress != null ? ipAddress : "");
+    }
+
+    private void ipChanged(int oldIp, String oldIpText) {
+        markDirty();
+        if (owner != null) {
+            owner.deviceIpChanged(this, oldIp, oldIpText);
+        }
+    }
+
+    public int getX() {
+        return x;
+    }
+
+    public int getY() {
+        return y;
+    }
+
+    public void setPosition(int x, int y) {
+        if (this.x == x && this.y == y) {
+            return;
+        }
+        int oldX = this.x;
+        int oldY = this.y;
+        this.x = x;
+        this.y = y;
+        markDirty();
+        if (owner != null) {
+            owner.deviceMoved(this, oldX, oldY);
+        }
+    }
+
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    protected void markDirty() {
+        if (!dirty) {
+            dirty = true;
+            if (owner != null) {
+                owner.deviceDirty(this);
+            }
+        }
+    }
+
+    // Something saved with the device changed that is neither a link nor a listed property
+    protected void changed() {
+        markDirty();
+        if (owner != null) {
+            owner.deviceChanged(this);
+        }
+    }
+
+    protected void linksChanged() {
+        markDirty();
+        if (owner != null) {
+            owner.linksChanged(this);
+        }
     }
 
     @Override
     public String toString() {
-        return "Name: " + name + ", IP: " + ip;
+        return "Name: " + name + ", IP: " + getIp();
     }
-}
\ No newline at end of file
+}
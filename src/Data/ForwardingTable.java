@@ -0,0 +1,347 @@
+package Data;
+
+import java.util.Arrays;
+
+// IPv4 routes, prefix/length -> int value, with longest-prefix-match lookup through a
+// path-compressed binary trie (PATRICIA). A node holds a prefix of any length; its children
+// continue with the bit right after that prefix, and chains of single-child nodes without a
+// route are never stored, so a lookup visits at most one node per branching bit.
+// Nodes live in one int array, four ints each, so a step of the walk touches one cache line:
+//     key      the prefix, bits past its length are zero
+//     info     (value + 1) << 6 | length, value + 1 is 0 where the node carries no route
+//     child0   node for a next bit of 0, -1 if none
+//     child1   node for a next bit of 1, -1 if none
+// Node 0 is the root, the zero-length prefix. Removed nodes go on a free list.
+// Large tables also keep a direct index on the first FRONT_BITS address bits giving the
+// deepest node that covers them and the best route above it, so a lookup skips the top of
+// the trie. It is rebuilt by the first lookup after a change.
+public final class ForwardingTable {
+    public static final int NO_ROUTE = -1;
+
+    private static final int STRIDE = 4;
+    private static final int KEY = 0;
+    private static final int INFO = 1;
+    private static final int CHILD0 = 2;
+    private static final int LENGTH_BITS = 6;
+    private static final int LENGTH_MASK = (1 << LENGTH_BITS) - 1;
+    private static final int FRONT_BITS = 16;
+    private static final int FRONT_MIN_ROUTES = 4096;
+
+    private int[] nodes = new int[STRIDE * 16];
+    private int nodeCount;
+    private int freeList = -1; // chained through child0
+    private int routes;
+
+    private int[] frontNode;
+    private int[] frontBest;
+    private boolean frontStale = true;
+
+    public interface RouteVisitor {
+        void visit(int prefix, int length, int value);
+    }
+
+    public ForwardingTable() {
+        newNode(0, 0, NO_ROUTE);
+    }
+
+    public static int mask(int length) {
+        return length == 0 ? 0 : -1 << (32 - length);
+    }
+
+    public int size() {
+        return routes;
+    }
+
+    // Adds or replaces the route. value must be 0 or more, bits of prefix past length are ignored.
+    public void put(int prefix, int length, int value) {
+        if (length < 0 || length > 32) {
+            throw new IllegalArgumentException("Prefix length must be between 0 and 32: " + length);
+        }
+        if (value < 0 || value >= (1 << (31 - LENGTH_BITS))) {
+            throw new IllegalArgumentException("Route value out of range: " + value);
+        }
+        prefix &= mask(length);
+        frontStale = true;
+        int node = 0;
+        while (true) {
+            int nodeLength = lengthOf(node);
+            if (nodeLength == length) {
+                if (valueOf(node) == NO_ROUTE) {
+                    routes++;
+                }
+                setValue(node, value);
+                return;
+            }
+            int slot = STRIDE * node + CHILD0 + bit(prefix, nodeLength);
+            int child = nodes[slot];
+            if (child < 0) {
+                int leaf = newNode(prefix, length, value);
+                nodes[slot] = leaf;
+                routes++;
+                return;
+            }
+            int childKey = nodes[STRIDE * child + KEY];
+            int childLength = lengthOf(child);
+            int common = Math.min(Integer.numberOfLeadingZeros(childKey ^ prefix), Math.min(childLength, length));
+            if (common == childLength) {
+                node = child; // the child's prefix covers ours, go on below it
+                continue;
+            }
+            if (common == length) {
+                // Ours covers the child's prefix, slot it in between
+                int inserted = newNode(prefix, length, value);
+                nodes[STRIDE * inserted + CHILD0 + bit(childKey, length)] = child;
+                nodes[slot] = inserted;
+                routes++;
+                return;
+            }
+            // The prefixes part ways after common bits, branch there
+            int branch = newNode(prefix & mask(common), common, NO_ROUTE);
+            int leaf = newNode(prefix, length, value);
+            nodes[STRIDE * branch + CHILD0 + bit(childKey, common)] = child;
+            nodes[STRIDE * branch + CHILD0 + bit(prefix, common)] = leaf;
+            nodes[slot] = branch;
+            routes++;
+            return;
+        }
+    }
+
+    // Value of the exact route, NO_ROUTE if there is none
+    public int get(int prefix, int length) {
+        int node = find(prefix & mask(length), length, null);
+        return node < 0 ? NO_ROUTE : valueOf(node);
+    }
+
+    // Value of the longest prefix containing address, NO_ROUTE if none does
+    public int lookup(int address) {
+        int best = NO_ROUTE;
+        int node = 0;
+        if (routes >= FRONT_MIN_ROUTES) {
+            if (frontStale) {
+                buildFront(); // renumbers the nodes
+            }
+            int slot = address >>> (32 - FRONT_BITS);
+            node = frontNode[slot];
+            best = frontBest[slot];
+        }
+        int[] nodes = this.nodes;
+        while (node >= 0) {
+            int base = STRIDE * node;
+            int info = nodes[base + INFO];
+            int length = info & LENGTH_MASK;
+            if (length != 0 && ((address ^ nodes[base + KEY]) >>> (32 - length)) != 0) {
+                break;
+            }
+            if (info >>> LENGTH_BITS != 0) {
+                best = (info >>> LENGTH_BITS) - 1;
+            }
+            if (length == 32) {
+                break;
+            }
+            node = nodes[base + CHILD0 + ((address >>> (31 - length)) & 1)];
+        }
+        return best;
+    }
+
+    public boolean remove(int prefix, int length) {
+        if (length < 0 || length > 32) {
+            return false;
+        }
+        int[] path = new int[34];
+        int node = find(prefix & mask(length), length, path);
+        if (node < 0 || valueOf(node) == NO_ROUTE) {
+            return false;
+        }
+        setValue(node, NO_ROUTE);
+        routes--;
+        frontStale = true;
+        // Drop nodes that no longer carry a route or branch, walking up while that repeats
+        for (int depth = path[33]; depth > 0 && node != 0; ) {
+            int parent = path[--depth];
+            int children = (child(node, 0) >= 0 ? 1 : 0) + (child(node, 1) >= 0 ? 1 : 0);
+            if (valueOf(node) != NO_ROUTE || children == 2) {
+                break;
+            }
+            int replacement = children == 0 ? -1 : (child(node, 0) >= 0 ? child(node, 0) : child(node, 1));
+            int slot = STRIDE * parent + (child(parent, 0) == node ? CHILD0 : CHILD0 + 1);
+            nodes[slot] = replacement;
+            freeNode(node);
+            if (replacement >= 0) {
+                break; // the parent keeps as many children as before
+            }
+            node = parent;
+        }
+        return true;
+    }
+
+    public void clear() {
+        frontNode = null;
+        frontBest = null;
+        frontStale = true;
+        nodeCount = 0;
+        freeList = -1;
+        routes = 0;
+        newNode(0, 0, NO_ROUTE);
+    }
+
+    // Visits the routes in address order, shorter prefixes first
+    public void forEach(RouteVisitor visitor) {
+        int[] stack = new int[66];
+        int top = 0;
+        stack[top++] = 0;
+        while (top > 0) {
+            int node = stack[--top];
+            if (valueOf(node) != NO_ROUTE) {
+                visitor.visit(nodes[STRIDE * node + KEY], lengthOf(node), valueOf(node));
+            }
+            for (int bit = 1; bit >= 0; bit--) {
+                if (child(node, bit) >= 0) {
+                    stack[top++] = child(node, bit);
+                }
+            }
+        }
+    }
+
+    private void buildFront() {
+        compact();
+        if (frontNode == null) {
+            frontNode = new int[1 << FRONT_BITS];
+            frontBest = new int[1 << FRONT_BITS];
+        }
+        // Preorder, so nodes deeper down overwrite the slots their ancestors filled
+        int[] stackNode = new int[2 * 34];
+        int[] stackBest = new int[2 * 34];
+        int top = 0;
+        stackNode[top] = 0;
+        stackBest[top++] = NO_ROUTE;
+        while (top > 0) {
+            int node = stackNode[--top];
+            int best = stackBest[top];
+            int length = lengthOf(node);
+            int first = nodes[STRIDE * node + KEY] >>> (32 - FRONT_BITS);
+            if (length > FRONT_BITS) {
+                // Children of one node differ above FRONT_BITS here, the slot is this node's alone
+                frontNode[first] = node;
+                frontBest[first] = best;
+                continue;
+            }
+            Arrays.fill(frontNode, first, first + (1 << (FRONT_BITS - length)), node);
+            Arrays.fill(frontBest, first, first + (1 << (FRONT_BITS - length)), best);
+            if (length == FRONT_BITS) {
+                continue;
+            }
+            int below = valueOf(node) != NO_ROUTE ? valueOf(node) : best;
+            for (int bit = 0; bit < 2; bit++) {
+                if (child(node, bit) >= 0) {
+                    stackNode[top] = child(node, bit);
+                    stackBest[top++] = below;
+                }
+            }
+        }
+        frontStale = false;
+    }
+
+    // Renumbers the nodes in depth-first order, so the nodes a lookup walks below a front slot
+    // sit next to each other instead of wherever they were allocated
+    private void compact() {
+        int[] compacted = new int[Math.max(STRIDE * 16, STRIDE * (nodeCount + nodeCount / 4))];
+        int[] stack = new int[2 * 34];
+        int[] parentSlot = new int[2 * 34];
+        int top = 0;
+        stack[top] = 0;
+        parentSlot[top++] = -1;
+        int count = 0;
+        while (top > 0) {
+            int node = stack[--top];
+            int slot = parentSlot[top];
+            int base = STRIDE * count;
+            compacted[base + KEY] = nodes[STRIDE * node + KEY];
+            compacted[base + INFO] = nodes[STRIDE * node + INFO];
+            compacted[base + CHILD0] = -1;
+            compacted[base + CHILD0 + 1] = -1;
+            if (slot >= 0) {
+                compacted[slot] = count;
+            }
+            for (int bit = 1; bit >= 0; bit--) {
+                if (child(node, bit) >= 0) {
+                    stack[top] = child(node, bit);
+                    parentSlot[top++] = base + CHILD0 + bit;
+                }
+            }
+            count++;
+        }
+        nodes = compacted;
+        nodeCount = count;
+        freeList = -1;
+    }
+
+    // Node holding exactly prefix/length or -1. With path given, the nodes above it are
+    // stored there from the root down and their count in path[33].
+    private int find(int prefix, int length, int[] path) {
+        int node = 0;
+        int depth = 0;
+        while (node >= 0) {
+            int nodeLength = lengthOf(node);
+            if (nodeLength > length || ((prefix ^ nodes[STRIDE * node + KEY]) & mask(nodeLength)) != 0) {
+                return -1;
+            }
+            if (nodeLength == length) {
+                if (path != null) {
+                    path[33] = depth;
+                }
+                return node;
+            }
+            if (path != null) {
+                path[depth++] = node;
+            }
+            node = child(node, bit(prefix, nodeLength));
+        }
+        return -1;
+    }
+
+    private int newNode(int key, int length, int value) {
+        int node;
+        if (freeList >= 0) {
+            node = freeList;
+            freeList = nodes[STRIDE * node + CHILD0];
+        } else {
+            if (STRIDE * (nodeCount + 1) > nodes.length) {
+                nodes = Arrays.copyOf(nodes, nodes.length * 2);
+            }
+            node = nodeCount++;
+        }
+        int base = STRIDE * node;
+        nodes[base + KEY] = key;
+        nodes[base + INFO] = (value + 1) << LENGTH_BITS | length;
+        nodes[base + CHILD0] = -1;
+        nodes[base + CHILD0 + 1] = -1;
+        return node;
+    }
+
+    private void freeNode(int node) {
+        nodes[STRIDE * node + CHILD0] = freeList;
+        freeList = node;
+    }
+
+    private int child(int node, int bit) {
+        return nodes[STRIDE * node + CHILD0 + bit];
+    }
+
+    private int lengthOf(int node) {
+        return nodes[STRIDE * node + INFO] & LENGTH_MASK;
+    }
+
+    private int valueOf(int node) {
+        return (nodes[STRIDE * node + INFO] >>> LENGTH_BITS) - 1;
+    }
+
+    private void setValue(int node, int value) {
+        int base = STRIDE * node;
+        nodes[base + INFO] = (value + 1) << LENGTH_BITS | (nodes[base + INFO] & LENGTH_MASK);
+    }
+
+    // Bit of value right after the first index bits, index 0 is the most significant
+    private static int bit(int value, int index) {
+        return (value >>> (31 - index)) & 1;
+    }
+}
@@ -0,0 +1,103 @@
+package Data;
+
+// Open-addressing map from IPv4 addresses to devices for the topology's IP index, so keys are
+// never boxed. Linear probing, a null value marks a free slot, removal shifts the following
+// entries back instead of leaving tombstones.
+final class IpDeviceMap {
+    private int[] keys = new int[16];
+    private Device[] values = new Device[16];
+    private int mask = 15;
+    private int size;
+
+    Device get(int key) {
+        for (int slot = slotOf(key); values[slot] != null; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                return values[slot];
+            }
+        }
+        return null;
+    }
+
+    // Returns the device already stored under key, or null after storing value
+    Device putIfAbsent(int key, Device value) {
+        int slot = slotOf(key);
+        for (; values[slot] != null; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                return values[slot];
+            }
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size * 2 > values.length) {
+            grow();
+        }
+        return null;
+    }
+
+    void put(int key, Device value) {
+        int slot = slotOf(key);
+        for (; values[slot] != null; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                values[slot] = value;
+                return;
+            }
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size * 2 > values.length) {
+            grow();
+        }
+    }
+
+    // Removes the entry only if it maps key to value
+    boolean remove(int key, Device value) {
+        int slot = slotOf(key);
+        for (; values[slot] != null; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                if (values[slot] != value) {
+                    return false;
+                }
+                deleteAt(slot);
+                size--;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void deleteAt(int hole) {
+        // Move back every following entry whose probe sequence passes the hole
+        for (int slot = (hole + 1) & mask; values[slot] != null; slot = (slot + 1) & mask) {
+            int home = slotOf(keys[slot]);
+            if (((slot - home) & mask) >= ((slot - hole) & mask)) {
+                keys[hole] = keys[slot];
+                values[hole] = values[slot];
+                hole = slot;
+            }
+        }
+        values[hole] = null;
+    }
+
+    private void grow() {
+        int[] oldKeys = keys;
+        Device[] oldValues = values;
+        keys = new int[oldKeys.length * 2];
+        values = new Device[oldValues.length * 2];
+        mask = values.length - 1;
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] != null) {
+                int slot = slotOf(oldKeys[i]);
+                while (values[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private int slotOf(int key) {
+        int h = key * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+}
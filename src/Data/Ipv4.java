@@ -0,0 +1,62 @@
+package Data;
+
+// IPv4 addresses as plain ints, the 32 bits in network order, compared unsigned.
+// Parsing and formatting work on the characters directly and allocate nothing, except
+// format() which returns a new String. Addresses are written zero-padded
+// (010.000.000.001), the form the dialogs have always produced and the files contain.
+public final class Ipv4 {
+    public static final long INVALID = -1;
+
+    private Ipv4() {
+    }
+
+    // The address as an unsigned value, or INVALID if text is not four dot-separated
+    // decimal segments of one to three digits each, 0 to 255
+    public static long parse(CharSequence text) {
+        return text == null ? INVALID : parse(text, 0, text.length());
+    }
+
+    public static long parse(CharSequence text, int start, int end) {
+        long value = 0;
+        int segments = 0;
+        int segment = 0;
+        int digits = 0;
+        for (int i = start; i <= end; i++) {
+            char c = i < end ? text.charAt(i) : '.';
+            if (c == '.') {
+                if (digits == 0 || segment > 255 || ++segments > 4) {
+                    return INVALID;
+                }
+                value = (value << 8) | segment;
+                segment = 0;
+                digits = 0;
+            } else if (c >= '0' && c <= '9' && digits < 3) {
+                segment = segment * 10 + (c - '0');
+                digits++;
+            } else {
+                return INVALID;
+            }
+        }
+        return segments == 4 ? value : INVALID;
+    }
+
+    public static void append(int ip, StringBuilder out) {
+        for (int shift = 24; shift >= 0; shift -= 8) {
+            int segment = (ip >>> shift) & 0xFF;
+            out.append((char) ('0' + segment / 100)).append((char) ('0' + segment / 10 % 10)).append((char) ('0' + segment % 10));
+            if (shift > 0) {
+                out.append('.');
+            }
+        }
+    }
+
+    public static String format(int ip) {
+        StringBuilder out = new StringBuilder(15);
+        append(ip, out);
+        return out.toString();
+    }
+
+    public static int compare(int a, int b) {
+        return Integer.compareUnsigned(a, b);
+    }
+}
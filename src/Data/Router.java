@@ -0,0 +1,129 @@
+package Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Layer-3 device. It links like a switch, each linked device being one interface, but
+// forwards by the destination IP: the longest prefix in its forwarding table that contains
+// the address names the linked device to hand the packet to.
+public class Router extends Switch {
+    private final ForwardingTable forwardingTable = new ForwardingTable();
+    private final List<Device> nextHops = new ArrayList<>(); // forwarding table values index this
+
+    public interface RouteVisitor {
+        void visit(int prefix, int length, Device nextHop);
+    }
+
+    public Router(String name, String ip) {
+        super(name, ip);
+    }
+
+    public Router(String name, int ip) {
+        super(name, ip);
+    }
+
+    // Adds the route or replaces its next hop
+    public void addRoute(int prefix, int length, Device nextHop) {
+        if (nextHop == null) {
+            throw new IllegalArgumentException("A route needs a next hop");
+        }
+        int hop = nextHops.indexOf(nextHop);
+        if (hop < 0) {
+            hop = nextHops.size();
+            nextHops.add(nextHop);
+        }
+        forwardingTable.put(prefix, length, hop);
+        if (nextHops.size() > forwardingTable.size()) {
+            compactNextHops(); // the route replaced may have been the last through its next hop
+        }
+        changed();
+    }
+
+    public boolean removeRoute(int prefix, int length) {
+        if (!forwardingTable.remove(prefix, length)) {
+            return false;
+        }
+        if (nextHops.size() > forwardingTable.size()) {
+            compactNextHops(); // some next hop has no route left
+        }
+        changed();
+        return true;
+    }
+
+    public void clearRoutes() {
+        if (forwardingTable.size() == 0) {
+            return;
+        }
+        forwardingTable.clear();
+        nextHops.clear();
+        changed();
+    }
+
+    // Next hop for the destination address, null when no route contains it
+    public Device lookup(int destination) {
+        int hop = forwardingTable.lookup(destination);
+        return hop == ForwardingTable.NO_ROUTE ? null : nextHops.get(hop);
+    }
+
+    public Device getNextHop(int prefix, int length) {
+        int hop = forwardingTable.get(prefix, length);
+        return hop == ForwardingTable.NO_ROUTE ? null : nextHops.get(hop);
+    }
+
+    public int getRouteCount() {
+        return forwardingTable.size();
+    }
+
+    // In address order, shorter prefixes first
+    public void forEachRoute(RouteVisitor visitor) {
+        forwardingTable.forEach((prefix, length, hop) -> visitor.visit(prefix, length, nextHops.get(hop)));
+    }
+
+    // A route can only lead out of an interface, drop those through devices no longer linked
+    // before the listeners hear of the change, so they never see the stale routes
+    @Override
+    protected void linksChanged() {
+        if (forwardingTable.size() > 0) {
+            List<Device> linked = getLinkedDevices();
+            int[] stale = new int[2 * forwardingTable.size()];
+            int[] count = {0};
+            forwardingTable.forEach((prefix, length, hop) -> {
+                if (!linked.contains(nextHops.get(hop))) {
+                    stale[count[0]++] = prefix;
+                    stale[count[0]++] = length;
+                }
+            });
+            for (int i = 0; i < count[0]; i += 2) {
+                forwardingTable.remove(stale[i], stale[i + 1]);
+            }
+            if (count[0] > 0) {
+                compactNextHops();
+            }
+        }
+        super.linksChanged();
+    }
+
+    // Renumbers the next hops still used by a route, dropping the rest
+    private void compactNextHops() {
+        int size = forwardingTable.size();
+        int[] prefixes = new int[size];
+        int[] lengths = new int[size];
+        Device[] hops = new Device[size];
+        int[] count = {0};
+        forwardingTable.forEach((prefix, length, hop) -> {
+            prefixes[count[0]] = prefix;
+            lengths[count[0]] = length;
+            hops[count[0]++] = nextHops.get(hop);
+        });
+        forwardingTable.clear();
+        nextHops.clear();
+        for (int i = 0; i < size; i++) {
+            int hop = nextHops.indexOf(hops[i]);
+            if (hop < 0) {
+                hop = nextHops.size();
+                nextHops.add(hops[i]);
+            }
+            forwardingTable.put(prefixes[i], lengths[i], hop);
+        }
+    }
+}
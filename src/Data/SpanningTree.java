@@ -0,0 +1,629 @@
+package Data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Rapid spanning tree over the switches of a topology, in its converged state: the root
+// bridge, the role of every port and which ports block, so the active links form a tree in
+// each connected group of switches. Routers are not bridges, and ports towards computers or
+// routers are edge ports that always forward.
+// Bridge IDs are the switch IPs, lowest wins, ties going to the switch added first. Every link
+// has the same path cost, so a switch's root port is the one towards the neighbor nearest the
+// root, the lowest bridge ID among equals. On each switch-to-switch link the end nearer the
+// root, or with the lower ID at the same distance, is designated; a link that is nobody's
+// root port blocks at its other end.
+// Kept up to date through the topology's listener events, touching only the switches whose
+// distance or root port a change affects: a link that is no shortcut and not on the tree only
+// sets its own ports, a shortcut or a join of two groups relaxes distances outwards from it,
+// and a cut tree link re-attaches the subtree below it. Before the first query, and for a new
+// root, whole groups are recomputed in one breadth-first pass each.
+public class SpanningTree implements TopologyListener {
+    public static final int PORT_PATH_COST = 20_000; // 1 Gbit/s
+
+    private static final int LISTED = 1;  // this end lists the other among its linked devices
+    private static final int BLOCKED = 2; // this end's port blocks
+    private static final int UNREACHED = Integer.MAX_VALUE;
+
+    public enum PortRole {
+        ROOT,
+        DESIGNATED,
+        ALTERNATE
+    }
+
+    // Links are kept at both ends: peers[i] is the other end, reverse[i] this bridge's position
+    // in the peer's arrays and flags[i] this end's LISTED and BLOCKED bits
+    private static class Bridge {
+        final Switch device;
+        final long order;
+        int ip;
+        Bridge[] peers = new Bridge[4];
+        int[] reverse = new int[4];
+        byte[] flags = new byte[4];
+        int degree;
+
+        Bridge root = this;
+        Bridge parent; // root port's peer, null on the root
+        int distance;  // links to the root
+        int stamp;
+        int mark;    // syncLinks' listed marker
+        int reached; // reattach's done marker
+        boolean pending;
+        boolean removed;
+
+        Bridge(Switch device, long order) {
+            this.device = device;
+            this.order = order;
+            this.ip = device.getIpValue();
+        }
+
+        int indexOf(Bridge peer) {
+            for (int i = 0; i < degree; i++) {
+                if (peers[i] == peer) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    private final Map<Device, Bridge> bridges = new HashMap<>();
+    // Switches listed by a bridge before they were added, with the bridges listing them
+    private final Map<Device, List<Bridge>> unresolved = new HashMap<>();
+    private final List<Bridge> pending = new ArrayList<>();
+    private final List<Bridge> work = new ArrayList<>();
+    private final List<Bridge> around = new ArrayList<>();
+    private final List<Bridge> frontier = new ArrayList<>();
+    private long nextOrder;
+    private int stamp;
+    private int marker;
+    private int blockedPorts;
+    private boolean changed;
+
+    public SpanningTree(Topology topology) {
+        for (Device device : topology.getDevices()) {
+            if (isBridge(device)) {
+                bridges.put(device, new Bridge((Switch) device, nextOrder++));
+            }
+        }
+        for (Bridge bridge : bridges.values()) {
+            syncLinks(bridge);
+            markPending(bridge);
+        }
+    }
+
+    public static boolean isBridge(Device device) {
+        return device instanceof Switch && !(device instanceof Router);
+    }
+
+    // Root bridge of the switch's group, null if device is not a bridge
+    public Switch getRoot(Device device) {
+        Bridge bridge = settled(device);
+        return bridge == null ? null : bridge.root.device;
+    }
+
+    // Neighbor the switch reaches the root through, null on the root and for non-bridges
+    public Device getRootPort(Device device) {
+        Bridge bridge = settled(device);
+        return bridge == null || bridge.parent == null ? null : bridge.parent.device;
+    }
+
+    public int getRootPathCost(Device device) {
+        Bridge bridge = settled(device);
+        return bridge == null ? 0 : bridge.distance * PORT_PATH_COST;
+    }
+
+    // Role of the switch's port towards peer, null if device is not a bridge
+    public PortRole getPortRole(Device device, Device peer) {
+        Bridge bridge = settled(device);
+        if (bridge == null) {
+            return null;
+        }
+        Bridge other = bridges.get(peer);
+        int i = other == null ? -1 : bridge.indexOf(other);
+        if (i < 0) {
+            return PortRole.DESIGNATED; // edge port
+        }
+        if (bridge.parent == other) {
+            return PortRole.ROOT;
+        }
+        return (bridge.flags[i] & BLOCKED) != 0 ? PortRole.ALTERNATE : PortRole.DESIGNATED;
+    }
+
+    public boolean isBlocked(Device device, Device peer) {
+        return device != null && getBlockedEnd(device, peer) == device;
+    }
+
+    // End of the link between a and b whose port blocks, null if the link forwards
+    public Device getBlockedEnd(Device a, Device b) {
+        Bridge x = settled(a);
+        Bridge y = bridges.get(b);
+        if (x == null || y == null) {
+            return null;
+        }
+        if (y.degree < x.degree) {
+            Bridge swap = x;
+            x = y;
+            y = swap; // search the shorter list
+        }
+        int i = x.indexOf(y);
+        if (i < 0) {
+            return null;
+        }
+        if ((x.flags[i] & BLOCKED) != 0) {
+            return x.device;
+        }
+        return (y.flags[x.reverse[i]] & BLOCKED) != 0 ? y.device : null;
+    }
+
+    public int getBlockedPortCount() {
+        settle();
+        return blockedPorts;
+    }
+
+    public int getBridgeCount() {
+        return bridges.size();
+    }
+
+    // True once after port roles changed, for views that draw them
+    public boolean takeChanged() {
+        settle();
+        boolean result = changed;
+        changed = false;
+        return result;
+    }
+
+    @Override
+    public void deviceAdded(Device device) {
+        if (!isBridge(device) || bridges.containsKey(device)) {
+            return;
+        }
+        Bridge bridge = new Bridge((Switch) device, nextOrder++);
+        bridges.put(device, bridge);
+        syncLinks(bridge);
+        List<Bridge> listing = unresolved.remove(device);
+        if (listing != null) {
+            for (Bridge other : listing) {
+                if (!other.removed) {
+                    syncLinks(other);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void deviceRemoved(Device device) {
+        Bridge bridge = bridges.remove(device);
+        if (bridge == null) {
+            return;
+        }
+        // The topology unlinks a device before removing it, this is only a safety net
+        while (bridge.degree > 0) {
+            removeLink(bridge, bridge.degree - 1);
+        }
+        bridge.removed = true;
+    }
+
+    @Override
+    public void deviceRenamed(Device device, String oldName) {
+    }
+
+    @Override
+    public void deviceChanged(Device device) {
+        Bridge bridge = bridges.get(device);
+        if (bridge == null) {
+            return;
+        }
+        if (bridge.ip != device.getIpValue()) {
+            bridge.ip = device.getIpValue();
+            idChanged(bridge);
+        }
+        syncLinks(bridge);
+    }
+
+    @Override
+    public void deviceMoved(Device device, int oldX, int oldY) {
+    }
+
+    // Brings the bridge's links in line with the devices its switch lists. A link between two
+    // switches exists while either of them lists the other.
+    private void syncLinks(Bridge bridge) {
+        int mark = ++marker;
+        for (Device linked : bridge.device.getLinkedDevices()) {
+            Bridge peer = bridges.get(linked);
+            if (peer != null && peer != bridge) {
+                peer.mark = mark;
+            } else if (peer == null && isBridge(linked)) {
+                unresolved.computeIfAbsent(linked, k -> new ArrayList<>(1)).add(bridge);
+            }
+        }
+        for (int i = bridge.degree - 1; i >= 0; i--) {
+            Bridge peer = bridge.peers[i];
+            if (peer.mark == mark) {
+                bridge.flags[i] |= LISTED;
+                peer.mark = 0; // has its link
+            } else {
+                bridge.flags[i] &= ~LISTED;
+                if ((peer.flags[bridge.reverse[i]] & LISTED) == 0) {
+                    removeLink(bridge, i);
+                }
+            }
+        }
+        for (Device linked : bridge.device.getLinkedDevices()) {
+            Bridge peer = bridges.get(linked);
+            if (peer != null && peer.mark == mark) {
+                peer.mark = 0;
+                addLink(bridge, peer);
+            }
+        }
+    }
+
+    private void addLink(Bridge a, Bridge b) {
+        int i = append(a, b, LISTED);
+        int j = append(b, a, 0);
+        a.reverse[i] = j;
+        b.reverse[j] = i;
+        if (!pending.isEmpty()) {
+            markPending(a); // b is in a's group from now on, one seed covers both
+        } else if (a.root != b.root) {
+            // Joins two groups, the one with the higher root ID hangs off the other now
+            boolean aWins = compareIds(a.root, b.root) < 0;
+            Bridge loser = aWins ? b : a;
+            detachGroup(loser);
+            relax(aWins ? a : b, loser);
+        } else if (isShortcut(a, b)) {
+            relax(a, b);
+        } else if (isShortcut(b, a)) {
+            relax(b, a);
+        } else {
+            assignPorts(a, i);
+        }
+    }
+
+    private void removeLink(Bridge a, int i) {
+        Bridge b = a.peers[i];
+        int j = a.reverse[i];
+        if (((a.flags[i] | b.flags[j]) & BLOCKED) != 0) {
+            blockedPorts--;
+            changed = true;
+        }
+        boolean onTree = a.parent == b || b.parent == a;
+        Bridge child = a.parent == b ? a : b;
+        cutEntry(a, i);
+        cutEntry(b, j);
+        if (!pending.isEmpty()) {
+            markPending(a);
+            markPending(b);
+        } else if (onTree) {
+            reattach(child);
+        }
+    }
+
+    private int append(Bridge bridge, Bridge peer, int flags) {
+        if (bridge.degree == bridge.peers.length) {
+            int capacity = bridge.degree * 2;
+            bridge.peers = Arrays.copyOf(bridge.peers, capacity);
+            bridge.reverse = Arrays.copyOf(bridge.reverse, capacity);
+            bridge.flags = Arrays.copyOf(bridge.flags, capacity);
+        }
+        int i = bridge.degree++;
+        bridge.peers[i] = peer;
+        bridge.flags[i] = (byte) flags;
+        return i;
+    }
+
+    // Removes entry i of one end, moving the last entry into its place
+    private void cutEntry(Bridge bridge, int i) {
+        int last = --bridge.degree;
+        if (i != last) {
+            bridge.peers[i] = bridge.peers[last];
+            bridge.reverse[i] = bridge.reverse[last];
+            bridge.flags[i] = bridge.flags[last];
+            bridge.peers[i].reverse[bridge.reverse[i]] = i;
+        }
+        bridge.peers[last] = null;
+    }
+
+    private void idChanged(Bridge bridge) {
+        if (!pending.isEmpty() || bridge.root == bridge || compareIds(bridge, bridge.root) < 0) {
+            markPending(bridge); // the group may get another root
+            return;
+        }
+        // Distances stay, only choices between equals may turn: root ports of the switches
+        // one link further out and designated ends of this bridge's links
+        int stamp = ++this.stamp;
+        work.clear();
+        bridge.stamp = stamp;
+        work.add(bridge);
+        for (int i = 0; i < bridge.degree; i++) {
+            Bridge peer = bridge.peers[i];
+            if (peer.distance == bridge.distance + 1) {
+                peer.stamp = stamp;
+                work.add(peer);
+                chooseParent(peer);
+            }
+        }
+        for (Bridge affected : work) {
+            assignAllPorts(affected);
+        }
+    }
+
+    // Whether a new link from 'from' gives 'to' a better root port than it has
+    private boolean isShortcut(Bridge from, Bridge to) {
+        if (to.parent == null) {
+            return false;
+        }
+        int distance = from.distance + 1;
+        return distance < to.distance || (distance == to.distance && compareIds(from, to.parent) < 0);
+    }
+
+    // Marks the bridge's group unreached, ahead of it joining another through a new link
+    private void detachGroup(Bridge bridge) {
+        Bridge root = bridge.root;
+        int stamp = ++this.stamp;
+        work.clear();
+        bridge.stamp = stamp;
+        work.add(bridge);
+        for (int k = 0; k < work.size(); k++) {
+            Bridge member = work.get(k);
+            member.distance = UNREACHED;
+            for (int i = 0; i < member.degree; i++) {
+                Bridge peer = member.peers[i];
+                if (peer.stamp != stamp && peer.root == root) {
+                    peer.stamp = stamp;
+                    work.add(peer);
+                }
+            }
+        }
+    }
+
+    // 'to' is now reached through 'from' at least as well as before, passes shorter distances
+    // on outwards breadth first and fixes root ports and ports around everything it changed
+    private void relax(Bridge from, Bridge to) {
+        int stamp = ++this.stamp;
+        work.clear();
+        to.distance = from.distance + 1;
+        to.root = from.root;
+        to.stamp = stamp;
+        work.add(to);
+        for (int k = 0; k < work.size(); k++) {
+            Bridge bridge = work.get(k);
+            for (int i = 0; i < bridge.degree; i++) {
+                Bridge peer = bridge.peers[i];
+                if (bridge.distance + 1 < peer.distance) {
+                    peer.distance = bridge.distance + 1;
+                    peer.root = bridge.root;
+                    peer.stamp = stamp;
+                    work.add(peer);
+                }
+            }
+        }
+        repairAround(stamp);
+    }
+
+    // The root link of 'child' is gone: everything that reached the root through it finds
+    // its way again from the bridges around it, parts left without one form groups of their own
+    private void reattach(Bridge child) {
+        int stamp = ++this.stamp;
+        work.clear();
+        child.stamp = stamp;
+        child.parent = null;
+        work.add(child);
+        for (int k = 0; k < work.size(); k++) {
+            Bridge bridge = work.get(k);
+            for (int i = 0; i < bridge.degree; i++) {
+                Bridge peer = bridge.peers[i];
+                if (peer.parent == bridge && peer.stamp != stamp) {
+                    peer.stamp = stamp;
+                    work.add(peer);
+                }
+            }
+        }
+
+        // Entry points: the best distance each subtree bridge gets straight from outside
+        for (Bridge bridge : work) {
+            int best = UNREACHED;
+            for (int i = 0; i < bridge.degree; i++) {
+                Bridge peer = bridge.peers[i];
+                if (peer.stamp != stamp && peer.distance + 1 < best) {
+                    best = peer.distance + 1;
+                    bridge.root = peer.root;
+                }
+            }
+            bridge.distance = best;
+        }
+        work.sort((x, y) -> Integer.compare(x.distance, y.distance));
+
+        // Unit-weight shortest paths from several starts: merge the sorted entry points with
+        // the breadth-first frontier, both come out in order of distance
+        int done = ++marker;
+        frontier.clear();
+        int next = 0;
+        int head = 0;
+        while (true) {
+            Bridge bridge;
+            if (head < frontier.size() && (next >= work.size() || frontier.get(head).distance <= work.get(next).distance)) {
+                bridge = frontier.get(head++);
+            } else if (next < work.size() && work.get(next).distance != UNREACHED) {
+                bridge = work.get(next++);
+            } else {
+                break;
+            }
+            if (bridge.reached == done) {
+                continue;
+            }
+            bridge.reached = done;
+            for (int i = 0; i < bridge.degree; i++) {
+                Bridge peer = bridge.peers[i];
+                if (peer.stamp == stamp && peer.reached != done && bridge.distance + 1 < peer.distance) {
+                    peer.distance = bridge.distance + 1;
+                    peer.root = bridge.root;
+                    frontier.add(peer);
+                }
+            }
+        }
+
+        // What no path reaches has split off
+        List<Bridge> cutOff = null;
+        for (Bridge bridge : work) {
+            if (bridge.distance == UNREACHED) {
+                if (cutOff == null) {
+                    cutOff = new ArrayList<>();
+                }
+                cutOff.add(bridge);
+            }
+        }
+        if (cutOff == null) {
+            repairAround(stamp);
+            return;
+        }
+        work.removeIf(bridge -> bridge.distance == UNREACHED);
+        repairAround(stamp);
+        int groups = ++this.stamp;
+        for (Bridge bridge : cutOff) {
+            if (bridge.stamp != groups) {
+                recompute(bridge, groups);
+            }
+        }
+    }
+
+    // After the bridges in work, all carrying stamp, got new distances: picks their root ports
+    // and those of the bridges one link further out, then sets every port of all of them
+    private void repairAround(int stamp) {
+        around.clear();
+        for (Bridge bridge : work) {
+            chooseParent(bridge);
+            for (int i = 0; i < bridge.degree; i++) {
+                Bridge peer = bridge.peers[i];
+                if (peer.stamp != stamp && peer.distance == bridge.distance + 1) {
+                    peer.stamp = stamp;
+                    around.add(peer);
+                }
+            }
+        }
+        for (Bridge bridge : around) {
+            Bridge parent = bridge.parent;
+            chooseParent(bridge);
+            if (bridge.parent != parent) {
+                assignAllPorts(bridge);
+            }
+        }
+        for (Bridge bridge : work) {
+            assignAllPorts(bridge);
+        }
+    }
+
+    private void markPending(Bridge bridge) {
+        if (!bridge.pending) {
+            bridge.pending = true;
+            pending.add(bridge);
+        }
+    }
+
+    private Bridge settled(Device device) {
+        settle();
+        return bridges.get(device);
+    }
+
+    private void settle() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        int stamp = ++this.stamp;
+        for (Bridge seed : pending) {
+            seed.pending = false;
+            if (!seed.removed && seed.stamp != stamp) {
+                recompute(seed, stamp);
+            }
+        }
+        pending.clear();
+    }
+
+    // Elects the root of the seed's group and sets every port in it
+    private void recompute(Bridge seed, int stamp) {
+        // Gather the group, the lowest ID is its root
+        work.clear();
+        seed.stamp = stamp;
+        work.add(seed);
+        Bridge root = seed;
+        for (int k = 0; k < work.size(); k++) {
+            Bridge bridge = work.get(k);
+            if (compareIds(bridge, root) < 0) {
+                root = bridge;
+            }
+            bridge.distance = UNREACHED;
+            for (int i = 0; i < bridge.degree; i++) {
+                Bridge peer = bridge.peers[i];
+                if (peer.stamp != stamp) {
+                    peer.stamp = stamp;
+                    work.add(peer);
+                }
+            }
+        }
+
+        // Breadth first from the root, the group ends up in order of distance
+        root.distance = 0;
+        work.clear();
+        work.add(root);
+        for (int k = 0; k < work.size(); k++) {
+            Bridge bridge = work.get(k);
+            bridge.root = root;
+            for (int i = 0; i < bridge.degree; i++) {
+                Bridge peer = bridge.peers[i];
+                if (peer.distance == UNREACHED) {
+                    peer.distance = bridge.distance + 1;
+                    work.add(peer);
+                }
+            }
+        }
+        for (Bridge bridge : work) {
+            chooseParent(bridge);
+        }
+        for (Bridge bridge : work) {
+            assignAllPorts(bridge);
+        }
+    }
+
+    private static void chooseParent(Bridge bridge) {
+        Bridge best = null;
+        for (int i = 0; i < bridge.degree; i++) {
+            Bridge peer = bridge.peers[i];
+            if (peer.distance == bridge.distance - 1 && (best == null || compareIds(peer, best) < 0)) {
+                best = peer;
+            }
+        }
+        bridge.parent = best;
+    }
+
+    private void assignAllPorts(Bridge bridge) {
+        for (int i = 0; i < bridge.degree; i++) {
+            assignPorts(bridge, i);
+        }
+    }
+
+    private void assignPorts(Bridge a, int i) {
+        Bridge b = a.peers[i];
+        int j = a.reverse[i];
+        boolean aBlocked = false;
+        boolean bBlocked = false;
+        if (a.parent != b && b.parent != a) {
+            boolean aDesignated = a.distance < b.distance || (a.distance == b.distance && compareIds(a, b) < 0);
+            aBlocked = !aDesignated;
+            bBlocked = aDesignated;
+        }
+        boolean wasBlocked = ((a.flags[i] | b.flags[j]) & BLOCKED) != 0;
+        if (aBlocked != ((a.flags[i] & BLOCKED) != 0) || bBlocked != ((b.flags[j] & BLOCKED) != 0)) {
+            a.flags[i] = (byte) (aBlocked ? a.flags[i] | BLOCKED : a.flags[i] & ~BLOCKED);
+            b.flags[j] = (byte) (bBlocked ? b.flags[j] | BLOCKED : b.flags[j] & ~BLOCKED);
+            blockedPorts += (aBlocked || bBlocked ? 1 : 0) - (wasBlocked ? 1 : 0);
+            changed = true;
+        }
+    }
+
+    private static int compareIds(Bridge x, Bridge y) {
+        int result = Integer.compareUnsigned(x.ip, y.ip);
+        return result != 0 ? result : Long.compare(x.order, y.order);
+    }
+}
@@ -1,25 +1,49 @@
 package Data;
 
-import javax.swing.*;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.stream.Collectors;
 
 public class Switch extends Device {
-    private List<Device> linkedDevices;
+    private final List<Device> linkedDevices;
+    private final List<Device> readOnlyLinkedDevices;
 
-    public Switch(String name, String ip, JLabel label) {
-        super(name, ip, label);
+    public Switch(String name, String ip) {
+        super(name, ip);
         this.linkedDevices = new ArrayList<>();
+        this.readOnlyLinkedDevices = Collections.unmodifiableList(linkedDevices);
+    }
+
+    public Switch(String name, int ip) {
+        super(name, ip);
+        this.linkedDevices = new ArrayList<>();
+        this.readOnlyLinkedDevices = Collections.unmodifiableList(linkedDevices);
     }
 
     public List<Device> getLinkedDevices() {
-        return new ArrayList<>(linkedDevices); // Return a copy to prevent external modification
+        return readOnlyLinkedDevices; // Read-only view, no copy per call
     }
 
     public void setLinkedDevices(List<Device> newLinkedDevices) {
-        // Safely replace the linkedDevices list without iteration
-        this.linkedDevices = new ArrayList<>(newLinkedDevices != null ? newLinkedDevices : new ArrayList<>());
+        // Copy first, the caller may pass our own view
+        List<Device> copy = newLinkedDevices != null ? new ArrayList<>(newLinkedDevices) : new ArrayList<>();
+        linkedDevices.clear();
+        linkedDevices.addAll(copy);
+        linksChanged();
+    }
+
+    void addLinkedDevice(Device device) {
+        if (!linkedDevices.contains(device)) {
+            linkedDevices.add(device);
+            linksChanged();
+        }
+    }
+
+    void removeLinkedDevice(Device device) {
+        if (linkedDevices.remove(device)) {
+            linksChanged();
+        }
     }
 
     public String getLinkedDevicesNames() {
@@ -27,4 +51,4 @@ public class Switch extends Device {
                 .map(Device::getName)
                 .collect(Collectors.joining(", "));
     }
-}
\ No newline at end of file
+}
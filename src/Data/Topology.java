@@ -0,0 +1,233 @@
+package Data;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Headless network model: the devices with their names, IPs, positions and links.
+// Views (the Swing window, simulations, batch tools) read from it but it never depends on them.
+public class Topology {
+    private final List<Device> devices = new ArrayList<>();
+    private final List<Device> readOnlyDevices = Collections.unmodifiableList(devices);
+    private Adjacency adjacency; // null when links changed since the last snapshot
+
+    // Lookup indexes, the first device with a given name or IP wins like a linear scan would
+    private final Map<String, Device> devicesByName = new HashMap<>();
+    private final IpDeviceMap devicesByIp = new IpDeviceMap();
+    private final Map<String, Device> devicesByIpText = new HashMap<>(); // addresses that are not IPv4
+    private boolean duplicateNames;
+    private boolean duplicateIps;
+
+    private final List<TopologyListener> listeners = new ArrayList<>();
+
+    // Devices whose dirty flag went up since the last takeDirtyDevices(), so savers only touch those
+    private List<Device> dirtyDevices = new ArrayList<>();
+
+    public List<Device> getDevices() {
+        return readOnlyDevices;
+    }
+
+    public int size() {
+        return devices.size();
+    }
+
+    public void addDevice(Device device) {
+        if (device.owner != null) {
+            throw new IllegalArgumentException("Device already belongs to a topology: " + device.getName());
+        }
+        device.owner = this;
+        device.index = devices.size();
+        devices.add(device);
+        indexName(device);
+        indexIp(device);
+        adjacency = null;
+        device.dirty = true;
+        dirtyDevices.add(device);
+        for (TopologyListener listener : listeners) {
+            listener.deviceAdded(device);
+        }
+    }
+
+    public void removeDevice(Device device) {
+        if (device.owner != this) {
+            return;
+        }
+        // Unlink both directions so no other device keeps a reference to it
+        Adjacency snapshot = getAdjacency();
+        int i = device.index;
+        Device[] neighbors = new Device[snapshot.degree(i)];
+        for (int k = snapshot.start(i), n = 0; k < snapshot.end(i); k++) {
+            neighbors[n++] = snapshot.device(snapshot.neighbor(k));
+        }
+        for (Device neighbor : neighbors) {
+            if (neighbor instanceof Computer && ((Computer) neighbor).getLinkedDevice() == device) {
+                ((Computer) neighbor).setLinkedDevice(null);
+            } else if (neighbor instanceof Switch) {
+                ((Switch) neighbor).removeLinkedDevice(device);
+            }
+        }
+        if (device instanceof Computer) {
+            ((Computer) device).setLinkedDevice(null);
+        } else if (device instanceof Switch) {
+            ((Switch) device).setLinkedDevices(new ArrayList<>());
+        }
+
+        devices.remove(i);
+        for (int j = i; j < devices.size(); j++) {
+            devices.get(j).index = j;
+        }
+        device.owner = null;
+        device.index = -1;
+        unindexName(device, device.getName());
+        unindexIp(device, device.ip, device.ipText);
+        adjacency = null;
+        for (TopologyListener listener : listeners) {
+            listener.deviceRemoved(device);
+        }
+    }
+
+    public void addListener(TopologyListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(TopologyListener listener) {
+        listeners.remove(listener);
+    }
+
+    public Device findDeviceByName(String name) {
+        return name == null ? null : devicesByName.get(name);
+    }
+
+    public Device findDeviceByIp(String ip) {
+        long value = Ipv4.parse(ip);
+        if (value >= 0) {
+            return devicesByIp.get((int) value);
+        }
+        return ip == null ? null : devicesByIpText.get(ip);
+    }
+
+    public Device findDeviceByIp(int ip) {
+        return devicesByIp.get(ip);
+    }
+
+    // Position of the device in getDevices() and in the adjacency snapshot, -1 if not in this topology
+    public int indexOf(Device device) {
+        return device.owner == this ? device.index : -1;
+    }
+
+    // CSR snapshot of the links, rebuilt on the first read after a link, add or remove;
+    // moves and renames keep the current snapshot
+    public Adjacency getAdjacency() {
+        if (adjacency == null) {
+            adjacency = Adjacency.build(devices);
+        }
+        return adjacency;
+    }
+
+    // Devices changed since the last call, in the order they first changed, and clears their
+    // dirty flags. Devices removed in the meantime are left out.
+    public List<Device> takeDirtyDevices() {
+        List<Device> taken = dirtyDevices;
+        dirtyDevices = new ArrayList<>();
+        int kept = 0;
+        for (Device device : taken) {
+            if (device.owner == this && device.dirty) {
+                device.dirty = false;
+                taken.set(kept++, device);
+            }
+        }
+        return taken.subList(0, kept);
+    }
+
+    void deviceDirty(Device device) {
+        dirtyDevices.add(device);
+    }
+
+    void deviceChanged(Device device) {
+        for (TopologyListener listener : listeners) {
+            listener.deviceChanged(device);
+        }
+    }
+
+    void linksChanged(Device device) {
+        adjacency = null;
+        for (TopologyListener listener : listeners) {
+            listener.deviceChanged(device);
+        }
+    }
+
+    void deviceRenamed(Device device, String oldName) {
+        unindexName(device, oldName);
+        indexName(device);
+        // Neighbours refer to the device by name in their own records
+        Adjacency snapshot = getAdjacency();
+        for (int k = snapshot.start(device.index), end = snapshot.end(device.index); k < end; k++) {
+            snapshot.device(snapshot.neighbor(k)).markDirty();
+        }
+        for (TopologyListener listener : listeners) {
+            listener.deviceRenamed(device, oldName);
+        }
+    }
+
+    void deviceIpChanged(Device device, int oldIp, String oldIpText) {
+        unindexIp(device, oldIp, oldIpText);
+        indexIp(device);
+        for (TopologyListener listener : listeners) {
+            listener.deviceChanged(device);
+        }
+    }
+
+    void deviceMoved(Device device, int oldX, int oldY) {
+        for (TopologyListener listener : listeners) {
+            listener.deviceMoved(device, oldX, oldY);
+        }
+    }
+
+    private void indexName(Device device) {
+        if (device.getName() != null && devicesByName.putIfAbsent(device.getName(), device) != null) {
+            duplicateNames = true;
+        }
+    }
+
+    private void indexIp(Device device) {
+        Device previous = device.ipText == null
+                ? devicesByIp.putIfAbsent(device.ip, device)
+                : devicesByIpText.putIfAbsent(device.ipText, device);
+        if (previous != null) {
+            duplicateIps = true;
+        }
+    }
+
+    private void unindexName(Device device, String name) {
+        if (name != null && devicesByName.remove(name, device) && duplicateNames) {
+            // Hand-edited files may repeat a name, let the next holder take over
+            for (Device other : devices) {
+                if (other != device && name.equals(other.getName())) {
+                    devicesByName.put(name, other);
+                    break;
+                }
+            }
+        }
+    }
+
+    private void unindexIp(Device device, int ip, String ipText) {
+        boolean removed = ipText == null ? devicesByIp.remove(ip, device) : devicesByIpText.remove(ipText, device);
+        if (removed && duplicateIps) {
+            for (Device other : devices) {
+                if (other == device) {
+                    continue;
+                }
+                if (ipText == null ? other.ipText == null && other.ip == ip : ipText.equals(other.ipText)) {
+                    if (ipText == null) {
+                        devicesByIp.put(ip, other);
+                    } else {
+                        devicesByIpText.put(ipText, other);
+                    }
+                    break;
+                }
+            }
+        }
+    }
+}
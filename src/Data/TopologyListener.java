@@ -0,0 +1,15 @@
+package Data;
+
+// Notified synchronously, on the thread that mutates the topology, after each change
+public interface TopologyListener {
+    void deviceAdded(Device device);
+
+    void deviceRemoved(Device device);
+
+    void deviceRenamed(Device device, String oldName);
+
+    // IP, links or routes changed
+    void deviceChanged(Device device);
+
+    void deviceMoved(Device device, int oldX, int oldY);
+}
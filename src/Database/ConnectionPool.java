@@ -0,0 +1,119 @@
+package Database;
+
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+// Bounded pool of JDBC connections. Connections are opened on demand, at most maxSize at
+// once, and go back to the pool after use instead of being closed, so only the first query on
+// each pays the connection handshake. A connection that sat idle longer than
+// VALIDATE_AFTER_MILLIS is checked with isValid() before it is handed out again, and one that
+// failed with a connection error is closed instead of returned. Borrowers wait while all
+// connections are in use, up to BORROW_TIMEOUT_MILLIS.
+public class ConnectionPool {
+    private static final long VALIDATE_AFTER_MILLIS = 30_000;
+    private static final int VALIDATE_TIMEOUT_SECONDS = 2;
+    private static final long BORROW_TIMEOUT_MILLIS = 10_000;
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final int maxSize;
+
+    private final ArrayDeque<PooledConnection> idle = new ArrayDeque<>();
+    private int open; // idle and borrowed, plus those being opened
+    private boolean closed;
+
+    public ConnectionPool(String url, String user, String password, int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Pool size must be positive: " + maxSize);
+        }
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.maxSize = maxSize;
+    }
+
+    PooledConnection borrow() throws SQLException {
+        long deadline = System.currentTimeMillis() + BORROW_TIMEOUT_MILLIS;
+        while (true) {
+            PooledConnection connection;
+            synchronized (this) {
+                while (true) {
+                    if (closed) {
+                        throw new SQLException("Connection pool is closed");
+                    }
+                    connection = idle.pollLast(); // the most recently used is the likeliest to be alive
+                    if (connection != null) {
+                        break;
+                    }
+                    if (open < maxSize) {
+                        open++; // reserve the slot, the connection is opened outside the lock
+                        break;
+                    }
+                    long wait = deadline - System.currentTimeMillis();
+                    if (wait <= 0) {
+                        throw new SQLException("Timed out waiting for a database connection");
+                    }
+                    try {
+                        wait(wait);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new SQLException("Interrupted while waiting for a database connection", e);
+                    }
+                }
+            }
+            if (connection == null) {
+                try {
+                    return new PooledConnection(DriverManager.getConnection(url, user, password));
+                } catch (SQLException | RuntimeException e) {
+                    freeSlot();
+                    throw e;
+                }
+            }
+            if (connection.getIdleMillis() < VALIDATE_AFTER_MILLIS || connection.isValid(VALIDATE_TIMEOUT_SECONDS)) {
+                return connection;
+            }
+            discard(connection); // went stale while idle, try the next one
+        }
+    }
+
+    void release(PooledConnection connection) {
+        synchronized (this) {
+            if (!closed) {
+                connection.markIdle();
+                idle.addLast(connection);
+                notifyAll();
+                return;
+            }
+        }
+        discard(connection);
+    }
+
+    // For a connection that must not be used again
+    void discard(PooledConnection connection) {
+        connection.close();
+        freeSlot();
+    }
+
+    public void close() {
+        List<PooledConnection> toClose;
+        synchronized (this) {
+            closed = true;
+            toClose = new ArrayList<>(idle);
+            idle.clear();
+            open -= toClose.size();
+            notifyAll();
+        }
+        for (PooledConnection connection : toClose) {
+            connection.close();
+        }
+    }
+
+    private synchronized void freeSlot() {
+        open--;
+        notifyAll();
+    }
+}
@@ -0,0 +1,84 @@
+package Database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// A connection owned by a ConnectionPool, with the statements prepared on it kept by their SQL
+// so running the same query again skips the parse and plan on the server. The least recently
+// used statement is closed once more than STATEMENT_CACHE_SIZE are open.
+final class PooledConnection {
+    private static final int STATEMENT_CACHE_SIZE = 32;
+
+    private final Connection connection;
+    private final Map<String, PreparedStatement> statements = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+            if (size() <= STATEMENT_CACHE_SIZE) {
+                return false;
+            }
+            closeQuietly(eldest.getValue());
+            return true;
+        }
+    };
+    private long idleSince = System.currentTimeMillis();
+
+    PooledConnection(Connection connection) {
+        this.connection = connection;
+    }
+
+    // A cached statement has its parameters cleared, set them all before executing
+    PreparedStatement prepare(String sql) throws SQLException {
+        PreparedStatement statement = statements.get(sql);
+        if (statement == null) {
+            statement = connection.prepareStatement(sql);
+            statements.put(sql, statement);
+        } else {
+            statement.clearParameters();
+        }
+        return statement;
+    }
+
+    // For transactions and metadata, statements prepared on it directly are not cached
+    Connection getConnection() {
+        return connection;
+    }
+
+    long getIdleMillis() {
+        return System.currentTimeMillis() - idleSince;
+    }
+
+    void markIdle() {
+        idleSince = System.currentTimeMillis();
+    }
+
+    boolean isValid(int timeoutSeconds) {
+        try {
+            return connection.isValid(timeoutSeconds);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    void close() {
+        for (PreparedStatement statement : statements.values()) {
+            closeQuietly(statement);
+        }
+        statements.clear();
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            // Going away anyway
+        }
+    }
+
+    private static void closeQuietly(PreparedStatement statement) {
+        try {
+            statement.close();
+        } catch (SQLException e) {
+            // The connection may already be gone
+        }
+    }
+}
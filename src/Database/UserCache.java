@@ -0,0 +1,73 @@
+package Database;
+
+import Data.User;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+// USB serial -> user lookups remembered for ttlMillis, including serials no user has, so the
+// login window's once-a-second check of a plugged-in drive stays off the database. Writes
+// through the repository invalidate what they touch; the TTL bounds how long changes made
+// elsewhere, by another program on the same database, go unseen.
+// Users are copied in and out, callers may modify what they get.
+final class UserCache {
+    private final long ttlMillis;
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private volatile long generation; // bumped by every invalidation
+
+    static final class Entry {
+        private final User user; // null: the serial belongs to no user
+        private final long expiresAt;
+
+        Entry(User user, long expiresAt) {
+            this.user = user;
+            this.expiresAt = expiresAt;
+        }
+
+        User getUser() {
+            return user == null ? null : copy(user);
+        }
+    }
+
+    UserCache(long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+    }
+
+    // null when the serial is not cached or its entry expired
+    Entry get(String usbSerialNumber) {
+        Entry entry = entries.get(usbSerialNumber);
+        if (entry != null && System.currentTimeMillis() >= entry.expiresAt) {
+            entries.remove(usbSerialNumber, entry);
+            return null;
+        }
+        return entry;
+    }
+
+    // Take before reading the database, pass to put()
+    long getGeneration() {
+        return generation;
+    }
+
+    // Skipped if an invalidation came in since the value was read, it may be stale already
+    void put(String usbSerialNumber, User user, long readGeneration) {
+        Entry entry = new Entry(user == null ? null : copy(user), System.currentTimeMillis() + ttlMillis);
+        synchronized (this) {
+            if (generation == readGeneration) {
+                entries.put(usbSerialNumber, entry);
+            }
+        }
+    }
+
+    synchronized void invalidate(String usbSerialNumber) {
+        generation++;
+        entries.remove(usbSerialNumber);
+    }
+
+    synchronized void invalidateAll() {
+        generation++;
+        entries.clear();
+    }
+
+    private static User copy(User user) {
+        return new User(user.getUsbSerialNumber(), user.getUserName(), user.getPassword(), user.getRole());
+    }
+}
@@ -0,0 +1,289 @@
+package Database;
+
+import Data.User;
+
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+// The users table, shared by the login and administrator windows over one connection pool.
+// The database comes from the system properties below, by default the MySQL server the
+// windows always used. Pointing the URL at an embedded database, for example
+// -Dnetworksimulator.db.url=jdbc:h2:./users_data/users with its driver on the class path,
+// runs without a server; a database without a users table gets one on first use.
+// Lookups by USB serial are cached for CACHE_TTL_MILLIS, writes through here invalidate them.
+public class UserRepository {
+    public static final String URL_PROPERTY = "networksimulator.db.url";
+    public static final String USER_PROPERTY = "networksimulator.db.user";
+    public static final String PASSWORD_PROPERTY = "networksimulator.db.password";
+
+    // rewriteBatchedStatements sends a batch as multi-row INSERTs instead of one round trip per row
+    private static final String DEFAULT_URL = "jdbc:mysql://localhost:3306/networksimulatorusers?rewriteBatchedStatements=true";
+    private static final int POOL_SIZE = 4;
+    private static final long CACHE_TTL_MILLIS = 60_000;
+    private static final String COLUMNS = "usbSerialNum, userName, password, role";
+
+    private static final String SELECT_BY_SERIAL = "SELECT " + COLUMNS + " FROM users WHERE usbSerialNum = ?";
+    private static final String SELECT_ALL = "SELECT " + COLUMNS + " FROM users";
+    private static final String SELECT_BY_NAME = "SELECT " + COLUMNS + " FROM users WHERE userName = ?";
+    private static final String INSERT = "INSERT INTO users (" + COLUMNS + ") VALUES (?, ?, ?, ?)";
+    private static final String UPDATE = "UPDATE users SET usbSerialNum = ?, userName = ?, password = ?, role = ? WHERE usbSerialNum = ?";
+    private static final String DELETE_BY_NAME = "DELETE FROM users WHERE userName = ?";
+
+    private static UserRepository shared;
+
+    private final ConnectionPool pool;
+    private final UserCache serialCache = new UserCache(CACHE_TTL_MILLIS);
+    private volatile boolean schemaChecked;
+
+    interface Work<T> {
+        T run(PooledConnection connection) throws SQLException;
+    }
+
+    public UserRepository(ConnectionPool pool) {
+        this.pool = pool;
+    }
+
+    public static synchronized UserRepository shared() {
+        if (shared == null) {
+            ConnectionPool pool = new ConnectionPool(
+                    System.getProperty(URL_PROPERTY, DEFAULT_URL),
+                    System.getProperty(USER_PROPERTY, "root"),
+                    System.getProperty(PASSWORD_PROPERTY, "root"),
+                    POOL_SIZE);
+            Runtime.getRuntime().addShutdownHook(new Thread(pool::close));
+            shared = new UserRepository(pool);
+        }
+        return shared;
+    }
+
+    // null if no user has the serial. Both answers are cached.
+    public User findBySerial(String usbSerialNumber) throws SQLException {
+        UserCache.Entry cached = serialCache.get(usbSerialNumber);
+        if (cached != null) {
+            return cached.getUser();
+        }
+        long generation = serialCache.getGeneration();
+        User user = withConnection(connection -> {
+            PreparedStatement statement = connection.prepare(SELECT_BY_SERIAL);
+            statement.setString(1, usbSerialNumber);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() ? readUser(resultSet) : null;
+            }
+        });
+        serialCache.put(usbSerialNumber, user, generation);
+        return user;
+    }
+
+    public List<User> findAll() throws SQLException {
+        return withConnection(connection -> {
+            List<User> users = new ArrayList<>();
+            try (ResultSet resultSet = connection.prepare(SELECT_ALL).executeQuery()) {
+                while (resultSet.next()) {
+                    users.add(readUser(resultSet));
+                }
+            }
+            return users;
+        });
+    }
+
+    public User findByUserName(String userName) throws SQLException {
+        return withConnection(connection -> {
+            PreparedStatement statement = connection.prepare(SELECT_BY_NAME);
+            statement.setString(1, userName);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() ? readUser(resultSet) : null;
+            }
+        });
+    }
+
+    // Keyset paging in user name order: up to limit users after afterUserName, null for the
+    // first page. role null matches any role, search matches the start of the user name or
+    // USB serial, null or empty matches all.
+    public List<User> findPage(String role, String search, String afterUserName, int limit) throws SQLException {
+        String sql = "SELECT " + COLUMNS + " FROM users" + where(role, search, afterUserName) + " ORDER BY userName LIMIT ?";
+        return withConnection(connection -> {
+            PreparedStatement statement = connection.prepare(sql);
+            int index = bindWhere(statement, role, search, afterUserName);
+            statement.setInt(index, limit);
+            List<User> users = new ArrayList<>();
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    users.add(readUser(resultSet));
+                }
+            }
+            return users;
+        });
+    }
+
+    // The user name offset rows past afterUserName in the order of findPage, null past the end.
+    // Reads only the name index, for starting a page far ahead without loading the rows between.
+    public String findUserNameAfter(String role, String search, String afterUserName, int offset) throws SQLException {
+        String sql = "SELECT userName FROM users" + where(role, search, afterUserName) + " ORDER BY userName LIMIT 1 OFFSET ?";
+        return withConnection(connection -> {
+            PreparedStatement statement = connection.prepare(sql);
+            int index = bindWhere(statement, role, search, afterUserName);
+            statement.setInt(index, offset);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() ? resultSet.getString(1) : null;
+            }
+        });
+    }
+
+    // Users findPage would return across all pages
+    public int count(String role, String search) throws SQLException {
+        String sql = "SELECT COUNT(*) FROM users" + where(role, search, null);
+        return withConnection(connection -> {
+            PreparedStatement statement = connection.prepare(sql);
+            bindWhere(statement, role, search, null);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                resultSet.next();
+                return resultSet.getInt(1);
+            }
+        });
+    }
+
+    public void add(User user) throws SQLException {
+        try {
+            withConnection(connection -> {
+                PreparedStatement statement = connection.prepare(INSERT);
+                setUser(statement, user);
+                return statement.executeUpdate();
+            });
+        } finally {
+            serialCache.invalidate(user.getUsbSerialNumber());
+        }
+    }
+
+    // Stores the user over the row that had oldUsbSerialNumber
+    public void update(String oldUsbSerialNumber, User user) throws SQLException {
+        try {
+            withConnection(connection -> {
+                PreparedStatement statement = connection.prepare(UPDATE);
+                setUser(statement, user);
+                statement.setString(5, oldUsbSerialNumber);
+                return statement.executeUpdate();
+            });
+        } finally {
+            serialCache.invalidate(oldUsbSerialNumber);
+            serialCache.invalidate(user.getUsbSerialNumber());
+        }
+    }
+
+    public void deleteByUserName(String userName) throws SQLException {
+        try {
+            withConnection(connection -> {
+                PreparedStatement statement = connection.prepare(DELETE_BY_NAME);
+                statement.setString(1, userName);
+                return statement.executeUpdate();
+            });
+        } finally {
+            serialCache.invalidateAll(); // the serial is not known here
+        }
+    }
+
+    // For users changed behind the repository's back, in the database directly
+    public void invalidateCache() {
+        serialCache.invalidateAll();
+    }
+
+    // Runs work on a pooled connection. Connection errors (SQL state class 08) close it,
+    // anything else hands it back.
+    <T> T withConnection(Work<T> work) throws SQLException {
+        PooledConnection connection = pool.borrow();
+        T result;
+        try {
+            if (!schemaChecked) {
+                ensureSchema(connection);
+            }
+            result = work.run(connection);
+        } catch (SQLException e) {
+            if (e.getSQLState() != null && e.getSQLState().startsWith("08")) {
+                pool.discard(connection);
+            } else {
+                pool.release(connection);
+            }
+            throw e;
+        } catch (RuntimeException e) {
+            pool.discard(connection);
+            throw e;
+        }
+        pool.release(connection);
+        return result;
+    }
+
+    private static String where(String role, String search, String afterUserName) {
+        StringBuilder sql = new StringBuilder(" WHERE 1 = 1");
+        if (afterUserName != null) {
+            sql.append(" AND userName > ?");
+        }
+        if (role != null) {
+            sql.append(" AND role = ?");
+        }
+        if (search != null && !search.isEmpty()) {
+            sql.append(" AND (userName LIKE ? ESCAPE '!' OR usbSerialNum LIKE ? ESCAPE '!')");
+        }
+        return sql.toString();
+    }
+
+    // Returns the index of the next parameter
+    private static int bindWhere(PreparedStatement statement, String role, String search, String afterUserName) throws SQLException {
+        int index = 1;
+        if (afterUserName != null) {
+            statement.setString(index++, afterUserName);
+        }
+        if (role != null) {
+            statement.setString(index++, role);
+        }
+        if (search != null && !search.isEmpty()) {
+            String prefix = search.replace("!", "!!").replace("%", "!%").replace("_", "!_") + "%";
+            statement.setString(index++, prefix);
+            statement.setString(index++, prefix);
+        }
+        return index;
+    }
+
+    static User readUser(ResultSet resultSet) throws SQLException {
+        return new User(
+                resultSet.getString("usbSerialNum"),
+                resultSet.getString("userName"),
+                resultSet.getString("password"),
+                resultSet.getString("role"));
+    }
+
+    static void setUser(PreparedStatement statement, User user) throws SQLException {
+        statement.setString(1, user.getUsbSerialNumber());
+        statement.setString(2, user.getUserName());
+        statement.setString(3, user.getPassword());
+        statement.setString(4, user.getRole());
+    }
+
+    private synchronized void ensureSchema(PooledConnection connection) throws SQLException {
+        if (schemaChecked) {
+            return;
+        }
+        DatabaseMetaData metaData = connection.getConnection().getMetaData();
+        boolean exists = false;
+        for (String name : new String[]{"users", "USERS"}) { // unquoted names are stored in either case
+            try (ResultSet tables = metaData.getTables(null, null, name, new String[]{"TABLE"})) {
+                exists |= tables.next();
+            }
+        }
+        if (!exists) {
+            try (Statement statement = connection.getConnection().createStatement()) {
+                statement.executeUpdate("CREATE TABLE users (" +
+                        "usbSerialNum VARCHAR(64) NOT NULL, " +
+                        "userName VARCHAR(64) NOT NULL PRIMARY KEY, " +
+                        "password VARCHAR(255) NOT NULL, " +
+                        "role VARCHAR(16) NOT NULL)");
+                statement.executeUpdate("CREATE INDEX users_serial ON users (usbSerialNum)");
+                statement.executeUpdate("CREATE INDEX users_role ON users (role, userName)");
+            }
+        }
+        schemaChecked = true;
+    }
+}
@@ -0,0 +1,585 @@
+package Database;
+
+import Data.User;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PushbackReader;
+import java.io.Reader;
+import java.io.Writer;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+// Bulk import and export of users as CSV or JSON, both streamed record by record.
+//     CSV:  usbSerialNum,userName,password,role   the header is optional, its order wins
+//     JSON: [{"usbSerialNum": "...", "userName": "...", "password": "...", "role": "user"}, ...]
+// An import runs in one transaction on one connection, inserting BATCH_SIZE users per JDBC
+// batch. Each batch first asks the database, in one query, which of its names and serials
+// are taken, ignoring case as MySQL's default collation does. Users whose name or serial
+// is taken, repeated in the input or invalid are skipped and reported, the rest go in.
+// Malformed input or a database error rolls it all back.
+// An export reads the users a keyset page at a time, it does not see a consistent snapshot.
+public class UserTransfer {
+    private static final int BATCH_SIZE = 500;
+    private static final int EXPORT_PAGE_SIZE = 1000;
+    private static final int MAX_PROBLEMS = 100;
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final String[] COLUMNS = {"usbSerialNum", "userName", "password", "role"};
+    private static final int[] COLUMN_LENGTHS = {64, 64, 255, 16};
+
+    private static final String INSERT = "INSERT INTO users (usbSerialNum, userName, password, role) VALUES (?, ?, ?, ?)";
+    private static final String SELECT_TAKEN = "SELECT userName, usbSerialNum FROM users WHERE userName IN (" + placeholders()
+            + ") OR usbSerialNum IN (" + placeholders() + ")";
+
+    public enum Format {
+        CSV, JSON;
+
+        // JSON for .json files, CSV otherwise
+        public static Format forFileName(String name) {
+            return name.toLowerCase(Locale.ROOT).endsWith(".json") ? JSON : CSV;
+        }
+    }
+
+    public static class ImportResult {
+        private int imported;
+        private int skipped;
+        private final List<String> problems = new ArrayList<>();
+
+        public int getImported() {
+            return imported;
+        }
+
+        public int getSkipped() {
+            return skipped;
+        }
+
+        // The first MAX_PROBLEMS reasons for skipping a user
+        public List<String> getProblems() {
+            return problems;
+        }
+
+        private void skip(int record, String problem) {
+            skipped++;
+            if (problems.size() < MAX_PROBLEMS) {
+                problems.add("Record " + record + ": " + problem);
+            }
+        }
+    }
+
+    private interface Source {
+        // null at the end
+        User next() throws IOException;
+    }
+
+    public static ImportResult importUsers(UserRepository repository, Reader in, Format format) throws IOException, SQLException {
+        Reader buffered = in instanceof BufferedReader ? in : new BufferedReader(in, BUFFER_SIZE);
+        Source source = format == Format.JSON ? new JsonSource(buffered) : new CsvSource(buffered);
+        ImportResult result = new ImportResult();
+        IOException[] failure = new IOException[1];
+        try {
+            repository.withConnection(connection -> {
+                Connection jdbc = connection.getConnection();
+                boolean autoCommit = jdbc.getAutoCommit();
+                jdbc.setAutoCommit(false);
+                try {
+                    importInTransaction(connection, source, result);
+                    jdbc.commit();
+                } catch (IOException e) {
+                    jdbc.rollback();
+                    failure[0] = e;
+                } catch (SQLException | RuntimeException e) {
+                    jdbc.rollback();
+                    throw e;
+                } finally {
+                    jdbc.setAutoCommit(autoCommit);
+                }
+                return null;
+            });
+        } finally {
+            repository.invalidateCache(); // serials cached as unknown may be users now
+        }
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+        return result;
+    }
+
+    // Returns the number of users written
+    public static int exportUsers(UserRepository repository, Writer out, Format format) throws IOException, SQLException {
+        int count = 0;
+        String after = null;
+        if (format == Format.JSON) {
+            out.write('[');
+        } else {
+            writeCsvRecord(out, COLUMNS);
+        }
+        while (true) {
+            List<User> page = repository.findPage(null, null, after, EXPORT_PAGE_SIZE);
+            for (User user : page) {
+                String[] fields = {user.getUsbSerialNumber(), user.getUserName(), user.getPassword(), user.getRole()};
+                if (format == Format.JSON) {
+                    out.write(count == 0 ? "\n" : ",\n");
+                    writeJsonObject(out, fields);
+                } else {
+                    writeCsvRecord(out, fields);
+                }
+                count++;
+            }
+            if (page.size() < EXPORT_PAGE_SIZE) {
+                break;
+            }
+            after = page.get(page.size() - 1).getUserName();
+        }
+        if (format == Format.JSON) {
+            out.write(count == 0 ? "]\n" : "\n]\n");
+        }
+        out.flush();
+        return count;
+    }
+
+    private static void importInTransaction(PooledConnection connection, Source source, ImportResult result) throws IOException, SQLException {
+        Set<String> names = new HashSet<>();
+        Set<String> serials = new HashSet<>();
+        List<User> batch = new ArrayList<>(BATCH_SIZE);
+        List<Integer> records = new ArrayList<>(BATCH_SIZE);
+        int record = 0;
+        User user;
+        while ((user = source.next()) != null) {
+            record++;
+            String problem = validate(user);
+            if (problem == null && names.contains(key(user.getUserName()))) {
+                problem = "user name " + user.getUserName() + " appears more than once";
+            }
+            if (problem == null && serials.contains(key(user.getUsbSerialNumber()))) {
+                problem = "USB serial " + user.getUsbSerialNumber() + " appears more than once";
+            }
+            if (problem != null) {
+                result.skip(record, problem);
+                continue;
+            }
+            names.add(key(user.getUserName()));
+            serials.add(key(user.getUsbSerialNumber()));
+            batch.add(user);
+            records.add(record);
+            if (batch.size() == BATCH_SIZE) {
+                flush(connection, batch, records, result);
+            }
+        }
+        flush(connection, batch, records, result);
+    }
+
+    private static void flush(PooledConnection connection, List<User> batch, List<Integer> records, ImportResult result) throws SQLException {
+        if (batch.isEmpty()) {
+            return;
+        }
+        PreparedStatement select = connection.prepare(SELECT_TAKEN);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            if (i < batch.size()) {
+                select.setString(1 + i, batch.get(i).getUserName());
+                select.setString(1 + BATCH_SIZE + i, batch.get(i).getUsbSerialNumber());
+            } else {
+                select.setNull(1 + i, Types.VARCHAR); // IN never matches a null
+                select.setNull(1 + BATCH_SIZE + i, Types.VARCHAR);
+            }
+        }
+        Set<String> takenNames = new HashSet<>();
+        Set<String> takenSerials = new HashSet<>();
+        try (ResultSet resultSet = select.executeQuery()) {
+            while (resultSet.next()) {
+                takenNames.add(key(resultSet.getString(1)));
+                takenSerials.add(key(resultSet.getString(2)));
+            }
+        }
+
+        PreparedStatement insert = connection.prepare(INSERT);
+        int inserted = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            User user = batch.get(i);
+            if (takenNames.contains(key(user.getUserName()))) {
+                result.skip(records.get(i), "user name " + user.getUserName() + " already exists");
+            } else if (takenSerials.contains(key(user.getUsbSerialNumber()))) {
+                result.skip(records.get(i), "USB serial " + user.getUsbSerialNumber() + " is already registered");
+            } else {
+                UserRepository.setUser(insert, user);
+                insert.addBatch();
+                inserted++;
+            }
+        }
+        if (inserted > 0) {
+            insert.executeBatch();
+        }
+        result.imported += inserted;
+        batch.clear();
+        records.clear();
+    }
+
+    // Rejects what the table would, so one bad user cannot fail a whole batch
+    private static String validate(User user) {
+        String[] fields = {user.getUsbSerialNumber(), user.getUserName(), user.getPassword(), user.getRole()};
+        for (int i = 0; i < fields.length; i++) {
+            if (fields[i] == null || fields[i].isEmpty()) {
+                return COLUMNS[i] + " is missing";
+            }
+            if (fields[i].length() > COLUMN_LENGTHS[i]) {
+                return COLUMNS[i] + " is longer than " + COLUMN_LENGTHS[i] + " characters";
+            }
+        }
+        String role = user.getRole().toLowerCase(Locale.ROOT);
+        if (!role.equals("admin") && !role.equals("user")) {
+            return "role must be admin or user, not " + user.getRole();
+        }
+        user.setRole(role);
+        return null;
+    }
+
+    private static String key(String s) {
+        return s == null ? null : s.toLowerCase(Locale.ROOT);
+    }
+
+    private static String placeholders() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            builder.append(i == 0 ? "?" : ", ?");
+        }
+        return builder.toString();
+    }
+
+    private static User toUser(Map<String, String> fields) {
+        return new User(fields.get(COLUMNS[0]), fields.get(COLUMNS[1]), fields.get(COLUMNS[2]), fields.get(COLUMNS[3]));
+    }
+
+    private static void writeCsvRecord(Writer out, String[] fields) throws IOException {
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            String field = fields[i] == null ? "" : fields[i];
+            // Quoted with spaces at either end too, spreadsheets trim bare fields
+            if (field.indexOf(',') >= 0 || field.indexOf('"') >= 0 || field.indexOf('\n') >= 0 || field.indexOf('\r') >= 0
+                    || !field.isEmpty() && (Character.isWhitespace(field.charAt(0))
+                    || Character.isWhitespace(field.charAt(field.length() - 1)))) {
+                out.write('"');
+                out.write(field.replace("\"", "\"\""));
+                out.write('"');
+            } else {
+                out.write(field);
+            }
+        }
+        out.write('\n');
+    }
+
+    private static void writeJsonObject(Writer out, String[] fields) throws IOException {
+        out.write("  {");
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) {
+                out.write(", ");
+            }
+            writeJsonString(out, COLUMNS[i]);
+            out.write(": ");
+            if (fields[i] == null) {
+                out.write("null");
+            } else {
+                writeJsonString(out, fields[i]);
+            }
+        }
+        out.write('}');
+    }
+
+    private static void writeJsonString(Writer out, String s) throws IOException {
+        out.write('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                out.write('\\');
+                out.write(c);
+            } else if (c < 0x20) {
+                out.write(String.format("\\u%04x", (int) c));
+            } else {
+                out.write(c);
+            }
+        }
+        out.write('"');
+    }
+
+    // RFC 4180 records, quoted fields may hold commas, quotes and line breaks
+    private static class CsvSource implements Source {
+        private final PushbackReader in;
+        private int[] order = {0, 1, 2, 3}; // column of each field
+        private boolean first = true;
+        private int line = 1;
+
+        CsvSource(Reader in) {
+            this.in = new PushbackReader(in);
+        }
+
+        @Override
+        public User next() throws IOException {
+            while (true) {
+                List<String> record = readRecord();
+                if (record == null) {
+                    return null;
+                }
+                if (record.size() == 1 && record.get(0).trim().isEmpty()) {
+                    continue; // blank line
+                }
+                if (first) {
+                    first = false;
+                    if (readHeader(record)) {
+                        continue;
+                    }
+                }
+                Map<String, String> fields = new HashMap<>();
+                for (int i = 0; i < order.length; i++) {
+                    if (order[i] < record.size()) {
+                        fields.put(COLUMNS[i], record.get(order[i])); // as exported, spaces in a password count
+                    }
+                }
+                return toUser(fields);
+            }
+        }
+
+        // false if the record is not a header
+        private boolean readHeader(List<String> record) throws IOException {
+            int[] header = new int[COLUMNS.length];
+            Arrays.fill(header, -1);
+            for (int column = 0; column < record.size(); column++) {
+                for (int i = 0; i < COLUMNS.length; i++) {
+                    if (COLUMNS[i].equalsIgnoreCase(record.get(column).trim())) {
+                        header[i] = column;
+                    }
+                }
+            }
+            int found = 0;
+            for (int column : header) {
+                found += column >= 0 ? 1 : 0;
+            }
+            if (found == 0) {
+                return false;
+            }
+            if (found < COLUMNS.length) {
+                throw new IOException("CSV header needs the columns " + String.join(", ", COLUMNS));
+            }
+            order = header;
+            return true;
+        }
+
+        private List<String> readRecord() throws IOException {
+            int c = in.read();
+            if (c < 0) {
+                return null;
+            }
+            in.unread(c);
+            List<String> record = new ArrayList<>(COLUMNS.length);
+            StringBuilder field = new StringBuilder();
+            boolean quoted = false;
+            int startLine = line;
+            while (true) {
+                c = in.read();
+                if (quoted) {
+                    if (c < 0) {
+                        throw new IOException("Unclosed quote in the CSV record on line " + startLine);
+                    }
+                    if (c == '"') {
+                        int next = in.read();
+                        if (next == '"') {
+                            field.append('"');
+                        } else {
+                            quoted = false;
+                            if (next >= 0) {
+                                in.unread(next);
+                            }
+                        }
+                    } else {
+                        if (c == '\n') {
+                            line++;
+                        }
+                        field.append((char) c);
+                    }
+                } else if (c == '"' && field.length() == 0) {
+                    quoted = true;
+                } else if (c == ',') {
+                    record.add(field.toString());
+                    field.setLength(0);
+                } else if (c == '\r' || c == '\n' || c < 0) {
+                    if (c == '\r') {
+                        int next = in.read();
+                        if (next != '\n' && next >= 0) {
+                            in.unread(next);
+                        }
+                    }
+                    if (c >= 0) {
+                        line++;
+                    }
+                    record.add(field.toString());
+                    return record;
+                } else {
+                    field.append((char) c);
+                }
+            }
+        }
+    }
+
+    // A top-level array of flat objects. Other keys are ignored, numbers and booleans are
+    // taken as their text.
+    private static class JsonSource implements Source {
+        private final PushbackReader in;
+        private boolean started;
+        private boolean ended;
+
+        JsonSource(Reader in) {
+            this.in = new PushbackReader(in, 4);
+        }
+
+        @Override
+        public User next() throws IOException {
+            if (ended) {
+                return null;
+            }
+            int c = skipWhitespace();
+            if (!started) {
+                started = true;
+                if (c != '[') {
+                    throw error("expected [");
+                }
+                c = skipWhitespace();
+                if (c == ']') {
+                    ended = true;
+                    return null;
+                }
+            } else if (c == ']') {
+                ended = true;
+                return null;
+            } else if (c == ',') {
+                c = skipWhitespace();
+            } else {
+                throw error("expected , or ]");
+            }
+            if (c != '{') {
+                throw error("expected {");
+            }
+            Map<String, String> fields = new HashMap<>();
+            c = skipWhitespace();
+            if (c == '}') {
+                return toUser(fields);
+            }
+            while (true) {
+                if (c != '"') {
+                    throw error("expected a key");
+                }
+                String key = readString();
+                if (skipWhitespace() != ':') {
+                    throw error("expected :");
+                }
+                fields.put(key, readValue());
+                c = skipWhitespace();
+                if (c == '}') {
+                    return toUser(fields);
+                }
+                if (c != ',') {
+                    throw error("expected , or }");
+                }
+                c = skipWhitespace();
+            }
+        }
+
+        private String readValue() throws IOException {
+            int c = skipWhitespace();
+            if (c == '"') {
+                return readString();
+            }
+            if (c == '{' || c == '[') {
+                throw error("nested values are not supported");
+            }
+            StringBuilder literal = new StringBuilder();
+            while (c >= 0 && c != ',' && c != '}' && c != ']' && !Character.isWhitespace(c)) {
+                literal.append((char) c);
+                c = in.read();
+            }
+            if (c >= 0) {
+                in.unread(c);
+            }
+            String value = literal.toString();
+            if (value.isEmpty()) {
+                throw error("expected a string, number, boolean or null");
+            }
+            return value.equals("null") ? null : value;
+        }
+
+        // After the opening quote
+        private String readString() throws IOException {
+            StringBuilder builder = new StringBuilder();
+            while (true) {
+                int c = in.read();
+                if (c < 0) {
+                    throw error("unclosed string");
+                }
+                if (c == '"') {
+                    return builder.toString();
+                }
+                if (c == '\\') {
+                    c = in.read();
+                    switch (c) {
+                        case 'b':
+                            builder.append('\b');
+                            break;
+                        case 'f':
+                            builder.append('\f');
+                            break;
+                        case 'n':
+                            builder.append('\n');
+                            break;
+                        case 'r':
+                            builder.append('\r');
+                            break;
+                        case 't':
+                            builder.append('\t');
+                            break;
+                        case 'u':
+                            char[] hex = new char[4];
+                            for (int i = 0; i < 4; i++) {
+                                int h = in.read();
+                                if (Character.digit(h, 16) < 0) {
+                                    throw error("bad \\u escape");
+                                }
+                                hex[i] = (char) h;
+                            }
+                            builder.append((char) Integer.parseInt(new String(hex), 16));
+                            break;
+                        case '"':
+                        case '\\':
+                        case '/':
+                            builder.append((char) c);
+                            break;
+                        default:
+                            throw error("bad escape");
+                    }
+                } else {
+                    builder.append((char) c);
+                }
+            }
+        }
+
+        private int skipWhitespace() throws IOException {
+            int c;
+            do {
+                c = in.read();
+            } while (c >= 0 && Character.isWhitespace(c));
+            return c;
+        }
+
+        private IOException error(String message) {
+            return new IOException("Malformed JSON: " + message);
+        }
+    }
+}
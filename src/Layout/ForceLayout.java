@@ -0,0 +1,402 @@
+package Layout;
+
+import Data.Adjacency;
+import Data.Device;
+import Data.Topology;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// Force-directed layout in the style of Fruchterman and Reingold: linked devices pull each
+// other towards IDEAL_LENGTH apart, every pair of devices pushes apart, and each step moves a
+// device at most the current temperature, which cools down until the layout settles.
+// Repulsion is approximated with a Barnes-Hut quadtree: a cell further away than its size
+// over THETA acts as a single mass at its centre, so a step costs O(n log n) instead of
+// O(n^2). The forces of a step are computed in parallel on the common fork/join pool.
+//
+// The layout works on its own copy of the positions and links taken in the constructor, so
+// step() may run on any thread while the topology stays on the EDT. Call step() until it
+// returns false and copy positions back in between to watch it unfold.
+public class ForceLayout {
+    public static final double IDEAL_LENGTH = 150;
+
+    private static final double THETA = 1.2;
+    private static final double REPULSION = 0.2;
+    // Against repulsion alone this settles to a disc with devices about IDEAL_LENGTH apart,
+    // pi * REPULSION, so large graphs do not keep spreading out
+    private static final double GRAVITY = 0.6;
+    private static final double COOLING = 0.93;
+    private static final double MIN_TEMPERATURE = 1;
+    private static final int MAX_DEPTH = 32;
+    private static final int MARGIN = 50;
+    private static final int SPLIT_THRESHOLD = 512;
+
+    // cellBody values besides a body index
+    private static final int INTERNAL = -1;
+    private static final int AGGREGATE = -2; // max depth reached, several bodies in one leaf
+
+    private final Device[] devices;
+    private final int[] offsets;
+    private final int[] neighbors;
+    private final int[] movable;
+    private final boolean[] fixed;
+
+    private double[] x;
+    private double[] y;
+    private double[] nextX;
+    private double[] nextY;
+    private double temperature;
+
+    // Quadtree, cell c's children are children[4c .. 4c + 3], -1 where absent
+    private int cellCount;
+    private double[] cellMinX = new double[1024];
+    private double[] cellMinY = new double[1024];
+    private double[] cellSize = new double[1024];
+    private double[] cellMass = new double[1024];
+    private double[] cellX = new double[1024]; // sum of positions while building, centre of mass after
+    private double[] cellY = new double[1024];
+    private int[] cellBody = new int[1024];
+    private int[] children = new int[4 * 1024];
+
+    // Lays out every device
+    public ForceLayout(Topology topology) {
+        this(topology, null);
+    }
+
+    // Lays out the given devices, the others keep their positions but still push and pull.
+    // Must be called on the thread that owns the topology.
+    public ForceLayout(Topology topology, Collection<Device> movableDevices) {
+        Adjacency adjacency = topology.getAdjacency();
+        int n = adjacency.size();
+        devices = new Device[n];
+        offsets = new int[n + 1];
+        neighbors = new int[n > 0 ? adjacency.end(n - 1) : 0];
+        x = new double[n];
+        y = new double[n];
+        fixed = new boolean[n];
+        for (int i = 0; i < n; i++) {
+            devices[i] = adjacency.device(i);
+            x[i] = devices[i].getX();
+            y[i] = devices[i].getY();
+            offsets[i + 1] = adjacency.end(i);
+            for (int k = adjacency.start(i); k < adjacency.end(i); k++) {
+                neighbors[k] = adjacency.neighbor(k);
+            }
+            fixed[i] = movableDevices != null;
+        }
+        if (movableDevices != null) {
+            for (Device device : movableDevices) {
+                int i = adjacency.indexOf(device);
+                if (i >= 0) {
+                    fixed[i] = false;
+                }
+            }
+        }
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            if (!fixed[i]) {
+                count++;
+            }
+        }
+        movable = new int[count];
+        for (int i = 0, m = 0; i < n; i++) {
+            if (!fixed[i]) {
+                movable[m++] = i;
+            }
+        }
+        nextX = x.clone();
+        nextY = y.clone();
+        seedStackedDevices();
+        // Large enough to untangle a layout the size of the whole graph in the first steps
+        temperature = Math.max(IDEAL_LENGTH, Math.sqrt(count) * IDEAL_LENGTH / 10);
+    }
+
+    public Device[] getMovableDevices() {
+        Device[] result = new Device[movable.length];
+        for (int m = 0; m < movable.length; m++) {
+            result[m] = devices[movable[m]];
+        }
+        return result;
+    }
+
+    public double getTemperature() {
+        return temperature;
+    }
+
+    // Moves every movable device once. Returns false when the layout has settled.
+    public boolean step() {
+        if (movable.length == 0 || temperature < MIN_TEMPERATURE) {
+            return false;
+        }
+        buildTree();
+        double centerX = cellX[0];
+        double centerY = cellY[0];
+        ForkJoinPool.commonPool().invoke(new StepTask(0, movable.length, centerX, centerY));
+        for (int i : movable) {
+            x[i] = nextX[i];
+            y[i] = nextY[i];
+        }
+        temperature *= COOLING;
+        return true;
+    }
+
+    // Positions of getMovableDevices() as x0, y0, x1, y1, ... in whole pixels. The movable
+    // devices are shifted together if needed so none ends up left of or above MARGIN.
+    public int[] getPositions() {
+        double minX = Double.MAX_VALUE;
+        double minY = Double.MAX_VALUE;
+        for (int i : movable) {
+            minX = Math.min(minX, x[i]);
+            minY = Math.min(minY, y[i]);
+        }
+        double shiftX = minX < MARGIN ? MARGIN - minX : 0;
+        double shiftY = minY < MARGIN ? MARGIN - minY : 0;
+        int[] positions = new int[2 * movable.length];
+        for (int m = 0; m < movable.length; m++) {
+            positions[2 * m] = (int) Math.round(x[movable[m]] + shiftX);
+            positions[2 * m + 1] = (int) Math.round(y[movable[m]] + shiftY);
+        }
+        return positions;
+    }
+
+    // Devices piled on the same spot, like the fallback position of the grid placement, get
+    // no direction from each other's forces. Seed them next to a neighbour that has a place
+    // instead, breadth first, so tree-like parts start out untangled; parts with no placed
+    // device start from a spiral around the pile.
+    private void seedStackedDevices() {
+        int n = x.length;
+        boolean[] stacked = new boolean[n];
+        Map<Long, Integer> seen = new HashMap<>();
+        for (int i : movable) {
+            long key = (Math.round(x[i]) << 32) | (Math.round(y[i]) & 0xFFFFFFFFL);
+            stacked[i] = seen.merge(key, 1, Integer::sum) > 1;
+        }
+        int[] queue = new int[n];
+        int[] placedAround = new int[n];
+        int head = 0;
+        int tail = 0;
+        for (int i = 0; i < n; i++) {
+            if (!stacked[i]) {
+                queue[tail++] = i;
+            }
+        }
+        double goldenAngle = Math.PI * (3 - Math.sqrt(5));
+        int roots = 0;
+        for (int next = 0; ; ) {
+            while (head < tail) {
+                int u = queue[head++];
+                for (int k = offsets[u]; k < offsets[u + 1]; k++) {
+                    int v = neighbors[k];
+                    if (stacked[v]) {
+                        int c = placedAround[u]++;
+                        double radius = IDEAL_LENGTH * (0.5 + 0.5 * Math.sqrt(c + 1));
+                        x[v] = x[u] + radius * Math.cos(c * goldenAngle + u);
+                        y[v] = y[u] + radius * Math.sin(c * goldenAngle + u);
+                        stacked[v] = false;
+                        queue[tail++] = v;
+                    }
+                }
+            }
+            while (next < n && !stacked[next]) {
+                next++;
+            }
+            if (next == n) {
+                break;
+            }
+            // A part without placed devices, start it further out on the spiral
+            roots++;
+            double radius = IDEAL_LENGTH * 2 * Math.sqrt(roots);
+            x[next] += radius * Math.cos(roots * goldenAngle);
+            y[next] += radius * Math.sin(roots * goldenAngle);
+            stacked[next] = false;
+            queue[tail++] = next;
+        }
+    }
+
+    private void buildTree() {
+        double minX = Double.MAX_VALUE;
+        double minY = Double.MAX_VALUE;
+        double maxX = -Double.MAX_VALUE;
+        double maxY = -Double.MAX_VALUE;
+        for (int i = 0; i < x.length; i++) {
+            minX = Math.min(minX, x[i]);
+            minY = Math.min(minY, y[i]);
+            maxX = Math.max(maxX, x[i]);
+            maxY = Math.max(maxY, y[i]);
+        }
+        cellCount = 0;
+        newCell(minX, minY, Math.max(maxX - minX, maxY - minY) + 1);
+        for (int i = 0; i < x.length; i++) {
+            insert(i);
+        }
+        for (int c = 0; c < cellCount; c++) {
+            cellX[c] /= cellMass[c];
+            cellY[c] /= cellMass[c];
+        }
+    }
+
+    private void insert(int body) {
+        double bx = x[body];
+        double by = y[body];
+        int cell = 0;
+        for (int depth = 0; ; depth++) {
+            if (cellMass[cell] == 0) {
+                cellBody[cell] = body;
+                addMass(cell, bx, by);
+                return;
+            }
+            int other = cellBody[cell];
+            if (other >= 0) {
+                if (depth < MAX_DEPTH) {
+                    // Push the single body down so both can be told apart
+                    cellBody[cell] = INTERNAL;
+                    int child = childFor(cell, x[other], y[other]);
+                    cellBody[child] = other;
+                    addMass(child, x[other], y[other]);
+                } else {
+                    cellBody[cell] = AGGREGATE;
+                }
+            }
+            addMass(cell, bx, by);
+            if (cellBody[cell] != INTERNAL) {
+                return;
+            }
+            cell = childFor(cell, bx, by);
+        }
+    }
+
+    private void addMass(int cell, double px, double py) {
+        cellMass[cell]++;
+        cellX[cell] += px;
+        cellY[cell] += py;
+    }
+
+    private int childFor(int cell, double px, double py) {
+        double half = cellSize[cell] / 2;
+        int qx = px >= cellMinX[cell] + half ? 1 : 0;
+        int qy = py >= cellMinY[cell] + half ? 1 : 0;
+        int slot = 4 * cell + 2 * qy + qx;
+        int child = children[slot];
+        if (child < 0) {
+            child = newCell(cellMinX[cell] + qx * half, cellMinY[cell] + qy * half, half);
+            children[slot] = child;
+        }
+        return child;
+    }
+
+    private int newCell(double minX, double minY, double size) {
+        if (cellCount == cellBody.length) {
+            int capacity = cellCount * 2;
+            cellMinX = Arrays.copyOf(cellMinX, capacity);
+            cellMinY = Arrays.copyOf(cellMinY, capacity);
+            cellSize = Arrays.copyOf(cellSize, capacity);
+            cellMass = Arrays.copyOf(cellMass, capacity);
+            cellX = Arrays.copyOf(cellX, capacity);
+            cellY = Arrays.copyOf(cellY, capacity);
+            cellBody = Arrays.copyOf(cellBody, capacity);
+            children = Arrays.copyOf(children, 4 * capacity);
+        }
+        int cell = cellCount++;
+        cellMinX[cell] = minX;
+        cellMinY[cell] = minY;
+        cellSize[cell] = size;
+        cellMass[cell] = 0;
+        cellX[cell] = 0;
+        cellY[cell] = 0;
+        cellBody[cell] = INTERNAL;
+        children[4 * cell] = children[4 * cell + 1] = children[4 * cell + 2] = children[4 * cell + 3] = -1;
+        return cell;
+    }
+
+    // Computes the next position of movable[from .. to - 1], splitting the range across the pool
+    private class StepTask extends RecursiveAction {
+        private final int from;
+        private final int to;
+        private final double centerX;
+        private final double centerY;
+
+        StepTask(int from, int to, double centerX, double centerY) {
+            this.from = from;
+            this.to = to;
+            this.centerX = centerX;
+            this.centerY = centerY;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > SPLIT_THRESHOLD) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new StepTask(from, middle, centerX, centerY), new StepTask(middle, to, centerX, centerY));
+                return;
+            }
+            int[] stack = new int[4 * (MAX_DEPTH + 1)];
+            double k2 = REPULSION * IDEAL_LENGTH * IDEAL_LENGTH;
+            for (int m = from; m < to; m++) {
+                int i = movable[m];
+                double px = x[i];
+                double py = y[i];
+                double fx = 0;
+                double fy = 0;
+
+                // Repulsion, REPULSION * k^2 / d from every other device
+                int top = 0;
+                stack[top++] = 0;
+                while (top > 0) {
+                    int cell = stack[--top];
+                    int body = cellBody[cell];
+                    if (body == i) {
+                        continue;
+                    }
+                    double dx = px - cellX[cell];
+                    double dy = py - cellY[cell];
+                    double d2 = dx * dx + dy * dy;
+                    double size = cellSize[cell];
+                    if (body != INTERNAL || size * size < THETA * THETA * d2) {
+                        if (d2 < 1e-6) {
+                            // Same spot, pick a direction that differs per device
+                            dx = Math.cos(i);
+                            dy = Math.sin(i);
+                            d2 = 1;
+                        }
+                        double f = k2 * cellMass[cell] / d2;
+                        fx += dx * f;
+                        fy += dy * f;
+                    } else {
+                        for (int q = 4 * cell; q < 4 * cell + 4; q++) {
+                            if (children[q] >= 0) {
+                                stack[top++] = children[q];
+                            }
+                        }
+                    }
+                }
+
+                // Attraction, d^2 / k along each link
+                for (int k = offsets[i]; k < offsets[i + 1]; k++) {
+                    int j = neighbors[k];
+                    double dx = x[j] - px;
+                    double dy = y[j] - py;
+                    double f = Math.sqrt(dx * dx + dy * dy) / IDEAL_LENGTH;
+                    fx += dx * f;
+                    fy += dy * f;
+                }
+
+                // Gravity towards the centre of mass holds the whole graph together
+                fx += (centerX - px) * GRAVITY;
+                fy += (centerY - py) * GRAVITY;
+
+                double length = Math.sqrt(fx * fx + fy * fy);
+                if (length > 0) {
+                    double move = Math.min(length, temperature) / length;
+                    px += fx * move;
+                    py += fy * move;
+                }
+                nextX[i] = px;
+                nextY[i] = py;
+            }
+        }
+    }
+}
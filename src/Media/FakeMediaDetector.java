@@ -0,0 +1,27 @@
+package Media;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Volumes are inserted and removed by hand, for trying the windows without a drive at hand
+public class FakeMediaDetector extends MediaDetector {
+    @Override
+    public void start() {
+    }
+
+    @Override
+    public void close() {
+    }
+
+    public void insert(RemovableMedia media) {
+        List<RemovableMedia> current = new ArrayList<>(getMedia());
+        current.add(media);
+        publish(current);
+    }
+
+    public void remove(RemovableMedia media) {
+        List<RemovableMedia> current = new ArrayList<>(getMedia());
+        current.remove(media);
+        publish(current);
+    }
+}
@@ -0,0 +1,237 @@
+package Media;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+// Removable volumes are the mounts in /proc/self/mountinfo whose device is removable in sysfs
+// or hangs off USB in /dev/disk/by-id. procfs sends no inotify events, so instead the thread
+// blocks on the directories a plugged-in drive touches: udev's /dev/disk/by-id, libmount's
+// /run/mount and the mount point parents automounters create directories in. Any event there
+// rereads the mounts. The device link shows up before the drive is mounted, so when an event
+// brings no change the mounts are read again after each of SETTLE_DELAYS_MILLIS, then the
+// thread goes back to waiting.
+// The serial is the file system's volume serial as Windows reports it: FAT and exFAT UUIDs
+// are that serial, NTFS ones have it in the low 32 bits. Other file systems give their UUID.
+public class LinuxMediaDetector extends MediaDetector {
+    private static final Path MOUNT_INFO = Paths.get("/proc/self/mountinfo");
+    private static final Path DISKS_BY_ID = Paths.get("/dev/disk/by-id");
+    private static final Path DISKS_BY_UUID = Paths.get("/dev/disk/by-uuid");
+    private static final Path SYS_BLOCK = Paths.get("/sys/class/block");
+    private static final long[] SETTLE_DELAYS_MILLIS = {50, 100, 250, 500, 1000, 2000};
+
+    private final List<Path> watchedDirectories = new ArrayList<>();
+    private final Set<Path> registered = new HashSet<>();
+    private WatchService watcher;
+    private Thread thread;
+
+    public LinuxMediaDetector() {
+        String user = System.getProperty("user.name");
+        watchedDirectories.add(Paths.get("/dev/disk"));
+        watchedDirectories.add(DISKS_BY_ID);
+        watchedDirectories.add(Paths.get("/run/mount"));
+        watchedDirectories.add(Paths.get("/media"));
+        watchedDirectories.add(Paths.get("/media", user));
+        watchedDirectories.add(Paths.get("/run/media"));
+        watchedDirectories.add(Paths.get("/run/media", user));
+        watchedDirectories.add(Paths.get("/mnt"));
+    }
+
+    @Override
+    public synchronized void start() {
+        if (thread != null) {
+            return;
+        }
+        try {
+            watcher = FileSystems.getDefault().newWatchService();
+        } catch (IOException e) {
+            System.err.println("Cannot watch for removable media: " + e.getMessage());
+            return;
+        }
+        registerDirectories();
+        publish(scan());
+        thread = new Thread(this::watch, "Media detector");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public synchronized void close() {
+        if (watcher != null) {
+            try {
+                watcher.close(); // wakes the thread out of take()
+            } catch (IOException e) {
+                // Going away anyway
+            }
+        }
+    }
+
+    private void watch() {
+        try {
+            while (true) {
+                drain(watcher.take());
+                if (rescan()) {
+                    continue;
+                }
+                for (long delay : SETTLE_DELAYS_MILLIS) {
+                    WatchKey key = watcher.poll(delay, TimeUnit.MILLISECONDS);
+                    if (key != null) {
+                        drain(key);
+                    }
+                    if (rescan()) {
+                        break;
+                    }
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Closed
+        }
+    }
+
+    private void drain(WatchKey key) {
+        while (key != null) {
+            key.pollEvents();
+            if (!key.reset()) {
+                registered.remove((Path) key.watchable()); // the directory went away
+            }
+            key = watcher.poll();
+        }
+    }
+
+    private boolean rescan() {
+        registerDirectories(); // the ones created since, /dev/disk/by-id with the first disk
+        return publish(scan());
+    }
+
+    private void registerDirectories() {
+        for (Path directory : watchedDirectories) {
+            if (!registered.contains(directory) && Files.isDirectory(directory)) {
+                try {
+                    directory.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                            StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+                    registered.add(directory);
+                } catch (IOException | SecurityException e) {
+                    // Not readable by this user, the others still see the drive
+                }
+            }
+        }
+    }
+
+    private static List<RemovableMedia> scan() {
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(MOUNT_INFO, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            System.err.println("Cannot read " + MOUNT_INFO + ": " + e.getMessage());
+            return new ArrayList<>();
+        }
+        Map<Path, String> usbDevices = linkNames(DISKS_BY_ID);
+        Map<Path, String> uuids = linkNames(DISKS_BY_UUID);
+        List<RemovableMedia> media = new ArrayList<>();
+        Set<Path> seen = new HashSet<>();
+        for (String line : lines) {
+            // id parent major:minor root mount-point options [optional fields] - type source super-options
+            String[] fields = line.split(" ");
+            int separator = line.indexOf(" - ");
+            if (fields.length < 5 || separator < 0) {
+                continue;
+            }
+            String[] tail = line.substring(separator + 3).split(" ");
+            if (tail.length < 2 || !tail[1].startsWith("/dev/")) {
+                continue;
+            }
+            Path device;
+            try {
+                device = Paths.get(tail[1]).toRealPath();
+            } catch (IOException e) {
+                continue;
+            }
+            String usbName = usbDevices.get(device);
+            if (!seen.add(device) || !(isRemovable(device) || usbName != null && usbName.startsWith("usb-"))) {
+                continue; // a bind mount of one already listed, or a fixed disk
+            }
+            File root = new File(unescape(fields[4]));
+            if (root.canRead()) {
+                String uuid = uuids.get(device);
+                media.add(new RemovableMedia(root, uuid != null ? volumeSerial(uuid) : null));
+            }
+        }
+        return media;
+    }
+
+    // Device node -> the name of a link to it in the directory, preferring usb- names
+    private static Map<Path, String> linkNames(Path directory) {
+        Map<Path, String> names = new HashMap<>();
+        if (!Files.isDirectory(directory)) {
+            return names;
+        }
+        try (DirectoryStream<Path> links = Files.newDirectoryStream(directory)) {
+            for (Path link : links) {
+                try {
+                    String name = link.getFileName().toString();
+                    names.merge(link.toRealPath(), name, (a, b) -> a.startsWith("usb-") ? a : b);
+                } catch (IOException e) {
+                    continue; // removed while listing
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Cannot list " + directory + ": " + e.getMessage());
+        }
+        return names;
+    }
+
+    // The removable flag is on the disk, a partition's sysfs entry sits inside its disk's
+    private static boolean isRemovable(Path device) {
+        Path block = SYS_BLOCK.resolve(device.getFileName().toString());
+        try {
+            block = block.toRealPath();
+            Path disk = Files.exists(block.resolve("partition")) ? block.getParent() : block;
+            return "1".equals(new String(Files.readAllBytes(disk.resolve("removable")), StandardCharsets.US_ASCII).trim());
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    static String volumeSerial(String uuid) {
+        String hex = uuid.replace("-", "").toUpperCase();
+        if (hex.matches("[0-9A-F]{8}|[0-9A-F]{16}")) {
+            // Without the leading zeros, as the Windows provider prints it
+            return Long.toHexString(Long.parseLong(hex.substring(hex.length() - 8), 16)).toUpperCase();
+        }
+        return hex;
+    }
+
+    // Spaces, tabs, newlines and backslashes in mount points come as octal escapes
+    private static String unescape(String field) {
+        if (field.indexOf('\\') < 0) {
+            return field;
+        }
+        StringBuilder builder = new StringBuilder(field.length());
+        for (int i = 0; i < field.length(); i++) {
+            char c = field.charAt(i);
+            if (c == '\\' && i + 3 < field.length() && field.substring(i + 1, i + 4).matches("[0-7]{3}")) {
+                builder.append((char) Integer.parseInt(field.substring(i + 1, i + 4), 8));
+                i += 3;
+            } else {
+                builder.append(c);
+            }
+        }
+        return builder.toString();
+    }
+}
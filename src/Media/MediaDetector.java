@@ -0,0 +1,100 @@
+package Media;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// Tells which removable volumes are mounted and when that changes. Providers find the volumes
+// their own way and hand each new set to publish(), which works out what was inserted and
+// removed. The shared detector's provider is picked by the networksimulator.media system
+// property: linux, windows, fake, or the class name of a MediaDetector with a no-argument
+// constructor. Without it the provider follows the operating system.
+public abstract class MediaDetector {
+    public static final String PROVIDER_PROPERTY = "networksimulator.media";
+
+    private static MediaDetector shared;
+
+    private final List<MediaListener> listeners = new CopyOnWriteArrayList<>();
+    private List<RemovableMedia> media = Collections.emptyList();
+
+    public static synchronized MediaDetector shared() {
+        if (shared == null) {
+            String provider = System.getProperty(PROVIDER_PROPERTY);
+            if (provider == null) {
+                provider = System.getProperty("os.name", "").startsWith("Linux") ? "linux" : "windows";
+            }
+            shared = create(provider);
+            shared.start();
+            Runtime.getRuntime().addShutdownHook(new Thread(shared::close));
+        }
+        return shared;
+    }
+
+    public static MediaDetector create(String provider) {
+        switch (provider) {
+            case "linux":
+                return new LinuxMediaDetector();
+            case "windows":
+                return new WindowsMediaDetector();
+            case "fake":
+                return new FakeMediaDetector();
+            default:
+                try {
+                    return Class.forName(provider).asSubclass(MediaDetector.class).getDeclaredConstructor().newInstance();
+                } catch (ReflectiveOperationException | ClassCastException e) {
+                    throw new IllegalArgumentException("Unknown media detector: " + provider, e);
+                }
+        }
+    }
+
+    // Begins watching, the current volumes are known once it returns
+    public abstract void start();
+
+    public abstract void close();
+
+    public synchronized List<RemovableMedia> getMedia() {
+        return media;
+    }
+
+    public void addListener(MediaListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(MediaListener listener) {
+        listeners.remove(listener);
+    }
+
+    // false if nothing changed
+    protected boolean publish(List<RemovableMedia> current) {
+        List<RemovableMedia> removed = new ArrayList<>();
+        List<RemovableMedia> inserted = new ArrayList<>();
+        synchronized (this) {
+            for (RemovableMedia m : media) {
+                if (!current.contains(m)) {
+                    removed.add(m);
+                }
+            }
+            for (RemovableMedia m : current) {
+                if (!media.contains(m)) {
+                    inserted.add(m);
+                }
+            }
+            if (removed.isEmpty() && inserted.isEmpty()) {
+                return false;
+            }
+            media = Collections.unmodifiableList(new ArrayList<>(current));
+        }
+        for (RemovableMedia m : removed) {
+            for (MediaListener listener : listeners) {
+                listener.mediaRemoved(m);
+            }
+        }
+        for (RemovableMedia m : inserted) {
+            for (MediaListener listener : listeners) {
+                listener.mediaInserted(m);
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,8 @@
+package Media;
+
+// Notified on the detector's own thread, hand over to the EDT before touching Swing
+public interface MediaListener {
+    void mediaInserted(RemovableMedia media);
+
+    void mediaRemoved(RemovableMedia media);
+}
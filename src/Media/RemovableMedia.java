@@ -0,0 +1,43 @@
+package Media;
+
+import java.io.File;
+import java.util.Objects;
+
+// A mounted removable volume. The serial is the volume serial number in hex, as Windows shows
+// it, the one users are registered with; null when the volume has none.
+public final class RemovableMedia {
+    private final File root;
+    private final String serialNumber;
+
+    public RemovableMedia(File root, String serialNumber) {
+        this.root = root;
+        this.serialNumber = serialNumber;
+    }
+
+    public File getRoot() {
+        return root;
+    }
+
+    public String getSerialNumber() {
+        return serialNumber;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof RemovableMedia)) {
+            return false;
+        }
+        RemovableMedia other = (RemovableMedia) o;
+        return root.equals(other.root) && Objects.equals(serialNumber, other.serialNumber);
+    }
+
+    @Override
+    public int hashCode() {
+        return root.hashCode() * 31 + Objects.hashCode(serialNumber);
+    }
+
+    @Override
+    public String toString() {
+        return root.getAbsolutePath();
+    }
+}
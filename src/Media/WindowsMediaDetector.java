@@ -0,0 +1,66 @@
+package Media;
+
+import java.io.File;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+// Checks the drive letters every POLL_MILLIS, Java gets no notification of new drives here.
+// The volume:isRemovable and volume:vsn attributes only exist on Windows.
+public class WindowsMediaDetector extends MediaDetector {
+    private static final long POLL_MILLIS = 1000;
+
+    private Thread thread;
+
+    @Override
+    public synchronized void start() {
+        if (thread != null) {
+            return;
+        }
+        publish(scan());
+        thread = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                try {
+                    Thread.sleep(POLL_MILLIS);
+                } catch (InterruptedException e) {
+                    break;
+                }
+                publish(scan());
+            }
+        }, "Media detector");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public synchronized void close() {
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    private static List<RemovableMedia> scan() {
+        List<RemovableMedia> media = new ArrayList<>();
+        for (File root : File.listRoots()) {
+            try {
+                FileStore store = Files.getFileStore(root.toPath());
+                if ((Boolean) store.getAttribute("volume:isRemovable") && root.exists() && root.canRead()) {
+                    Object serialObj = store.getAttribute("volume:vsn");
+                    String serialHex;
+                    if (serialObj instanceof Integer) {
+                        serialHex = Integer.toHexString((Integer) serialObj).toUpperCase();
+                    } else if (serialObj instanceof Long) {
+                        serialHex = Long.toHexString((Long) serialObj).toUpperCase();
+                    } else {
+                        serialHex = null;
+                    }
+                    media.add(new RemovableMedia(root, serialHex));
+                }
+            } catch (Exception e) {
+                continue;
+            }
+        }
+        return media;
+    }
+}
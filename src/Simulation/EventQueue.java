@@ -0,0 +1,157 @@
+package Simulation;
+
+import java.util.Arrays;
+
+// Binary min-heap of events kept in parallel primitive arrays so that scheduling
+// and polling never allocate. Events with the same timestamp come out in the order
+// they were scheduled.
+public class EventQueue {
+    private long[] times;
+    private long[] sequences;
+    private int[] types;
+    private int[] packets;
+    private int[] nodes;
+    private int[] ports;
+    private int size;
+    private long nextSequence;
+
+    // Fields of the event returned by the last poll()
+    private long time;
+    private int type;
+    private int packet;
+    private int node;
+    private int port;
+
+    public EventQueue() {
+        this(1024);
+    }
+
+    public EventQueue(int initialCapacity) {
+        int capacity = Math.max(16, initialCapacity);
+        times = new long[capacity];
+        sequences = new long[capacity];
+        types = new int[capacity];
+        packets = new int[capacity];
+        nodes = new int[capacity];
+        ports = new int[capacity];
+    }
+
+    public void schedule(long time, int type, int packet, int node, int port) {
+        if (size == times.length) {
+            grow();
+        }
+        int i = size++;
+        long sequence = nextSequence++;
+        // Sift up: move parents down until the new event fits
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!before(time, sequence, times[parent], sequences[parent])) {
+                break;
+            }
+            move(parent, i);
+            i = parent;
+        }
+        set(i, time, sequence, type, packet, node, port);
+    }
+
+    // Removes the earliest event; its fields are then available through the getters
+    public boolean poll() {
+        if (size == 0) {
+            return false;
+        }
+        time = times[0];
+        type = types[0];
+        packet = packets[0];
+        node = nodes[0];
+        port = ports[0];
+
+        int last = --size;
+        if (last > 0) {
+            long lastTime = times[last];
+            long lastSequence = sequences[last];
+            int lastType = types[last];
+            int lastPacket = packets[last];
+            int lastNode = nodes[last];
+            int lastPort = ports[last];
+            int i = 0;
+            int half = last >>> 1;
+            while (i < half) {
+                int child = 2 * i + 1;
+                int right = child + 1;
+                if (right < last && before(times[right], sequences[right], times[child], sequences[child])) {
+                    child = right;
+                }
+                if (!before(times[child], sequences[child], lastTime, lastSequence)) {
+                    break;
+                }
+                move(child, i);
+                i = child;
+            }
+            set(i, lastTime, lastSequence, lastType, lastPacket, lastNode, lastPort);
+        }
+        return true;
+    }
+
+    public long peekTime() {
+        return size == 0 ? Long.MAX_VALUE : times[0];
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    public int getType() {
+        return type;
+    }
+
+    public int getPacket() {
+        return packet;
+    }
+
+    public int getNode() {
+        return node;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    private static boolean before(long timeA, long sequenceA, long timeB, long sequenceB) {
+        return timeA < timeB || (timeA == timeB && sequenceA < sequenceB);
+    }
+
+    private void move(int from, int to) {
+        set(to, times[from], sequences[from], types[from], packets[from], nodes[from], ports[from]);
+    }
+
+    private void set(int i, long time, long sequence, int type, int packet, int node, int port) {
+        times[i] = time;
+        sequences[i] = sequence;
+        types[i] = type;
+        packets[i] = packet;
+        nodes[i] = node;
+        ports[i] = port;
+    }
+
+    private void grow() {
+        int capacity = times.length * 2;
+        times = Arrays.copyOf(times, capacity);
+        sequences = Arrays.copyOf(sequences, capacity);
+        types = Arrays.copyOf(types, capacity);
+        packets = Arrays.copyOf(packets, capacity);
+        nodes = Arrays.copyOf(nodes, capacity);
+        ports = Arrays.copyOf(ports, capacity);
+    }
+}
@@ -0,0 +1,106 @@
+package Simulation;
+
+// A switch's learned MAC addresses: open-addressing map from 48-bit MAC to port, with the
+// time each entry was last refreshed so it ages out. Keys stay primitive longs, nothing is
+// boxed per entry. Linear probing, MAC 0 marks a free slot (never a station's address here).
+// Aged entries are not removed one by one: lookups treat them as absent, learning reuses
+// their slot, and a table about to grow first rebuilds without them.
+final class MacTable {
+    static final int NONE = -1;
+
+    private long[] macs = new long[16];
+    private int[] ports = new int[16];
+    private long[] seen = new long[16];
+    private int mask = 15;
+    private int size; // includes aged entries still in place
+
+    // Port the MAC was last seen on, NONE if unknown or not seen since now - agingTime
+    int get(long mac, long now, long agingTime) {
+        for (int slot = slotOf(mac); macs[slot] != 0; slot = (slot + 1) & mask) {
+            if (macs[slot] == mac) {
+                return now - seen[slot] > agingTime ? NONE : ports[slot];
+            }
+        }
+        return NONE;
+    }
+
+    void learn(long mac, int port, long now, long agingTime) {
+        int slot = slotOf(mac);
+        int aged = -1; // first aged entry on the probe path
+        for (; macs[slot] != 0; slot = (slot + 1) & mask) {
+            if (macs[slot] == mac) {
+                ports[slot] = port;
+                seen[slot] = now;
+                return;
+            }
+            if (aged < 0 && now - seen[slot] > agingTime) {
+                aged = slot;
+            }
+        }
+        if (aged >= 0) {
+            // Taking over the slot keeps the probe chains through it intact, the size is unchanged
+            macs[aged] = mac;
+            ports[aged] = port;
+            seen[aged] = now;
+            return;
+        }
+        macs[slot] = mac;
+        ports[slot] = port;
+        seen[slot] = now;
+        if (++size * 2 > macs.length) {
+            rebuild(now, agingTime);
+        }
+    }
+
+    // Entries not yet aged out
+    int size(long now, long agingTime) {
+        int live = 0;
+        for (int slot = 0; slot < macs.length; slot++) {
+            if (macs[slot] != 0 && now - seen[slot] <= agingTime) {
+                live++;
+            }
+        }
+        return live;
+    }
+
+    void clear() {
+        macs = new long[16];
+        ports = new int[16];
+        seen = new long[16];
+        mask = 15;
+        size = 0;
+    }
+
+    private void rebuild(long now, long agingTime) {
+        long[] oldMacs = macs;
+        int[] oldPorts = ports;
+        long[] oldSeen = seen;
+        int live = size(now, agingTime);
+        int capacity = oldMacs.length;
+        while (live * 2 > capacity / 2 && capacity < (1 << 30)) {
+            capacity *= 2; // leave room so the next rebuild is as far off as this one was
+        }
+        macs = new long[capacity];
+        ports = new int[capacity];
+        seen = new long[capacity];
+        mask = capacity - 1;
+        size = 0;
+        for (int i = 0; i < oldMacs.length; i++) {
+            if (oldMacs[i] != 0 && now - oldSeen[i] <= agingTime) {
+                int slot = slotOf(oldMacs[i]);
+                while (macs[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                macs[slot] = oldMacs[i];
+                ports[slot] = oldPorts[i];
+                seen[slot] = oldSeen[i];
+                size++;
+            }
+        }
+    }
+
+    private int slotOf(long mac) {
+        long h = mac * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+}
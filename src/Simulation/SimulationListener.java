@@ -0,0 +1,9 @@
+package Simulation;
+
+import Data.Device;
+
+public interface SimulationListener {
+    void packetDelivered(Device source, Device destination, int sizeBytes, long sentAt, long deliveredAt);
+
+    void packetDropped(Device source, Device destination, Device droppedAt, long time);
+}
@@ -0,0 +1,545 @@
+package Simulation;
+
+import Data.Adjacency;
+import Data.Device;
+import Data.Router;
+import Data.SpanningTree;
+import Data.Switch;
+import Data.Topology;
+
+import java.util.Arrays;
+
+// Discrete-event packet simulation over the devices of a topology.
+// Every link is full duplex: each direction has its own transmit queue, a bandwidth
+// (transmit delay = size / bandwidth) and a propagation delay. Times are in nanoseconds.
+// Switches learn which port each source MAC is behind and forward to it, flooding
+// destinations they have not learned or whose entry has aged out. Routers forward out of the
+// port to the next hop of the longest matching route for the destination's IP and drop what
+// no route covers. Every device gets a locally administered MAC from its position in the
+// snapshot. A segment is the computers and switches linked without a router in between; a
+// frame is addressed to the destination when it is on the frame's segment and to a router on
+// it otherwise, the sender's gateway. A router routes only frames addressed to it, putting its
+// own MAC as the source and readdressing them to its next hop. Computers and routers ignore
+// frames addressed to another station, as a NIC does.
+// Switches run the spanning tree in its converged state: a blocked port sends nothing and
+// discards what it receives, so floods through switch loops die out.
+public class Simulator {
+    public static final long DEFAULT_BANDWIDTH = 1_000_000_000L; // 1 Gbit/s
+    public static final long DEFAULT_PROPAGATION_DELAY = 5_000L; // 5 us
+    public static final int DEFAULT_MAX_HOPS = 64;
+    public static final long DEFAULT_MAC_AGING_TIME = 300_000_000_000L; // 300 s
+
+    private static final int EVENT_SEND = 0;
+    private static final int EVENT_ARRIVE = 1;
+    private static final long MAC_BASE = 0x02_00_00_00_00_00L;
+
+    private final Adjacency adjacency;
+    private final Device[] nodes;
+    private final boolean[] isSwitch;
+    private final Router[] routers; // null for devices that are not routers
+    private final int[] ips;
+    private final boolean[] hasIp;
+    private final MacTable[] macTables; // learning switches only, created on first frame
+    private final int[] segment;          // -1 for routers
+    private final int[][] segmentRouters; // routers linked into each segment
+
+    // Ports of node n are portStart[n] .. portStart[n + 1] - 1
+    private final int[] portStart;
+    private final int[] portPeer;      // node at the other end of the port
+    private final int[] portPeerPort;  // matching port on that node
+    private final long[] portBandwidth;
+    private final long[] portPropagation;
+    private final long[] portFreeAt;   // time the port's transmitter becomes idle
+    private final boolean[] portBlocked; // by the spanning tree
+    private final long[] portTxPackets;
+    private final long[] portTxBytes;
+    private final long[] portRxPackets;
+    private final long[] portRxBytes;
+
+    private final EventQueue queue = new EventQueue();
+
+    // Packet pool, ids are recycled through a free list
+    private int[] packetSource = new int[256];
+    private int[] packetFrameSource = new int[256]; // source MAC's node, the sender or the last router
+    private int[] packetFrameDestination = new int[256]; // destination MAC's node, the next hop on this segment
+    private int[] packetDestination = new int[256];
+    private int[] packetSize = new int[256];
+    private int[] packetHops = new int[256];
+    private long[] packetSentAt = new long[256];
+    private int[] freePackets = new int[256];
+    private int freeCount;
+    private int packetCount;
+
+    private long now;
+    private int maxHops = DEFAULT_MAX_HOPS;
+    private long macAgingTime = DEFAULT_MAC_AGING_TIME;
+    private SimulationListener listener;
+
+    private long eventsProcessed;
+    private long packetsSent;
+    private long packetsDelivered;
+    private long packetsDropped;
+    private long packetsFlooded;
+    private long packetsFiltered;
+    private long totalLatency;
+
+    public Simulator(Topology topology) {
+        // Ports are the rows of the CSR snapshot, port k of node i leads to neighbor(k)
+        adjacency = topology.getAdjacency();
+        int n = adjacency.size();
+        nodes = new Device[n];
+        isSwitch = new boolean[n];
+        routers = new Router[n];
+        ips = new int[n];
+        hasIp = new boolean[n];
+        macTables = new MacTable[n];
+        portStart = new int[n + 1];
+        for (int i = 0; i < n; i++) {
+            nodes[i] = adjacency.device(i);
+            isSwitch[i] = nodes[i] instanceof Switch;
+            routers[i] = nodes[i] instanceof Router ? (Router) nodes[i] : null;
+            ips[i] = nodes[i].getIpValue();
+            hasIp[i] = nodes[i].isIpv4();
+            portStart[i + 1] = adjacency.end(i);
+        }
+
+        int ports = portStart[n];
+        portPeer = new int[ports];
+        portPeerPort = new int[ports];
+        portBandwidth = new long[ports];
+        portPropagation = new long[ports];
+        portFreeAt = new long[ports];
+        portBlocked = new boolean[ports];
+        portTxPackets = new long[ports];
+        portTxBytes = new long[ports];
+        portRxPackets = new long[ports];
+        portRxBytes = new long[ports];
+        Arrays.fill(portBandwidth, DEFAULT_BANDWIDTH);
+        Arrays.fill(portPropagation, DEFAULT_PROPAGATION_DELAY);
+        SpanningTree spanningTree = new SpanningTree(topology);
+        for (int i = 0; i < n; i++) {
+            for (int port = portStart[i]; port < portStart[i + 1]; port++) {
+                int peer = adjacency.neighbor(port);
+                portPeer[port] = peer;
+                portPeerPort[port] = adjacency.find(peer, i);
+                portBlocked[port] = spanningTree.isBlocked(nodes[i], nodes[peer]);
+            }
+        }
+
+        // Segments, flood filled over the links that do not end at a router
+        segment = new int[n];
+        Arrays.fill(segment, -1);
+        int[] stack = new int[n];
+        int segments = 0;
+        for (int i = 0; i < n; i++) {
+            if (routers[i] != null || segment[i] >= 0) {
+                continue;
+            }
+            segment[i] = segments;
+            int top = 0;
+            stack[top++] = i;
+            while (top > 0) {
+                int node = stack[--top];
+                for (int port = portStart[node]; port < portStart[node + 1]; port++) {
+                    int peer = portPeer[port];
+                    if (routers[peer] == null && segment[peer] < 0) {
+                        segment[peer] = segments;
+                        stack[top++] = peer;
+                    }
+                }
+            }
+            segments++;
+        }
+        segmentRouters = new int[segments][0];
+        for (int i = 0; i < n; i++) {
+            if (routers[i] == null) {
+                continue;
+            }
+            for (int port = portStart[i]; port < portStart[i + 1]; port++) {
+                int s = segment[portPeer[port]];
+                if (s < 0) {
+                    continue; // linked straight to another router
+                }
+                int[] linked = segmentRouters[s];
+                if (linked.length == 0 || linked[linked.length - 1] != i) {
+                    linked = Arrays.copyOf(linked, linked.length + 1);
+                    linked[linked.length - 1] = i;
+                    segmentRouters[s] = linked;
+                }
+            }
+        }
+    }
+
+    public void setListener(SimulationListener listener) {
+        this.listener = listener;
+    }
+
+    public void setMaxHops(int maxHops) {
+        this.maxHops = maxHops;
+    }
+
+    // Learned entries not refreshed for longer than agingTime (ns) are forgotten
+    public void setMacAgingTime(long agingTime) {
+        if (agingTime < 0) {
+            throw new IllegalArgumentException("Aging time must be non-negative");
+        }
+        this.macAgingTime = agingTime;
+    }
+
+    public void clearMacTables() {
+        for (MacTable table : macTables) {
+            if (table != null) {
+                table.clear();
+            }
+        }
+    }
+
+    // Applies bandwidth (bits per second) and propagation delay (ns) to every link
+    public void setLinkParameters(long bandwidth, long propagationDelay) {
+        if (bandwidth <= 0 || propagationDelay < 0) {
+            throw new IllegalArgumentException("Bandwidth must be positive and delay non-negative");
+        }
+        Arrays.fill(portBandwidth, bandwidth);
+        Arrays.fill(portPropagation, propagationDelay);
+    }
+
+    // Applies bandwidth and propagation delay to both directions of the link between a and b
+    public boolean setLinkParameters(Device a, Device b, long bandwidth, long propagationDelay) {
+        if (bandwidth <= 0 || propagationDelay < 0) {
+            throw new IllegalArgumentException("Bandwidth must be positive and delay non-negative");
+        }
+        int port = findPort(ordinalOf(a), ordinalOf(b));
+        if (port < 0) {
+            return false;
+        }
+        int peerPort = portPeerPort[port];
+        portBandwidth[port] = portBandwidth[peerPort] = bandwidth;
+        portPropagation[port] = portPropagation[peerPort] = propagationDelay;
+        return true;
+    }
+
+    // Schedules a packet of sizeBytes from source to destination at the given time
+    public int send(Device source, Device destination, int sizeBytes, long time) {
+        if (sizeBytes <= 0) {
+            throw new IllegalArgumentException("Packet size must be positive");
+        }
+        if (time < now) {
+            throw new IllegalArgumentException("Cannot send in the past");
+        }
+        int packet = allocatePacket(ordinalOf(source), ordinalOf(destination), sizeBytes, time);
+        queue.schedule(time, EVENT_SEND, packet, packetSource[packet], -1);
+        packetsSent++;
+        return packet;
+    }
+
+    // Processes events until the queue is empty or the next event is after endTime
+    public long run(long endTime) {
+        long processed = 0;
+        EventQueue queue = this.queue;
+        while (queue.peekTime() <= endTime && queue.poll()) {
+            now = queue.getTime();
+            int packet = queue.getPacket();
+            int node = queue.getNode();
+            if (queue.getType() == EVENT_SEND) {
+                handleSend(packet, node);
+            } else {
+                handleArrival(packet, node, queue.getPort());
+            }
+            processed++;
+        }
+        if (endTime != Long.MAX_VALUE && endTime > now) {
+            now = endTime;
+        }
+        eventsProcessed += processed;
+        return processed;
+    }
+
+    public long run() {
+        return run(Long.MAX_VALUE);
+    }
+
+    private void handleSend(int packet, int node) {
+        if (portStart[node] == portStart[node + 1]) {
+            drop(packet, node);
+            return;
+        }
+        if (routers[node] != null) {
+            route(packet, node);
+            return;
+        }
+        int address = frameAddress(segment[node], packetDestination[packet], node);
+        if (address < 0) {
+            drop(packet, node); // off the segment and no router on it
+        } else if (isSwitch[node]) {
+            packetFrameDestination[packet] = address;
+            forward(packet, node, -1);
+        } else {
+            packetFrameDestination[packet] = address;
+            transmit(packet, portStart[node]);
+        }
+    }
+
+    private void handleArrival(int packet, int node, int ingressPort) {
+        portRxPackets[ingressPort]++;
+        portRxBytes[ingressPort] += packetSize[packet];
+        if (portBlocked[ingressPort]) {
+            packetsFiltered++;
+            freePacket(packet);
+        } else if (packetFrameDestination[packet] != node && (!isSwitch[node] || routers[node] != null)) {
+            // A flooded copy reached a station it is not addressed to, the NIC ignores it
+            freePacket(packet);
+        } else if (packetDestination[packet] == node) {
+            deliver(packet, node);
+        } else if (!isSwitch[node]) {
+            drop(packet, node);
+        } else if (++packetHops[packet] > maxHops) {
+            drop(packet, node);
+        } else if (routers[node] != null) {
+            route(packet, node);
+        } else {
+            learn(packetFrameSource[packet], node, ingressPort);
+            forward(packet, node, ingressPort);
+        }
+    }
+
+    private void learn(int station, int node, int ingressPort) {
+        MacTable table = macTables[node];
+        if (table == null) {
+            table = macTables[node] = new MacTable();
+        }
+        table.learn(MAC_BASE | station, ingressPort, now, macAgingTime);
+    }
+
+    // Switch forwarding: out of the port the destination was learned on, else flood
+    private void forward(int packet, int node, int ingressPort) {
+        MacTable table = macTables[node];
+        int port = table != null ? table.get(MAC_BASE | packetFrameDestination[packet], now, macAgingTime) : MacTable.NONE;
+        if (port == MacTable.NONE) {
+            packetsFlooded++;
+            flood(packet, node, ingressPort);
+        } else if (port == ingressPort) {
+            // The destination is back where the frame came from, it has seen it already
+            packetsFiltered++;
+            freePacket(packet);
+        } else {
+            transmit(packet, port);
+        }
+    }
+
+    // Router forwarding: longest-prefix match on the destination's IP. A next hop that is not a
+    // router is a segment, the frame goes to the destination on it or to its other router.
+    private void route(int packet, int node) {
+        int destination = packetDestination[packet];
+        Device nextHop = hasIp[destination] ? routers[node].lookup(ips[destination]) : null;
+        int hop = nextHop != null ? adjacency.indexOf(nextHop) : -1;
+        int port = hop >= 0 ? findPort(node, hop) : -1;
+        int address = port < 0 ? -1 : routers[hop] != null ? hop : frameAddress(segment[hop], destination, node);
+        if (address < 0) {
+            drop(packet, node);
+        } else {
+            packetFrameSource[packet] = node;
+            packetFrameDestination[packet] = address;
+            transmit(packet, port);
+        }
+    }
+
+    // Node a frame for destination is addressed to on segment s: the destination when it is on
+    // the segment, else the first router on it other than from, -1 when there is none
+    private int frameAddress(int s, int destination, int from) {
+        if (segment[destination] == s) {
+            return destination;
+        }
+        int gateway = -1;
+        for (int router : segmentRouters[s]) {
+            if (router == destination) {
+                return destination;
+            }
+            if (gateway < 0 && router != from) {
+                gateway = router;
+            }
+        }
+        return gateway;
+    }
+
+    // Copy the packet out of every port except the one it came in on
+    private void flood(int packet, int node, int ingressPort) {
+        int first = -1;
+        for (int port = portStart[node], end = portStart[node + 1]; port < end; port++) {
+            if (port == ingressPort || portBlocked[port]) {
+                continue;
+            }
+            if (first < 0) {
+                first = port;
+            } else {
+                transmit(copyPacket(packet), port);
+            }
+        }
+        if (first < 0) {
+            drop(packet, node);
+        } else {
+            transmit(packet, first);
+        }
+    }
+
+    private void transmit(int packet, int port) {
+        long start = Math.max(now, portFreeAt[port]);
+        long transmitDelay = (packetSize[packet] * 8L * 1_000_000_000L) / portBandwidth[port];
+        long finish = start + transmitDelay;
+        portFreeAt[port] = finish;
+        portTxPackets[port]++;
+        portTxBytes[port] += packetSize[packet];
+        int peerPort = portPeerPort[port];
+        queue.schedule(finish + portPropagation[port], EVENT_ARRIVE, packet, portPeer[port], peerPort);
+    }
+
+    private void deliver(int packet, int node) {
+        packetsDelivered++;
+        long latency = now - packetSentAt[packet];
+        totalLatency += latency;
+        if (listener != null) {
+            listener.packetDelivered(nodes[packetSource[packet]], nodes[node], packetSize[packet], packetSentAt[packet], now);
+        }
+        freePacket(packet);
+    }
+
+    private void drop(int packet, int node) {
+        packetsDropped++;
+        if (listener != null) {
+            listener.packetDropped(nodes[packetSource[packet]], nodes[packetDestination[packet]], nodes[node], now);
+        }
+        freePacket(packet);
+    }
+
+    private int allocatePacket(int source, int destination, int size, long sentAt) {
+        int packet;
+        if (freeCount > 0) {
+            packet = freePackets[--freeCount];
+        } else {
+            if (packetCount == packetSource.length) {
+                int capacity = packetCount * 2;
+                packetSource = Arrays.copyOf(packetSource, capacity);
+                packetFrameSource = Arrays.copyOf(packetFrameSource, capacity);
+                packetFrameDestination = Arrays.copyOf(packetFrameDestination, capacity);
+                packetDestination = Arrays.copyOf(packetDestination, capacity);
+                packetSize = Arrays.copyOf(packetSize, capacity);
+                packetHops = Arrays.copyOf(packetHops, capacity);
+                packetSentAt = Arrays.copyOf(packetSentAt, capacity);
+            }
+            packet = packetCount++;
+        }
+        packetSource[packet] = source;
+        packetFrameSource[packet] = source;
+        packetFrameDestination[packet] = destination;
+        packetDestination[packet] = destination;
+        packetSize[packet] = size;
+        packetHops[packet] = 0;
+        packetSentAt[packet] = sentAt;
+        return packet;
+    }
+
+    private int copyPacket(int packet) {
+        int copy = allocatePacket(packetSource[packet], packetDestination[packet], packetSize[packet], packetSentAt[packet]);
+        packetFrameSource[copy] = packetFrameSource[packet];
+        packetFrameDestination[copy] = packetFrameDestination[packet];
+        packetHops[copy] = packetHops[packet];
+        return copy;
+    }
+
+    private void freePacket(int packet) {
+        if (freeCount == freePackets.length) {
+            freePackets = Arrays.copyOf(freePackets, freeCount * 2);
+        }
+        freePackets[freeCount++] = packet;
+    }
+
+    private int findPort(int node, int peer) {
+        return adjacency.find(node, peer);
+    }
+
+    private int linkPort(Device node, Device peer) {
+        int port = findPort(ordinalOf(node), ordinalOf(peer));
+        if (port < 0) {
+            throw new IllegalArgumentException(node.getName() + " is not linked to " + peer.getName());
+        }
+        return port;
+    }
+
+    private int ordinalOf(Device device) {
+        int ordinal = adjacency.indexOf(device);
+        if (ordinal < 0) {
+            throw new IllegalArgumentException("Device is not part of this simulation: " + device);
+        }
+        return ordinal;
+    }
+
+    public long getTime() {
+        return now;
+    }
+
+    public int getPendingEvents() {
+        return queue.size();
+    }
+
+    public long getEventsProcessed() {
+        return eventsProcessed;
+    }
+
+    public long getPacketsSent() {
+        return packetsSent;
+    }
+
+    public long getPacketsDelivered() {
+        return packetsDelivered;
+    }
+
+    public long getPacketsDropped() {
+        return packetsDropped;
+    }
+
+    public long getPacketsFlooded() {
+        return packetsFlooded;
+    }
+
+    // Frames a switch discarded: received on a blocked port, or for a destination learned
+    // on the port they came in on
+    public long getPacketsFiltered() {
+        return packetsFiltered;
+    }
+
+    // Counters of the port on node that leads to peer
+    public long getTransmittedPackets(Device node, Device peer) {
+        return portTxPackets[linkPort(node, peer)];
+    }
+
+    public long getTransmittedBytes(Device node, Device peer) {
+        return portTxBytes[linkPort(node, peer)];
+    }
+
+    public long getReceivedPackets(Device node, Device peer) {
+        return portRxPackets[linkPort(node, peer)];
+    }
+
+    public long getReceivedBytes(Device node, Device peer) {
+        return portRxBytes[linkPort(node, peer)];
+    }
+
+    public long getMacAddress(Device device) {
+        return MAC_BASE | ordinalOf(device);
+    }
+
+    // Neighbor the switch forwards frames for station to, null while it has not learned it
+    public Device getLearnedPort(Device switchDevice, Device station) {
+        MacTable table = macTables[ordinalOf(switchDevice)];
+        int port = table != null ? table.get(getMacAddress(station), now, macAgingTime) : MacTable.NONE;
+        return port == MacTable.NONE ? null : nodes[portPeer[port]];
+    }
+
+    public int getMacTableSize(Device switchDevice) {
+        MacTable table = macTables[ordinalOf(switchDevice)];
+        return table != null ? table.size(now, macAgingTime) : 0;
+    }
+
+    public double getAverageLatency() {
+        return packetsDelivered == 0 ? 0 : (double) totalLatency / packetsDelivered;
+    }
+}
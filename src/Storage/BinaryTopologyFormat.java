@@ -0,0 +1,306 @@
+package Storage;
+
+import Data.Computer;
+import Data.Device;
+import Data.Router;
+import Data.Switch;
+import Data.Topology;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Compact binary snapshot of a topology, read through a memory-mapped FileChannel.
+// Layout (big endian):
+//     int magic, int version, int deviceCount, int stringCount, int linkCount
+//     stringCount x (int byteLength, UTF-8 bytes)        interned device names
+//     deviceCount x (byte type, int nameId, int ip, int x, int y)
+//     linkCount x (int from, int to)                       device ordinals, in declaration order
+//     int routeCount                                       version 2 and up
+//     routeCount x (int router, int prefix, byte length, int next hop)
+// IPs are stored as 32-bit values. An IP that is not dotted IPv4 is kept in the string table
+// instead and its type byte has IP_IS_STRING set.
+public class BinaryTopologyFormat {
+    public static final String EXTENSION = ".bin";
+
+    private static final int MAGIC = 0x4E544F50; // "NTOP"
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 5 * 4;
+    private static final int DEVICE_RECORD_SIZE = 1 + 4 * 4;
+    private static final int LINK_RECORD_SIZE = 2 * 4;
+    private static final int ROUTE_RECORD_SIZE = 3 * 4 + 1;
+
+    private static final byte TYPE_COMPUTER = 0;
+    private static final byte TYPE_SWITCH = 1;
+    private static final byte TYPE_ROUTER = 2;
+    private static final byte IP_IS_STRING = (byte) 0x80;
+
+    public void write(Topology topology, Path file) throws IOException {
+        List<Device> devices = topology.getDevices();
+        int n = devices.size();
+
+        Map<String, Integer> stringIds = new HashMap<>();
+        List<byte[]> strings = new ArrayList<>();
+        int[] nameIds = new int[n];
+        int[] ips = new int[n];
+        byte[] types = new byte[n];
+        long stringBytes = 0;
+        int linkCount = 0;
+        int routeCount = 0;
+        for (int i = 0; i < n; i++) {
+            Device device = devices.get(i);
+            types[i] = device instanceof Computer ? TYPE_COMPUTER : device instanceof Router ? TYPE_ROUTER : TYPE_SWITCH;
+            if (device instanceof Router) {
+                routeCount += ((Router) device).getRouteCount();
+            }
+            int before = strings.size();
+            nameIds[i] = intern(device.getName(), stringIds, strings);
+            if (device.isIpv4()) {
+                ips[i] = device.getIpValue();
+            } else {
+                types[i] |= IP_IS_STRING;
+                ips[i] = intern(device.getIp(), stringIds, strings);
+            }
+            for (int s = before; s < strings.size(); s++) {
+                stringBytes += 4 + strings.get(s).length;
+            }
+            if (device instanceof Computer) {
+                linkCount += indexOf(topology, ((Computer) device).getLinkedDevice()) >= 0 ? 1 : 0;
+            } else if (device instanceof Switch) {
+                for (Device linked : ((Switch) device).getLinkedDevices()) {
+                    linkCount += indexOf(topology, linked) >= 0 ? 1 : 0;
+                }
+            }
+        }
+
+        long size = HEADER_SIZE + stringBytes + (long) n * DEVICE_RECORD_SIZE + (long) linkCount * LINK_RECORD_SIZE
+                + 4 + (long) routeCount * ROUTE_RECORD_SIZE;
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Topology too large for a single snapshot: " + size + " bytes");
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int) size);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(n).putInt(strings.size()).putInt(linkCount);
+        for (byte[] string : strings) {
+            buffer.putInt(string.length).put(string);
+        }
+        for (int i = 0; i < n; i++) {
+            Device device = devices.get(i);
+            buffer.put(types[i]).putInt(nameIds[i]).putInt(ips[i]).putInt(device.getX()).putInt(device.getY());
+        }
+        for (int i = 0; i < n; i++) {
+            Device device = devices.get(i);
+            if (device instanceof Computer) {
+                putLink(buffer, i, indexOf(topology, ((Computer) device).getLinkedDevice()));
+            } else if (device instanceof Switch) {
+                for (Device linked : ((Switch) device).getLinkedDevices()) {
+                    putLink(buffer, i, indexOf(topology, linked));
+                }
+            }
+        }
+        // Next hops outside the topology are left out, so count what is actually written
+        int routeCountAt = buffer.position();
+        buffer.putInt(0);
+        int written = 0;
+        for (int i = 0; i < n; i++) {
+            if (devices.get(i) instanceof Router) {
+                written += putRoutes(buffer, topology, i, (Router) devices.get(i));
+            }
+        }
+        buffer.putInt(routeCountAt, written);
+
+        // Written beside the file and renamed over it, the loader prefers a newer .bin so a
+        // torn one must never be seen. Not mapped, a live mapping keeps Windows from renaming.
+        buffer.flip();
+        Path directory = file.toAbsolutePath().getParent();
+        Path temp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(false);
+            }
+            try {
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    public Topology read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+                throw new IOException("Not a topology snapshot: " + file);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("Not a topology snapshot: " + file);
+            }
+            try {
+                return read(buffer, file);
+            } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+                // Truncated, or a count or index that is not checked explicitly
+                throw new IOException("Corrupt topology snapshot: " + file, e);
+            }
+        }
+    }
+
+    private Topology read(ByteBuffer buffer, Path file) throws IOException {
+        int version = buffer.getInt();
+        if (version < 1 || version > VERSION) {
+            throw new IOException("Unsupported snapshot version " + version + ": " + file);
+        }
+        int n = buffer.getInt();
+        int stringCount = buffer.getInt();
+        int linkCount = buffer.getInt();
+        if (n < 0 || stringCount < 0 || linkCount < 0 || (long) stringCount * 4 > buffer.remaining()) {
+            throw new IOException("Corrupt topology snapshot: " + file);
+        }
+
+        String[] strings = new String[stringCount];
+        byte[] scratch = new byte[64];
+        for (int s = 0; s < stringCount; s++) {
+            int length = buffer.getInt();
+            if (length < 0 || length > buffer.remaining()) {
+                throw new IOException("Corrupt string in topology snapshot: " + file);
+            }
+            if (length > scratch.length) {
+                scratch = new byte[Math.max(length, scratch.length * 2)];
+            }
+            buffer.get(scratch, 0, length);
+            strings[s] = new String(scratch, 0, length, StandardCharsets.UTF_8);
+        }
+
+        if ((long) n * DEVICE_RECORD_SIZE > buffer.remaining()) {
+            throw new IOException("Corrupt topology snapshot: " + file);
+        }
+        Topology topology = new Topology();
+        Device[] devices = new Device[n];
+        List<List<Device>> switchLinks = new ArrayList<>();
+        int[] switchSlot = new int[n];
+        for (int i = 0; i < n; i++) {
+            byte type = buffer.get();
+            String name = string(strings, buffer.getInt(), file);
+            int ipValue = buffer.getInt();
+            boolean ipIsString = (type & IP_IS_STRING) != 0;
+            Device device;
+            if ((type & ~IP_IS_STRING) == TYPE_COMPUTER) {
+                device = ipIsString ? new Computer(name, string(strings, ipValue, file), null) : new Computer(name, ipValue, null);
+                switchSlot[i] = -1;
+            } else {
+                if ((type & ~IP_IS_STRING) == TYPE_ROUTER) {
+                    device = ipIsString ? new Router(name, string(strings, ipValue, file)) : new Router(name, ipValue);
+                } else {
+                    device = ipIsString ? new Switch(name, string(strings, ipValue, file)) : new Switch(name, ipValue);
+                }
+                switchSlot[i] = switchLinks.size();
+                switchLinks.add(new ArrayList<>());
+            }
+            device.setPosition(buffer.getInt(), buffer.getInt());
+            devices[i] = device;
+            topology.addDevice(device);
+        }
+
+        for (int l = 0; l < linkCount; l++) {
+            int from = buffer.getInt();
+            int to = buffer.getInt();
+            if (from < 0 || from >= n || to < 0 || to >= n) {
+                throw new IOException("Corrupt link in topology snapshot: " + file);
+            }
+            if (devices[from] instanceof Computer) {
+                ((Computer) devices[from]).setLinkedDevice(devices[to]);
+            } else {
+                switchLinks.get(switchSlot[from]).add(devices[to]);
+            }
+        }
+        // Switch lists are authoritative, apply them after the computers like the text loader
+        for (int i = 0; i < n; i++) {
+            if (switchSlot[i] >= 0) {
+                ((Switch) devices[i]).setLinkedDevices(switchLinks.get(switchSlot[i]));
+            }
+        }
+
+        int routeCount = version >= 2 ? buffer.getInt() : 0;
+        for (int r = 0; r < routeCount; r++) {
+            int router = buffer.getInt();
+            int prefix = buffer.getInt();
+            int length = buffer.get();
+            int nextHop = buffer.getInt();
+            if (router < 0 || router >= n || !(devices[router] instanceof Router) || length < 0 || length > 32
+                    || nextHop < 0 || nextHop >= n) {
+                throw new IOException("Corrupt route in topology snapshot: " + file);
+            }
+            // Like the text loader, drop a route through a device the router is not linked to
+            Router owner = (Router) devices[router];
+            if (owner.getLinkedDevices().contains(devices[nextHop])) {
+                owner.addRoute(prefix, length, devices[nextHop]);
+            }
+        }
+        return topology;
+    }
+
+    private static String string(String[] strings, int id, Path file) throws IOException {
+        if (id < 0 || id >= strings.length) {
+            throw new IOException("Corrupt string reference in topology snapshot: " + file);
+        }
+        return strings[id];
+    }
+
+    public static void convertTextToBinary(Path textFile, Path binaryFile) throws IOException {
+        Topology topology = new TopologyReader().read(textFile, null);
+        new BinaryTopologyFormat().write(topology, binaryFile);
+    }
+
+    public static void convertBinaryToText(Path binaryFile, Path textFile) throws IOException {
+        Topology topology = new BinaryTopologyFormat().read(binaryFile);
+        new TopologyWriter().write(topology, textFile);
+    }
+
+    private static int intern(String value, Map<String, Integer> ids, List<byte[]> strings) {
+        Integer id = ids.get(value);
+        if (id == null) {
+            id = strings.size();
+            ids.put(value, id);
+            strings.add(value.getBytes(StandardCharsets.UTF_8));
+        }
+        return id;
+    }
+
+    private static int indexOf(Topology topology, Device device) {
+        return device == null ? -1 : topology.indexOf(device);
+    }
+
+    private static int putRoutes(ByteBuffer buffer, Topology topology, int ordinal, Router router) {
+        int[] written = {0};
+        router.forEachRoute((prefix, length, nextHop) -> {
+            int hop = topology.indexOf(nextHop);
+            if (hop >= 0) {
+                buffer.putInt(ordinal).putInt(prefix).put((byte) length).putInt(hop);
+                written[0]++;
+            }
+        });
+        return written[0];
+    }
+
+    private static void putLink(ByteBuffer buffer, int from, int to) {
+        if (to >= 0) {
+            buffer.putInt(from).putInt(to);
+        }
+    }
+}
@@ -0,0 +1,264 @@
+package Storage;
+
+import Data.Device;
+import Data.Topology;
+import Data.TopologyListener;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+// Keeps the users_data file in a slotted layout so single device edits are written in place.
+// Every record is padded with spaces up to a multiple of SLOT_ALIGN bytes, which the reader
+// ignores, and the byte offset of each device's slot is remembered. A save then only formats
+// the devices the topology reports dirty: a record that still fits its slot overwrites it, a
+// longer one moves to a free slot or the end of the file, and the slots of removed devices are
+// blanked. The first save after load, or after a failed write, rewrites the whole file.
+//
+// Updates are cumulative: a captured update also carries every record an earlier, not yet
+// written update carried, so the saver may drop an update that a newer one overtook.
+public class IncrementalTopologyFile implements TopologyListener {
+    private static final int SLOT_ALIGN = 32;
+
+    private static class Slot {
+        final long offset;
+        final int length;
+
+        Slot(long offset, int length) {
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    private final Map<Device, Slot> slots = new IdentityHashMap<>();
+    private final Map<Integer, ArrayDeque<Long>> freeSlots = new HashMap<>(); // by slot length
+    private long fileLength;
+    private boolean valid; // slots describe the file on disk, or the next write that will produce it
+
+    // Not yet written: capture sequence per device, and offset to capture sequence per slot to blank
+    private final Map<Device, Integer> unwritten = new IdentityHashMap<>();
+    private final Map<Long, Integer> unwrittenBlanks = new HashMap<>();
+    private final Map<Long, Integer> blankLengths = new HashMap<>();
+    private int captures;
+
+    // Forget the layout, the next capture rewrites the whole file
+    public synchronized void invalidate() {
+        valid = false;
+        slots.clear();
+        freeSlots.clear();
+        unwritten.clear();
+        unwrittenBlanks.clear();
+        blankLengths.clear();
+        fileLength = 0;
+    }
+
+    // Called where the topology may be read. onWritten runs once the update is on disk.
+    public synchronized WriteBehindSaver.Snapshot capture(Topology topology, Runnable onWritten) {
+        List<Device> dirty = topology.takeDirtyDevices();
+        int sequence = ++captures;
+        if (!valid) {
+            return captureFull(topology, sequence, onWritten);
+        }
+
+        StringBuilder line = new StringBuilder(128);
+        for (Device device : dirty) {
+            line.setLength(0);
+            TopologyWriter.appendRecord(device, line);
+            if (line.length() == 0) {
+                continue;
+            }
+            int length = padded(line);
+            Slot slot = slots.get(device);
+            if (slot == null || slot.length < length) {
+                if (slot != null) {
+                    release(slot, sequence);
+                }
+                slots.put(device, allocate(length));
+            }
+            unwritten.put(device, sequence);
+        }
+
+        // Format every record not on disk yet, not only this capture's
+        List<long[]> blanks = new ArrayList<>(unwrittenBlanks.size());
+        for (Long offset : unwrittenBlanks.keySet()) {
+            blanks.add(new long[]{offset, blankLengths.get(offset)});
+        }
+        List<Long> offsets = new ArrayList<>(unwritten.size());
+        List<byte[]> records = new ArrayList<>(unwritten.size());
+        for (Device device : unwritten.keySet()) {
+            Slot slot = slots.get(device);
+            line.setLength(0);
+            TopologyWriter.appendRecord(device, line);
+            offsets.add(slot.offset);
+            records.add(slotBytes(line, slot.length));
+        }
+
+        return new WriteBehindSaver.Snapshot(file -> {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                // Blanks first, a freed slot may have been handed to another record since
+                for (long[] blank : blanks) {
+                    writeFully(channel, ByteBuffer.wrap(blankBytes((int) blank[1])), blank[0]);
+                }
+                for (int i = 0; i < records.size(); i++) {
+                    writeFully(channel, ByteBuffer.wrap(records.get(i)), offsets.get(i));
+                }
+                channel.force(false);
+            } catch (IOException e) {
+                invalidate();
+                throw e;
+            }
+            written(sequence);
+            if (onWritten != null) {
+                onWritten.run();
+            }
+        }, null);
+    }
+
+    @Override
+    public synchronized void deviceRemoved(Device device) {
+        Slot slot = slots.remove(device);
+        unwritten.remove(device);
+        if (slot != null) {
+            release(slot, captures + 1);
+        }
+    }
+
+    @Override
+    public void deviceAdded(Device device) {
+    }
+
+    @Override
+    public void deviceRenamed(Device device, String oldName) {
+    }
+
+    @Override
+    public void deviceChanged(Device device) {
+    }
+
+    @Override
+    public void deviceMoved(Device device, int oldX, int oldY) {
+    }
+
+    private WriteBehindSaver.Snapshot captureFull(Topology topology, int sequence, Runnable onWritten) {
+        invalidate();
+        StringBuilder content = new StringBuilder(topology.size() * 64);
+        StringBuilder line = new StringBuilder(128);
+        for (Device device : topology.getDevices()) {
+            line.setLength(0);
+            TopologyWriter.appendRecord(device, line);
+            if (line.length() == 0) {
+                continue;
+            }
+            int length = padded(line);
+            slots.put(device, new Slot(fileLength, length));
+            fileLength += length;
+            content.append(line, 0, line.length() - 1);
+            for (int i = utf8Length(line); i < length; i++) {
+                content.append(' ');
+            }
+            content.append('\n');
+        }
+        valid = true;
+        return new WriteBehindSaver.Snapshot(file -> {
+            try {
+                WriteBehindSaver.writeAtomically(file, content);
+            } catch (IOException e) {
+                invalidate();
+                throw e;
+            }
+            if (onWritten != null) {
+                onWritten.run();
+            }
+        }, null);
+    }
+
+    private synchronized void written(int sequence) {
+        for (Iterator<Integer> it = unwritten.values().iterator(); it.hasNext(); ) {
+            if (it.next() <= sequence) {
+                it.remove();
+            }
+        }
+        for (Iterator<Map.Entry<Long, Integer>> it = unwrittenBlanks.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Long, Integer> blank = it.next();
+            if (blank.getValue() <= sequence) {
+                blankLengths.remove(blank.getKey());
+                it.remove();
+            }
+        }
+    }
+
+    private void release(Slot slot, int sequence) {
+        unwrittenBlanks.put(slot.offset, sequence);
+        blankLengths.put(slot.offset, slot.length);
+        freeSlots.computeIfAbsent(slot.length, k -> new ArrayDeque<>()).add(slot.offset);
+    }
+
+    private Slot allocate(int length) {
+        ArrayDeque<Long> free = freeSlots.get(length);
+        if (free != null && !free.isEmpty()) {
+            long offset = free.poll();
+            // Overwritten by the new record, no need to blank it
+            unwrittenBlanks.remove(offset);
+            blankLengths.remove(offset);
+            return new Slot(offset, length);
+        }
+        Slot slot = new Slot(fileLength, length);
+        fileLength += length;
+        return slot;
+    }
+
+    // Slot length in bytes for a record line ending in '\n'
+    private static int padded(CharSequence line) {
+        return (utf8Length(line) + SLOT_ALIGN - 1) / SLOT_ALIGN * SLOT_ALIGN;
+    }
+
+    private static byte[] slotBytes(CharSequence line, int length) {
+        byte[] record = line.toString().getBytes(StandardCharsets.UTF_8);
+        byte[] slot = Arrays.copyOf(record, length);
+        Arrays.fill(slot, record.length - 1, length - 1, (byte) ' ');
+        slot[length - 1] = '\n';
+        return slot;
+    }
+
+    private static byte[] blankBytes(int length) {
+        byte[] slot = new byte[length];
+        Arrays.fill(slot, (byte) ' ');
+        slot[length - 1] = '\n';
+        return slot;
+    }
+
+    private static int utf8Length(CharSequence line) {
+        int length = 0;
+        for (int i = 0, n = line.length(); i < n; i++) {
+            char c = line.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c)) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+}
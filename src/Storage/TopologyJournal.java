@@ -0,0 +1,309 @@
+package Storage;
+
+import Data.Device;
+import Data.Topology;
+import Data.TopologyListener;
+
+import java.io.BufferedReader;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+// Append-only log of topology edits kept next to the user file, one record per line:
+//     +<device line in the users_data format>   device added or changed (upsert by name)
+//     -<name>                                    device removed
+//     ~<old name>,<new name>                     device renamed
+// Each record is written with a single unbuffered append, so a crash loses at most the record
+// being written. Moves are held back until flushMoves() so a drag writes one record, not one
+// per mouse event. Once the journal grows past the threshold a compaction is requested: the
+// caller writes a full snapshot, rotating the journal to <file>.old first and deleting it
+// once the snapshot is on disk.
+public class TopologyJournal implements TopologyListener, AutoCloseable {
+    public static final String EXTENSION = ".journal";
+    public static final int DEFAULT_COMPACTION_THRESHOLD = 10_000;
+
+    private static final String ROTATED_SUFFIX = ".old";
+
+    private final Path file;
+    private final Path rotatedFile;
+    private final int compactionThreshold;
+    private final Runnable compactionRequest;
+    private final Consumer<Exception> errorHandler;
+    private final Set<Device> pendingMoves = new LinkedHashSet<>();
+    private final StringBuilder record = new StringBuilder(128);
+
+    private OutputStream out;
+    private int records;
+    private boolean compactionRequested;
+    private int generation;
+
+    public TopologyJournal(Path file, int compactionThreshold, Runnable compactionRequest,
+                           Consumer<Exception> errorHandler) throws IOException {
+        this.file = file;
+        this.rotatedFile = rotatedFileOf(file);
+        this.compactionThreshold = compactionThreshold;
+        this.compactionRequest = compactionRequest;
+        this.errorHandler = errorHandler;
+        this.records = countRecords(rotatedFile) + countRecords(file);
+        this.out = new FileOutputStream(file.toFile(), true);
+        if (records > 0) {
+            requestCompaction();
+        }
+    }
+
+    // Applies the rotated journal and then the current one. Returns the number of records applied.
+    // The snapshot replayed over may already hold some of the records, when it was written but
+    // the rotated journal not yet deleted. Those must not be applied twice: an add of a device
+    // the snapshot does not have is skipped if later records remove it, or rename it to a name
+    // the snapshot has, as the snapshot then holds the device under its later name.
+    public static int replay(Topology topology, Path file) throws IOException {
+        List<String> lines = new ArrayList<>();
+        readRecords(rotatedFileOf(file), lines);
+        readRecords(file, lines);
+
+        // Backwards: what each name at each add becomes by the end, null once removed
+        String[] fates = new String[lines.size()];
+        Map<String, String> fate = new HashMap<>(); // name -> final name, absent if unchanged
+        for (int i = lines.size() - 1; i >= 0; i--) {
+            String line = lines.get(i);
+            String body = line.substring(1);
+            switch (line.charAt(0)) {
+                case '+': {
+                    String name = recordName(body);
+                    fates[i] = fate.containsKey(name) ? fate.get(name) : name;
+                    break;
+                }
+                case '-':
+                    fate.put(body, null);
+                    break;
+                case '~': {
+                    int comma = body.indexOf(',');
+                    if (comma >= 0) {
+                        String newName = body.substring(comma + 1);
+                        String finalName = fate.containsKey(newName) ? fate.get(newName) : newName;
+                        fate.remove(newName); // before the rename the name was free or another device's
+                        fate.put(body.substring(0, comma), finalName);
+                    }
+                    break;
+                }
+                default:
+                    break;
+            }
+        }
+
+        TopologyReader reader = new TopologyReader();
+        int applied = 0;
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i);
+            String body = line.substring(1);
+            switch (line.charAt(0)) {
+                case '+': {
+                    String name = recordName(body);
+                    if (topology.findDeviceByName(name) == null
+                            && (fates[i] == null || !fates[i].equals(name) && topology.findDeviceByName(fates[i]) != null)) {
+                        break; // the snapshot already holds this record and the ones after it
+                    }
+                    if (!reader.applyRecord(topology, body)) {
+                        System.err.println("Skipping invalid journal record: " + line);
+                        continue;
+                    }
+                    break;
+                }
+                case '-': {
+                    Device device = topology.findDeviceByName(body);
+                    if (device != null) {
+                        topology.removeDevice(device);
+                    }
+                    break;
+                }
+                case '~': {
+                    int comma = body.indexOf(',');
+                    if (comma < 0) {
+                        System.err.println("Skipping invalid journal record: " + line);
+                        continue;
+                    }
+                    Device device = topology.findDeviceByName(body.substring(0, comma));
+                    String newName = body.substring(comma + 1);
+                    if (device != null && topology.findDeviceByName(newName) == null) {
+                        device.setName(newName);
+                    }
+                    break;
+                }
+                default:
+                    System.err.println("Skipping invalid journal record: " + line);
+                    continue;
+            }
+            applied++;
+        }
+        return applied;
+    }
+
+    private static void readRecords(Path file, List<String> lines) throws IOException {
+        if (!Files.exists(file)) {
+            return;
+        }
+        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (!line.isEmpty()) {
+                    lines.add(line);
+                }
+            }
+        }
+    }
+
+    // The device name of an add record, the second field of the device line
+    private static String recordName(String body) {
+        int start = body.indexOf(',') + 1;
+        int end = body.indexOf(',', start);
+        return start > 0 && end > start ? body.substring(start, end) : "";
+    }
+
+    public static Path rotatedFileOf(Path file) {
+        return Paths.get(file + ROTATED_SUFFIX);
+    }
+
+    @Override
+    public synchronized void deviceAdded(Device device) {
+        upsert(device);
+    }
+
+    @Override
+    public synchronized void deviceRemoved(Device device) {
+        flushMoves();
+        record.setLength(0);
+        record.append('-').append(device.getName()).append('\n');
+        append();
+    }
+
+    @Override
+    public synchronized void deviceRenamed(Device device, String oldName) {
+        flushMoves();
+        record.setLength(0);
+        record.append('~').append(oldName).append(',').append(device.getName()).append('\n');
+        append();
+    }
+
+    @Override
+    public synchronized void deviceChanged(Device device) {
+        upsert(device);
+    }
+
+    @Override
+    public synchronized void deviceMoved(Device device, int oldX, int oldY) {
+        pendingMoves.add(device);
+    }
+
+    // Writes the positions of devices moved since the last call
+    public synchronized void flushMoves() {
+        if (pendingMoves.isEmpty()) {
+            return;
+        }
+        List<Device> moved = new ArrayList<>(pendingMoves);
+        pendingMoves.clear();
+        for (Device device : moved) {
+            writeUpsert(device);
+        }
+    }
+
+    public synchronized boolean hasRecords() {
+        return records > 0 || !pendingMoves.isEmpty();
+    }
+
+    // Starts a new journal before a full snapshot is captured. Records up to now move to the
+    // rotated file, which discardRotated(generation) deletes once the snapshot is written.
+    public synchronized int rotate() throws IOException {
+        flushMoves();
+        out.close();
+        if (Files.exists(rotatedFile)) {
+            // An earlier snapshot never made it to disk, keep its records too
+            Files.write(rotatedFile, Files.readAllBytes(file), StandardOpenOption.APPEND);
+            Files.delete(file);
+        } else if (Files.exists(file)) {
+            Files.move(file, rotatedFile, StandardCopyOption.REPLACE_EXISTING);
+        }
+        out = new FileOutputStream(file.toFile(), true);
+        records = 0;
+        compactionRequested = false;
+        return ++generation;
+    }
+
+    public synchronized void discardRotated(int rotatedGeneration) {
+        if (rotatedGeneration != generation) {
+            return; // rotated again since, the file now also holds newer records
+        }
+        try {
+            Files.deleteIfExists(rotatedFile);
+        } catch (IOException e) {
+            errorHandler.accept(e);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        flushMoves();
+        try {
+            out.close();
+        } catch (IOException e) {
+            errorHandler.accept(e);
+        }
+    }
+
+    private void upsert(Device device) {
+        flushMoves();
+        pendingMoves.remove(device);
+        writeUpsert(device);
+    }
+
+    private void writeUpsert(Device device) {
+        record.setLength(0);
+        record.append('+');
+        TopologyWriter.appendRecord(device, record);
+        append();
+    }
+
+    private void append() {
+        try {
+            out.write(record.toString().getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            errorHandler.accept(e);
+            return;
+        }
+        if (++records >= compactionThreshold) {
+            requestCompaction();
+        }
+    }
+
+    private void requestCompaction() {
+        if (!compactionRequested) {
+            compactionRequested = true;
+            compactionRequest.run();
+        }
+    }
+
+    private static int countRecords(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        int count = 0;
+        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            while (in.readLine() != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,355 @@
+package Storage;
+
+import Data.Computer;
+import Data.Device;
+import Data.Ipv4;
+import Data.Router;
+import Data.Switch;
+import Data.Topology;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntConsumer;
+
+// Single-pass reader for the users_data text format, one device per line:
+//     Computer,<name>,<ip>,<linked name or None>,<x>,<y>
+//     Switch,<name>,<ip>,<linked names separated by ;>,<x>,<y>
+//     Router,<name>,<ip>,<linked names separated by ;>,<x>,<y>,<routes separated by ;>
+// where a route is <prefix>/<length>><next hop name>. Links to devices further down the file
+// wait in a pending table keyed by the missing name and are resolved as soon as that device
+// is read. Routes are applied once the whole file is read, their next hops linked by then.
+public class TopologyReader {
+    private static final int FIELDS = 7;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final List<String> warnings = new ArrayList<>();
+    private final List<Device> unplacedDevices = new ArrayList<>();
+
+    // Devices waiting for a name that has not been read yet: a Computer or a PendingSwitch
+    private final Map<String, List<Object>> pendingLinks = new HashMap<>();
+    private final List<PendingSwitch> pendingSwitches = new ArrayList<>();
+    private final List<Router> pendingRouters = new ArrayList<>();
+    private final List<String> pendingRoutes = new ArrayList<>();
+
+    private final int[] fieldStart = new int[FIELDS];
+    private final int[] fieldEnd = new int[FIELDS];
+
+    private static class PendingSwitch {
+        final Switch device;
+        final String[] names;
+        int missing;
+
+        PendingSwitch(Switch device, String[] names) {
+            this.device = device;
+            this.names = names;
+        }
+    }
+
+    public Topology read(Path file, IntConsumer progress) throws IOException {
+        long totalBytes = Math.max(1, Files.size(file));
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return read(reader, totalBytes, progress);
+        }
+    }
+
+    // Progress is reported in percent of totalBytes, at most once per percent
+    public Topology read(Reader in, long totalBytes, IntConsumer progress) throws IOException {
+        BufferedReader reader = in instanceof BufferedReader ? (BufferedReader) in : new BufferedReader(in, BUFFER_SIZE);
+        Topology topology = new Topology();
+        long consumed = 0;
+        int reported = -1;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            consumed += line.length() + 1;
+            readLine(topology, line);
+            if (progress != null) {
+                int percent = (int) Math.min(100, consumed * 100 / Math.max(1, totalBytes));
+                if (percent != reported) {
+                    reported = percent;
+                    progress.accept(percent);
+                }
+            }
+        }
+
+        // Names that never showed up: keep whatever part of the switch lists resolved
+        for (PendingSwitch pending : pendingSwitches) {
+            if (pending.missing > 0) {
+                applySwitchLinks(topology, pending);
+            }
+        }
+        for (String name : pendingLinks.keySet()) {
+            warnings.add("Unknown linked device: " + name);
+        }
+        for (int i = 0; i < pendingRouters.size(); i++) {
+            applyRoutes(topology, pendingRouters.get(i), pendingRoutes.get(i));
+        }
+        pendingLinks.clear();
+        pendingSwitches.clear();
+        pendingRouters.clear();
+        pendingRoutes.clear();
+        if (progress != null && reported != 100) {
+            progress.accept(100);
+        }
+        return topology;
+    }
+
+    public List<String> getWarnings() {
+        return warnings;
+    }
+
+    // Devices whose coordinates could not be read, the caller decides where to put them
+    public List<Device> getUnplacedDevices() {
+        return unplacedDevices;
+    }
+
+    // Adds the device described by a record line, or updates the device of the same name in
+    // place. Linked names must already exist. Returns false if the line is not a valid record.
+    public boolean applyRecord(Topology topology, String line) {
+        if (line.isBlank() || !splitFields(line)) {
+            return false;
+        }
+        boolean isComputer = fieldEquals(line, 0, "Computer");
+        boolean isRouter = fieldEquals(line, 0, "Router");
+        if (!isComputer && !isRouter && !fieldEquals(line, 0, "Switch")) {
+            return false;
+        }
+        int x;
+        int y;
+        try {
+            x = parseInt(line, 4);
+            y = parseInt(line, 5);
+        } catch (NumberFormatException e) {
+            return false;
+        }
+        String name = field(line, 1);
+
+        Device device = topology.findDeviceByName(name);
+        if (device != null && ((device instanceof Computer) != isComputer || (device instanceof Router) != isRouter)) {
+            topology.removeDevice(device);
+            device = null;
+        }
+        if (device == null) {
+            device = newDevice(isComputer, isRouter, name, line);
+            device.setPosition(x, y);
+            topology.addDevice(device);
+        } else {
+            long ip = Ipv4.parse(line, fieldStart[2], fieldEnd[2]);
+            if (ip >= 0 && (!device.isIpv4() || device.getIpValue() != (int) ip)) {
+                device.setIp((int) ip);
+            } else if (ip < 0 && !field(line, 2).equals(device.getIp())) {
+                device.setIp(field(line, 2));
+            }
+            device.setPosition(x, y);
+        }
+
+        if (isComputer) {
+            Device linked = fieldEquals(line, 3, "None") ? null : topology.findDeviceByName(field(line, 3));
+            if (((Computer) device).getLinkedDevice() != linked) {
+                ((Computer) device).setLinkedDevice(linked);
+            }
+        } else {
+            String[] names = fieldStart[3] != fieldEnd[3] ? splitNames(line, fieldStart[3], fieldEnd[3]) : new String[0];
+            applySwitchLinks(topology, new PendingSwitch((Switch) device, names));
+            if (isRouter) {
+                ((Router) device).clearRoutes();
+                applyRoutes(topology, (Router) device, field(line, 6));
+            }
+        }
+        return true;
+    }
+
+    private void readLine(Topology topology, String line) {
+        if (line.isBlank()) {
+            return;
+        }
+        if (!splitFields(line)) {
+            System.err.println("Skipping invalid line: " + line);
+            return;
+        }
+
+        boolean isComputer = fieldEquals(line, 0, "Computer");
+        boolean isRouter = fieldEquals(line, 0, "Router");
+        if (!isComputer && !isRouter && !fieldEquals(line, 0, "Switch")) {
+            System.err.println("Skipping invalid line: " + line);
+            return;
+        }
+        String name = field(line, 1);
+
+        Device device = newDevice(isComputer, isRouter, name, line);
+        if (isRouter && fieldStart[6] != fieldEnd[6]) {
+            pendingRouters.add((Router) device);
+            pendingRoutes.add(field(line, 6));
+        }
+        try {
+            device.setPosition(parseInt(line, 4), parseInt(line, 5));
+        } catch (NumberFormatException e) {
+            warnings.add("Invalid coordinates in file for device: " + name);
+            unplacedDevices.add(device);
+        }
+        topology.addDevice(device);
+        if (topology.findDeviceByName(name) == device) {
+            resolvePending(topology, device);
+        }
+
+        if (isComputer) {
+            if (!fieldEquals(line, 3, "None") && fieldStart[3] != fieldEnd[3]) {
+                String linkedName = field(line, 3);
+                Device linked = topology.findDeviceByName(linkedName);
+                if (linked != null) {
+                    ((Computer) device).setLinkedDevice(linked);
+                } else {
+                    pendingLinks.computeIfAbsent(linkedName, k -> new ArrayList<>(1)).add(device);
+                }
+            }
+        } else if (fieldStart[3] != fieldEnd[3]) {
+            PendingSwitch pending = new PendingSwitch((Switch) device, splitNames(line, fieldStart[3], fieldEnd[3]));
+            for (String linkedName : pending.names) {
+                if (topology.findDeviceByName(linkedName) == null) {
+                    pending.missing++;
+                    pendingLinks.computeIfAbsent(linkedName, k -> new ArrayList<>(1)).add(pending);
+                }
+            }
+            if (pending.missing == 0) {
+                applySwitchLinks(topology, pending);
+            } else {
+                pendingSwitches.add(pending);
+            }
+        }
+    }
+
+    // IPv4 addresses are parsed straight out of the line, anything else is kept as text
+    private Device newDevice(boolean isComputer, boolean isRouter, String name, String line) {
+        long ip = Ipv4.parse(line, fieldStart[2], fieldEnd[2]);
+        if (ip < 0) {
+            String text = field(line, 2);
+            return isComputer ? new Computer(name, text, null) : isRouter ? new Router(name, text) : new Switch(name, text);
+        }
+        return isComputer ? new Computer(name, (int) ip, null) : isRouter ? new Router(name, (int) ip) : new Switch(name, (int) ip);
+    }
+
+    // Next hops must be linked to the router, as Router itself keeps them
+    private void applyRoutes(Topology topology, Router router, String routes) {
+        int start = 0;
+        while (start < routes.length()) {
+            int end = routes.indexOf(';', start);
+            if (end < 0) {
+                end = routes.length();
+            }
+            int slash = routes.indexOf('/', start);
+            int arrow = routes.indexOf('>', start);
+            long prefix = slash > start && slash < end ? Ipv4.parse(routes, start, slash) : Ipv4.INVALID;
+            int length = -1;
+            if (prefix >= 0 && arrow > slash + 1 && arrow < end) {
+                try {
+                    length = Integer.parseInt(routes, slash + 1, arrow, 10);
+                } catch (NumberFormatException e) {
+                    length = -1;
+                }
+            }
+            Device nextHop = length >= 0 && length <= 32 ? topology.findDeviceByName(routes.substring(arrow + 1, end).trim()) : null;
+            if (nextHop != null && router.getLinkedDevices().contains(nextHop)) {
+                router.addRoute((int) prefix, length, nextHop);
+            } else if (end > start) {
+                warnings.add("Invalid route for router " + router.getName() + ": " + routes.substring(start, end));
+            }
+            start = end + 1;
+        }
+    }
+
+    private void resolvePending(Topology topology, Device device) {
+        List<Object> waiting = pendingLinks.remove(device.getName());
+        if (waiting == null) {
+            return;
+        }
+        for (Object waiter : waiting) {
+            if (waiter instanceof Computer) {
+                ((Computer) waiter).setLinkedDevice(device);
+            } else {
+                PendingSwitch pending = (PendingSwitch) waiter;
+                if (--pending.missing == 0) {
+                    applySwitchLinks(topology, pending);
+                }
+            }
+        }
+    }
+
+    private void applySwitchLinks(Topology topology, PendingSwitch pending) {
+        List<Device> linkedDevices = new ArrayList<>(pending.names.length);
+        for (String linkedName : pending.names) {
+            Device linked = topology.findDeviceByName(linkedName);
+            if (linked != null) {
+                linkedDevices.add(linked);
+            }
+        }
+        pending.device.setLinkedDevices(linkedDevices);
+    }
+
+    // Finds the six comma-separated fields and the optional seventh, which runs to the end of
+    // the line less trailing whitespace and is empty when missing
+    private boolean splitFields(String line) {
+        int start = 0;
+        for (int f = 0; f < FIELDS - 2; f++) {
+            int comma = line.indexOf(',', start);
+            if (comma < 0) {
+                return false;
+            }
+            fieldStart[f] = start;
+            fieldEnd[f] = comma;
+            start = comma + 1;
+        }
+        int comma = line.indexOf(',', start);
+        fieldStart[FIELDS - 2] = start;
+        fieldEnd[FIELDS - 2] = comma < 0 ? line.length() : comma;
+        int end = line.length();
+        while (end > start && Character.isWhitespace(line.charAt(end - 1))) {
+            end--; // the padding IncrementalTopologyFile leaves after a record
+        }
+        fieldStart[FIELDS - 1] = comma < 0 ? end : Math.min(comma + 1, end);
+        fieldEnd[FIELDS - 1] = end;
+        return true;
+    }
+
+    private String field(String line, int f) {
+        return line.substring(fieldStart[f], fieldEnd[f]);
+    }
+
+    private boolean fieldEquals(String line, int f, String value) {
+        return fieldEnd[f] - fieldStart[f] == value.length() && line.startsWith(value, fieldStart[f]);
+    }
+
+    private int parseInt(String line, int f) {
+        int start = fieldStart[f];
+        int end = fieldEnd[f];
+        while (start < end && Character.isWhitespace(line.charAt(start))) start++;
+        while (end > start && Character.isWhitespace(line.charAt(end - 1))) end--;
+        return Integer.parseInt(line, start, end, 10);
+    }
+
+    private static String[] splitNames(String line, int start, int end) {
+        String[] names = new String[4];
+        int count = 0;
+        while (start <= end) {
+            int semicolon = line.indexOf(';', start);
+            if (semicolon < 0 || semicolon > end) {
+                semicolon = end;
+            }
+            if (semicolon > start) {
+                if (count == names.length) {
+                    names = Arrays.copyOf(names, count * 2);
+                }
+                names[count++] = line.substring(start, semicolon);
+            }
+            start = semicolon + 1;
+        }
+        return count == names.length ? names : Arrays.copyOf(names, count);
+    }
+}
@@ -0,0 +1,84 @@
+package Storage;
+
+import Data.Computer;
+import Data.Device;
+import Data.Ipv4;
+import Data.Router;
+import Data.Switch;
+import Data.Topology;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+// Writes the users_data text format read by TopologyReader
+public class TopologyWriter {
+
+    public void write(Topology topology, Path file) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            write(topology, writer);
+        }
+    }
+
+    public void write(Topology topology, Writer writer) throws IOException {
+        StringBuilder line = new StringBuilder(128);
+        for (Device device : topology.getDevices()) {
+            line.setLength(0);
+            appendRecord(device, line);
+            writer.append(line);
+        }
+    }
+
+    public StringBuilder format(Topology topology) {
+        StringBuilder content = new StringBuilder(topology.size() * 48);
+        for (Device device : topology.getDevices()) {
+            appendRecord(device, content);
+        }
+        return content;
+    }
+
+    // One line including its terminating newline
+    public static void appendRecord(Device device, StringBuilder line) {
+        if (device instanceof Computer) {
+            Device linked = ((Computer) device).getLinkedDevice();
+            line.append("Computer,").append(device.getName()).append(',');
+            device.appendIp(line);
+            line.append(',').append(linked != null ? linked.getName() : "None");
+        } else if (device instanceof Switch) {
+            line.append(device instanceof Router ? "Router," : "Switch,").append(device.getName()).append(',');
+            device.appendIp(line);
+            line.append(',');
+            List<Device> linkedDevices = ((Switch) device).getLinkedDevices();
+            for (int i = 0; i < linkedDevices.size(); i++) {
+                if (i > 0) {
+                    line.append(';');
+                }
+                line.append(linkedDevices.get(i).getName());
+            }
+        } else {
+            return;
+        }
+        line.append(',').append(device.getX()).append(',').append(device.getY());
+        if (device instanceof Router) {
+            line.append(',');
+            appendRoutes((Router) device, line);
+        }
+        line.append('\n');
+    }
+
+    // <prefix>/<length>><next hop name> separated by ;
+    private static void appendRoutes(Router router, StringBuilder line) {
+        int start = line.length();
+        router.forEachRoute((prefix, length, nextHop) -> {
+            if (line.length() > start) {
+                line.append(';');
+            }
+            Ipv4.append(prefix, line);
+            line.append('/').append(length).append('>').append(nextHop.getName());
+        });
+    }
+}
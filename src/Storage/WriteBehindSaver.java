@@ -0,0 +1,178 @@
+package Storage;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+// Coalesces save requests and writes the file on a background thread once changes have been
+// quiet for a while. Every write goes to a temp file in the same directory which then
+// atomically replaces the target, so a crash never leaves a half-written file behind.
+public class WriteBehindSaver implements AutoCloseable {
+    public static final long DEFAULT_QUIET_PERIOD_MILLIS = 500;
+
+    private final Supplier<Path> target;
+    private final Callable<Snapshot> snapshot;
+    private final Consumer<Exception> errorHandler;
+    private final long quietPeriodMillis;
+    private final ScheduledExecutorService executor;
+
+    private ScheduledFuture<?> pending;
+    private long changes;      // bumped by every markDirty()
+    private long savedChanges; // value of changes captured by the last completed write
+    private boolean closed;
+
+    private final Object writeLock = new Object();
+    private long writtenChanges; // guarded by writeLock
+
+    public interface FileUpdate {
+        void writeTo(Path file) throws IOException;
+    }
+
+    // What to write plus an optional action to run once it is on disk. A snapshot is either the
+    // full file content or an update that brings the file up to date on its own, also when
+    // older updates were skipped because this one overtook them.
+    public static final class Snapshot {
+        private final FileUpdate update;
+        private final Runnable onWritten;
+
+        public Snapshot(CharSequence content, Runnable onWritten) {
+            this(file -> writeAtomically(file, content), onWritten);
+        }
+
+        public Snapshot(CharSequence content) {
+            this(content, null);
+        }
+
+        public Snapshot(FileUpdate update, Runnable onWritten) {
+            this.update = update;
+            this.onWritten = onWritten;
+        }
+    }
+
+    // snapshot is called on the saver thread and must capture everything written so far
+    public WriteBehindSaver(Supplier<Path> target, Callable<Snapshot> snapshot,
+                            Consumer<Exception> errorHandler, long quietPeriodMillis) {
+        this.target = target;
+        this.snapshot = snapshot;
+        this.errorHandler = errorHandler;
+        this.quietPeriodMillis = quietPeriodMillis;
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "write-behind-saver");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Something changed: save once nothing else has changed for the quiet period
+    public synchronized void markDirty() {
+        if (closed) {
+            return;
+        }
+        changes++;
+        reschedule(quietPeriodMillis);
+    }
+
+    // Save as soon as possible without blocking the caller
+    public synchronized void flush() {
+        if (closed || changes == savedChanges) {
+            return;
+        }
+        reschedule(0);
+    }
+
+    // Marks dirty and saves as soon as possible
+    public synchronized void save() {
+        if (closed) {
+            return;
+        }
+        changes++;
+        reschedule(0);
+    }
+
+    public synchronized boolean isDirty() {
+        return changes != savedChanges;
+    }
+
+    // Stops the background thread and writes any unsaved change on the calling thread
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (pending != null) {
+                pending.cancel(false);
+            }
+        }
+        executor.shutdown();
+        writeIfDirty();
+    }
+
+    private void reschedule(long delayMillis) {
+        if (pending != null) {
+            pending.cancel(false);
+        }
+        pending = executor.schedule(this::writeIfDirty, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void writeIfDirty() {
+        long captured;
+        synchronized (this) {
+            captured = changes;
+            if (captured == savedChanges) {
+                return;
+            }
+        }
+        try {
+            Snapshot state = snapshot.call();
+            synchronized (writeLock) {
+                // A write that captured later changes may have overtaken this one
+                if (captured <= writtenChanges) {
+                    return;
+                }
+                state.update.writeTo(target.get());
+                writtenChanges = captured;
+            }
+            if (state.onWritten != null) {
+                state.onWritten.run();
+            }
+            synchronized (this) {
+                if (captured > savedChanges) {
+                    savedChanges = captured;
+                }
+            }
+        } catch (Exception e) {
+            errorHandler.accept(e);
+        }
+    }
+
+    // Temp file in the same directory, then an atomic rename over the target
+    public static void writeAtomically(Path file, CharSequence content) throws IOException {
+        Path directory = file.toAbsolutePath().getParent();
+        Path temp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try {
+            try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                writer.append(content);
+            }
+            try {
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+}
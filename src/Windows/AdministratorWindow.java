@@ -1,122 +1,234 @@
 package Windows;
 
 import Data.User;
+import Database.UserRepository;
+import Database.UserTransfer;
+import Media.MediaDetector;
+import Media.MediaListener;
+import Media.RemovableMedia;
+
 import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import java.awt.*;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.io.File;
-import java.nio.file.FileStore;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
-import java.sql.*;
-import java.util.ArrayList;
+import java.sql.SQLException;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 public class AdministratorWindow extends JFrame {
-    private List<User> users = new ArrayList<>();
-    private JPanel userPanel;
+    private final UserTableModel userTableModel = new UserTableModel(UserRepository.shared());
+    private JTable userTable;
     private JComboBox<String> roleFilterCombo;
+    private JTextField searchField;
 
     public AdministratorWindow() {
         setTitle("Administrator Window");
-        setSize(600, 400);
+        setSize(800, 450);
         setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
         setLocationRelativeTo(null);
         setLayout(new BorderLayout(10, 10));
 
-        loadUsersFromDB();
         // Top panel for filtering and adding users
         JPanel topPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
         roleFilterCombo = new JComboBox<>(new String[]{"All", "Admin", "User"});
+        searchField = new JTextField(12);
         JButton addUserButton = new JButton("Add User");
+        JButton importButton = new JButton("Import...");
+        JButton exportButton = new JButton("Export...");
         topPanel.add(new JLabel("Filter by Role:"));
         topPanel.add(roleFilterCombo);
+        topPanel.add(new JLabel("Search:"));
+        topPanel.add(searchField);
         topPanel.add(addUserButton);
+        topPanel.add(importButton);
+        topPanel.add(exportButton);
+
+        // User table, its rows are loaded as they scroll into view
+        userTable = new JTable(userTableModel);
+        userTable.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        userTable.setFillsViewportHeight(true);
+        JScrollPane scrollPane = new JScrollPane(userTable);
 
-        // User panel to display users
-        userPanel = new JPanel();
-        userPanel.setLayout(new BoxLayout(userPanel, BoxLayout.Y_AXIS));
-        JScrollPane scrollPane = new JScrollPane(userPanel);
+        // Actions on the selected user
+        JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        JButton editButton = new JButton("Edit");
+        JButton deleteButton = new JButton("Delete");
+        editButton.setEnabled(false);
+        deleteButton.setEnabled(false);
+        buttonPanel.add(editButton);
+        buttonPanel.add(deleteButton);
 
         // Add components to frame
         add(topPanel, BorderLayout.NORTH);
         add(scrollPane, BorderLayout.CENTER);
-
-        // Populate initial user list
-        updateUserList();
+        add(buttonPanel, BorderLayout.SOUTH);
 
         // Add user button action
         addUserButton.addActionListener(e -> showAddUserDialog());
 
-        // Role filter action
+        // Bulk import and export, CSV or JSON by file extension
+        importButton.addActionListener(e -> importUsers(importButton));
+        exportButton.addActionListener(e -> exportUsers(exportButton));
+
+        // Role filter action, and the search once typing pauses
         roleFilterCombo.addActionListener(e -> updateUserList());
+        Timer searchTimer = new Timer(300, e -> updateUserList());
+        searchTimer.setRepeats(false);
+        searchField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                searchTimer.restart();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                searchTimer.restart();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                searchTimer.restart();
+            }
+        });
+
+        userTable.getSelectionModel().addListSelectionListener(e -> {
+            boolean selected = userTable.getSelectedRow() >= 0;
+            editButton.setEnabled(selected);
+            deleteButton.setEnabled(selected);
+        });
+        editButton.addActionListener(e -> {
+            User user = getSelectedUser();
+            if (user != null) {
+                showEditUserDialog(user);
+            }
+        });
+        deleteButton.addActionListener(e -> {
+            User user = getSelectedUser();
+            if (user != null) {
+                deleteUser(user);
+            }
+        });
+
+        // Double click for details
+        userTable.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                int row = userTable.rowAtPoint(e.getPoint());
+                User user = row >= 0 ? userTableModel.getUserAt(row) : null;
+                if (e.getClickCount() == 2 && user != null) {
+                    showUserDetails(user);
+                }
+            }
+        });
+
+        addWindowListener(new java.awt.event.WindowAdapter() {
+            @Override
+            public void windowClosed(java.awt.event.WindowEvent windowEvent) {
+                userTableModel.close();
+            }
+        });
         setVisible(true);
     }
 
     private void updateUserList() {
-        userPanel.removeAll();
         String selectedRole = (String) roleFilterCombo.getSelectedItem();
+        userTableModel.setFilter(selectedRole.equals("All") ? null : selectedRole.toLowerCase(), searchField.getText().trim());
+    }
+
+    private User getSelectedUser() {
+        int row = userTable.getSelectedRow();
+        return row >= 0 ? userTableModel.getUserAt(row) : null;
+    }
 
-        for (User user : users) {
-            if (selectedRole.equals("All") || user.getRole().equalsIgnoreCase(selectedRole)) {
-                JPanel userEntry = createUserEntry(user);
-                userPanel.add(userEntry);
+    private void deleteUser(User user) {
+        int confirm = JOptionPane.showConfirmDialog(this,
+                "Delete user " + user.getUserName() + "?",
+                "Confirm Deletion", JOptionPane.YES_NO_OPTION);
+        if (confirm == JOptionPane.YES_OPTION) {
+            if (user.getRole().equalsIgnoreCase("admin") && countAdmins() <= 1) {
+                JOptionPane.showMessageDialog(this, "Cannot delete the last admin user!", "Error", JOptionPane.ERROR_MESSAGE);
+            } else {
+                deleteUserFromDB(user.getUserName());
+                userTableModel.refresh();
             }
         }
-        userPanel.revalidate();
-        userPanel.repaint();
     }
 
-    private JPanel createUserEntry(User user) {
-        JPanel entry = new JPanel(new BorderLayout(5, 5));
-        entry.setBorder(BorderFactory.createEtchedBorder());
-        entry.setMaximumSize(new Dimension(Integer.MAX_VALUE, 50));
-
-        JLabel userLabel = new JLabel(user.getUserName() + " (" + user.getRole() + ")");
-        JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
-        JButton editButton = new JButton("Edit");
-        JButton deleteButton = new JButton("Delete");
-
-        buttonPanel.add(editButton);
-        buttonPanel.add(deleteButton);
-        entry.add(userLabel, BorderLayout.WEST);
-        entry.add(buttonPanel, BorderLayout.EAST);
-
-        // Edit action
-        editButton.addActionListener(e -> showEditUserDialog(user));
-
-        // Delete action
-        deleteButton.addActionListener(e -> {
-            int confirm = JOptionPane.showConfirmDialog(this,
-                    "Delete user " + user.getUserName() + "?",
-                    "Confirm Deletion", JOptionPane.YES_NO_OPTION);
-            if (confirm == JOptionPane.YES_OPTION) {
-                if (user.getRole().equalsIgnoreCase("admin") && countAdmins() <= 1) {
-                    JOptionPane.showMessageDialog(this, "Cannot delete the last admin user!", "Error", JOptionPane.ERROR_MESSAGE);
-                } else {
-                    deleteUserFromDB(user.getUserName());
-                    users.remove(user);
-                    updateUserList();
-                }
+    private void importUsers(JButton importButton) {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setDialogTitle("Import Users (CSV or JSON)");
+        if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        File file = chooser.getSelectedFile();
+        importButton.setEnabled(false);
+        new Thread(() -> {
+            try (Reader in = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+                UserTransfer.ImportResult result = UserTransfer.importUsers(UserRepository.shared(), in,
+                        UserTransfer.Format.forFileName(file.getName()));
+                SwingUtilities.invokeLater(() -> {
+                    importButton.setEnabled(true);
+                    userTableModel.refresh();
+                    StringBuilder message = new StringBuilder("Imported " + result.getImported() + " users.");
+                    if (result.getSkipped() > 0) {
+                        message.append("\nSkipped ").append(result.getSkipped()).append(":");
+                        for (String problem : result.getProblems()) {
+                            message.append("\n").append(problem);
+                        }
+                        if (result.getProblems().size() < result.getSkipped()) {
+                            message.append("\n...");
+                        }
+                    }
+                    JTextArea text = new JTextArea(message.toString(), 12, 50);
+                    text.setEditable(false);
+                    JOptionPane.showMessageDialog(this, new JScrollPane(text), "Import Users", JOptionPane.INFORMATION_MESSAGE);
+                });
+            } catch (IOException | SQLException e) {
+                SwingUtilities.invokeLater(() -> {
+                    importButton.setEnabled(true);
+                    JOptionPane.showMessageDialog(this, "Import failed, nothing was imported:\n" + e.getMessage(),
+                            "Error", JOptionPane.ERROR_MESSAGE);
+                });
             }
-        });
+        }, "User import").start();
+    }
 
-        // Make the entry clickable for details (optional)
-        entry.addMouseListener(new MouseAdapter() {
-            @Override
-            public void mouseClicked(MouseEvent e) {
-                showUserDetails(user);
+    private void exportUsers(JButton exportButton) {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setDialogTitle("Export Users (CSV or JSON)");
+        chooser.setSelectedFile(new File("users.csv"));
+        if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        File file = chooser.getSelectedFile();
+        exportButton.setEnabled(false);
+        new Thread(() -> {
+            try (Writer out = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+                int count = UserTransfer.exportUsers(UserRepository.shared(), out, UserTransfer.Format.forFileName(file.getName()));
+                SwingUtilities.invokeLater(() -> {
+                    exportButton.setEnabled(true);
+                    JOptionPane.showMessageDialog(this, "Exported " + count + " users to " + file.getName() + ".");
+                });
+            } catch (IOException | SQLException e) {
+                SwingUtilities.invokeLater(() -> {
+                    exportButton.setEnabled(true);
+                    JOptionPane.showMessageDialog(this, "Export failed: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+                });
             }
-        });
-        return entry;
+        }, "User export").start();
     }
 
     private void showAddUserDialog() {
         JDialog dialog = new JDialog(this, "Add User", true);
+        dialog.setDefaultCloseOperation(JDialog.DISPOSE_ON_CLOSE); // windowClosed drops the USB listener
         dialog.setSize(300, 250);
         dialog.setLayout(new BorderLayout(10, 10));
         dialog.setLocationRelativeTo(this);
@@ -153,49 +265,38 @@ public class AdministratorWindow extends JFrame {
         dialog.add(inputPanel, BorderLayout.CENTER);
         dialog.add(buttonPanel, BorderLayout.SOUTH);
 
-        // USB detection logic
-        ExecutorService executor = Executors.newSingleThreadExecutor();
+        // USB detection, refreshed whenever a drive comes or goes
         Map<String, String> usbDevices = new HashMap<>();
+        Runnable usbUpdater = () -> {
+            Map<String, String> newUsbDevices = detectUSBDrives();
+            usbDevices.clear();
+            usbDevices.putAll(newUsbDevices);
+            usbComboModel.removeAllElements();
+            if (!newUsbDevices.isEmpty()) {
+                newUsbDevices.forEach((name, serial) -> usbComboModel.addElement(name));
+                statusLabel.setText("USB detected");
+                saveButton.setEnabled(true);
+            } else {
+                usbComboModel.addElement("No USB Detected");
+                statusLabel.setText("Please insert a USB...");
+                saveButton.setEnabled(false);
+            }
+        };
+        MediaListener usbListener = new MediaListener() {
+            @Override
+            public void mediaInserted(RemovableMedia media) {
+                SwingUtilities.invokeLater(usbUpdater);
+            }
 
-        Runnable usbDetector = () -> {
-            while (!Thread.currentThread().isInterrupted()) {
-                Map<String, String> newUsbDevices = detectUSBDrives();
-                SwingUtilities.invokeLater(() -> {
-                    usbDevices.clear();
-                    usbDevices.putAll(newUsbDevices);
-                    usbComboModel.removeAllElements();
-                    if (!newUsbDevices.isEmpty()) {
-                        newUsbDevices.forEach((name, serial) -> usbComboModel.addElement(name));
-                        statusLabel.setText("USB detected");
-                        saveButton.setEnabled(true);
-                    } else {
-                        usbComboModel.addElement("No USB Detected");
-                        statusLabel.setText("Please insert a USB...");
-                        saveButton.setEnabled(false);
-                    }
-                });
-                try {
-                    Thread.sleep(2000); // Poll every 2 seconds
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    break;
-                }
+            @Override
+            public void mediaRemoved(RemovableMedia media) {
+                SwingUtilities.invokeLater(usbUpdater);
             }
         };
 
         // Start USB detection
-        Map<String, String> initialUsbDevices = detectUSBDrives();
-        if (!initialUsbDevices.isEmpty()) {
-            usbDevices.putAll(initialUsbDevices);
-            initialUsbDevices.forEach((name, serial) -> usbComboModel.addElement(name));
-            statusLabel.setText("USB detected");
-            saveButton.setEnabled(true);
-        } else {
-            usbComboModel.addElement("No USB Detected");
-            statusLabel.setText("Please insert a USB...");
-            saveButton.setEnabled(false);
-            executor.submit(usbDetector);
-        }
+        usbUpdater.run();
+        MediaDetector.shared().addListener(usbListener);
 
         // Save button action
         saveButton.addActionListener(e -> {
@@ -206,13 +307,10 @@ public class AdministratorWindow extends JFrame {
             String role = (String) roleCombo.getSelectedItem();
 
             if (!selectedUsbName.equals("No USB Detected") && !username.isEmpty() && !password.isEmpty()) {
-                if (users.stream().noneMatch(u -> u.getUserName().equals(username))) {
+                if (!userNameExists(username)) {
                     User newUser = new User(usbSerial, username, password, role);
-                    users.add(newUser);
-
                     addUserToDB(newUser);
-                    updateUserList();
-                    executor.shutdownNow();
+                    userTableModel.refresh();
                     dialog.dispose();
                 } else {
                     JOptionPane.showMessageDialog(dialog, "Username already exists!");
@@ -225,8 +323,8 @@ public class AdministratorWindow extends JFrame {
         // Cleanup on dialog close
         dialog.addWindowListener(new java.awt.event.WindowAdapter() {
             @Override
-            public void windowClosing(java.awt.event.WindowEvent windowEvent) {
-                executor.shutdownNow();
+            public void windowClosed(java.awt.event.WindowEvent windowEvent) {
+                MediaDetector.shared().removeListener(usbListener);
             }
         });
 
@@ -235,40 +333,32 @@ public class AdministratorWindow extends JFrame {
 
     private Map<String, String> detectUSBDrives() {
         Map<String, String> usbDevices = new HashMap<>();
-        File[] roots = File.listRoots();
-
-        for (File root : roots) {
-            try {
-                FileStore store = Files.getFileStore(root.toPath());
-                // Only include removable drives
-                if ((Boolean) store.getAttribute("volume:isRemovable")) {
-                    Object serialObj = store.getAttribute("volume:vsn");
-                    String serialHex;
-                    if (serialObj instanceof Integer) {
-                        serialHex = Integer.toHexString((Integer) serialObj).toUpperCase();
-                    } else if (serialObj instanceof Long) {
-                        serialHex = Long.toHexString((Long) serialObj).toUpperCase();
-                    } else {
-                        serialHex = "UNKNOWN";
-                    }
-                    // Check if the USB serial is already registered
-                    if (isUserExists(serialHex) == null) {
-                        String driveName = root.getAbsolutePath();
-                        usbDevices.put(driveName, serialHex);
-                    }
-                }
-            } catch (Exception e) {
-                continue;
+        for (RemovableMedia media : MediaDetector.shared().getMedia()) {
+            String serialHex = media.getSerialNumber() != null ? media.getSerialNumber() : "UNKNOWN";
+            // Check if the USB serial is already registered
+            if (isUserExists(serialHex) == null) {
+                usbDevices.put(media.getRoot().getAbsolutePath(), serialHex);
             }
         }
         return usbDevices;
     }
 
     private User isUserExists(String serialHex) {
-        return users.stream()
-                .filter(u -> u.getUsbSerialNumber().equals(serialHex))
-                .findFirst()
-                .orElse(null);
+        try {
+            return UserRepository.shared().findBySerial(serialHex);
+        } catch (SQLException e) {
+            System.out.println("SQL error: " + e.getMessage());
+        }
+        return null;
+    }
+
+    private boolean userNameExists(String userName) {
+        try {
+            return UserRepository.shared().findByUserName(userName) != null;
+        } catch (SQLException e) {
+            System.out.println("SQL error: " + e.getMessage());
+        }
+        return false;
     }
 
     private void showEditUserDialog(User user) {
@@ -312,13 +402,14 @@ public class AdministratorWindow extends JFrame {
                     JOptionPane.showMessageDialog(dialog, "Cannot change the role of the last admin!", "Error", JOptionPane.ERROR_MESSAGE);
                     return;
                 }
-                if (users.stream().noneMatch(u -> u != user && u.getUserName().equals(username))) {
+                if (username.equals(user.getUserName()) || !userNameExists(username)) {
+                    String oldUsbSerial = user.getUsbSerialNumber();
                     user.setUsbSerialNumber(usbSerial);
                     user.setUserName(username);
                     user.setPassword(password);
                     user.setRole(role);
-                    editUserFromDB(usbSerial, user);
-                    updateUserList();
+                    editUserFromDB(oldUsbSerial, user);
+                    userTableModel.refresh();
                     dialog.dispose();
                 } else {
                     JOptionPane.showMessageDialog(dialog, "Username already exists!");
@@ -350,86 +441,36 @@ public class AdministratorWindow extends JFrame {
         dialog.setVisible(true);
     }
 
-    private Connection getConnection() {
-        try {
-            Class.forName("com.mysql.cj.jdbc.Driver");
-            return DriverManager.getConnection("jdbc:mysql://localhost:3306/networksimulatorusers", "root", "root");
-        } catch (ClassNotFoundException e) {
-            System.out.println("Driver not found brotha");
-        } catch (SQLException e) {
-            System.out.println("SQL Error Brotha");
-        }
-        return null;
-    }
-
-    private void loadUsersFromDB() {
+    private void addUserToDB(User user) {
         try {
-            Connection dbConnection = getConnection();
-            assert dbConnection != null;
-            Statement dbStatement = dbConnection.createStatement();
-            ResultSet resultSet = dbStatement.executeQuery("select * from users");
-            while (resultSet.next()) {
-                String serialNumber = resultSet.getString("usbSerialNum");
-                String userName = resultSet.getString("userName");
-                String password = resultSet.getString("password");
-                String role = resultSet.getString("role");
-                users.add(new User(serialNumber, userName, password, role));
-            }
-            dbConnection.close();
+            UserRepository.shared().add(user);
         } catch (SQLException e) {
-            System.out.println("SQL Error Brotha");
+            System.out.println("SQL error: " + e.getMessage());
         }
     }
 
-    private void addUserToDB(User user) {
+    private int countAdmins() {
         try {
-            Connection dbConnection = getConnection();
-            PreparedStatement stmt = dbConnection.prepareStatement("insert into users values (?, ?, ?, ?)");
-            stmt.setString(1, user.getUsbSerialNumber());
-            stmt.setString(2, user.getUserName());
-            stmt.setString(3, user.getPassword());
-            stmt.setString(4, user.getRole());
-            stmt.executeUpdate();
-            dbConnection.close();
+            return UserRepository.shared().count("admin", null);
         } catch (SQLException e) {
-            System.out.println("SQL Error Brotha");
+            System.out.println("SQL error: " + e.getMessage());
         }
-    }
-
-    private int countAdmins() {
-        return (int) users.stream().filter(u -> u.getRole().equalsIgnoreCase("admin")).count();
+        return 0;
     }
 
     private void editUserFromDB(String usbSerialNum, User user) {
         try {
-            Connection dbConnection = getConnection();
-            PreparedStatement stmt = dbConnection.prepareStatement("UPDATE users SET usbSerialNum = ?, userName = ?, password = ?, role = ? WHERE usbSerialNum = ?");
-            stmt.setString(1, user.getUsbSerialNumber());
-            stmt.setString(2, user.getUserName());
-            stmt.setString(3, user.getPassword());
-            stmt.setString(4, user.getRole());
-            stmt.setString(5, usbSerialNum);
-            stmt.executeUpdate();
-            dbConnection.close();
+            UserRepository.shared().update(usbSerialNum, user);
         } catch (SQLException e) {
-            System.out.println("SQL Error Brotha");
+            System.out.println("SQL error: " + e.getMessage());
         }
     }
 
     private void deleteUserFromDB(String userName) {
         try {
-            Connection dbConnection = getConnection();
-            User user = users.stream().filter(u -> u.getUserName().equals(userName)).findFirst().orElse(null);
-            if (user != null && user.getRole().equalsIgnoreCase("admin") && countAdmins() <= 1) {
-                JOptionPane.showMessageDialog(this, "Cannot delete the last admin user!", "Error", JOptionPane.ERROR_MESSAGE);
-                return;
-            }
-            PreparedStatement stmt = dbConnection.prepareStatement("DELETE FROM users WHERE userName = ?");
-            stmt.setString(1, userName);
-            stmt.executeUpdate();
-            dbConnection.close();
+            UserRepository.shared().deleteByUserName(userName);
         } catch (SQLException e) {
-            System.out.println("SQL Error Brotha");
+            System.out.println("SQL error: " + e.getMessage());
         }
     }
 }
\ No newline at end of file
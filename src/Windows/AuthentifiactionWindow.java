@@ -1,24 +1,25 @@
 package Windows;
 
 import Data.User;
+import Database.UserRepository;
+import Media.MediaDetector;
+import Media.MediaListener;
+import Media.RemovableMedia;
 
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.KeyEvent;
-import java.io.File;
-import java.nio.file.FileStore;
-import java.nio.file.Files;
-import java.sql.*;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.sql.SQLException;
+import java.util.List;
 
 public class AuthentifiactionWindow extends JFrame {
 
     private final JTextField usernameField;
     private final JPasswordField passwordField;
     private final JButton submitButton;
-    private Timer usbCheckTimer;
+    private final MediaDetector mediaDetector = MediaDetector.shared();
+    private MediaListener mediaListener;
     private boolean isWindowShown = false;
     private boolean isClosedWindow = false;
     private User user;
@@ -65,67 +66,46 @@ public class AuthentifiactionWindow extends JFrame {
     }
 
     private void startUsbDetection() {
-        usbCheckTimer = new Timer();
-        usbCheckTimer.scheduleAtFixedRate(new TimerTask() {
+        mediaListener = new MediaListener() {
             @Override
-            public void run() {
-                File usbDrive = detectUsbDrive();
-                boolean usbPresent = usbDrive != null;
-                SwingUtilities.invokeLater(() -> {
-                    if (usbPresent && !isWindowShown && !isClosedWindow) {
-                        if (isUsbRecognized(usbDrive)) {
-                            showAuthenticationWindow();
-                        } else {
-                            showUSBNotRecognizedDialog();
-                        }
-                    } else if (!usbPresent && isWindowShown) {
-                        hideAuthenticationWindow();
-                    }
-                });
+            public void mediaInserted(RemovableMedia media) {
+                SwingUtilities.invokeLater(() -> usbChanged());
             }
-        }, 0, 1000); // Check every 1000ms
-    }
 
-    private File detectUsbDrive() {
-        File[] roots = File.listRoots();
-        for (File root : roots) {
-            try {
-                FileStore store = Files.getFileStore(root.toPath());
-                if ((Boolean) store.getAttribute("volume:isRemovable") && root.exists() && root.canRead()) {
-                    return root;
-                }
-            } catch (Exception e) {
-                continue;
+            @Override
+            public void mediaRemoved(RemovableMedia media) {
+                SwingUtilities.invokeLater(() -> usbChanged());
             }
-        }
-        return null;
+        };
+        mediaDetector.addListener(mediaListener);
+        SwingUtilities.invokeLater(() -> usbChanged()); // a drive plugged in before start
     }
 
-    private boolean isUsbRecognized(File usbDrive) {
-        try {
-            FileStore store = Files.getFileStore(usbDrive.toPath());
-            Object serialObj = store.getAttribute("volume:vsn");
-            String serialHex;
-            if (serialObj instanceof Integer) {
-                serialHex = Integer.toHexString((Integer) serialObj).toUpperCase();
-            } else if (serialObj instanceof Long) {
-                serialHex = Long.toHexString((Long) serialObj).toUpperCase();
+    private void usbChanged() {
+        RemovableMedia usbDrive = detectUsbDrive();
+        boolean usbPresent = usbDrive != null;
+        if (usbPresent && !isWindowShown && !isClosedWindow) {
+            if (isUsbRecognized(usbDrive)) {
+                showAuthenticationWindow();
             } else {
-                serialHex = "UNKNOWN";
+                showUSBNotRecognizedDialog();
             }
-            user = isUserExists(serialHex);
-            return user != null;
-        } catch (Exception e) {
-            SwingUtilities.invokeLater(() -> {
-                JOptionPane.showMessageDialog(null,
-                        "Error reading USB: " + e.getMessage(),
-                        "Error",
-                        JOptionPane.ERROR_MESSAGE);
-            });
-            return false;
+        } else if (!usbPresent && isWindowShown) {
+            hideAuthenticationWindow();
         }
     }
 
+    private RemovableMedia detectUsbDrive() {
+        List<RemovableMedia> media = mediaDetector.getMedia();
+        return media.isEmpty() ? null : media.get(0);
+    }
+
+    private boolean isUsbRecognized(RemovableMedia usbDrive) {
+        String serialHex = usbDrive.getSerialNumber() != null ? usbDrive.getSerialNumber() : "UNKNOWN";
+        user = isUserExists(serialHex);
+        return user != null;
+    }
+
     private void showAuthenticationWindow() {
         setVisible(true);
         isWindowShown = true;
@@ -190,6 +170,7 @@ public class AuthentifiactionWindow extends JFrame {
             passwordField.setText("");
             hideAuthenticationWindow();
             isClosedWindow = true;
+            mediaDetector.removeListener(mediaListener);
             // Open MainWindow for all users
             SwingUtilities.invokeLater(() -> {
                 MainWindow mainWindow = new MainWindow(user);
@@ -220,24 +201,7 @@ public class AuthentifiactionWindow extends JFrame {
 
     public User isUserExists(String serialNumber) {
         try {
-            Class.forName("com.mysql.cj.jdbc.Driver");
-            Connection dbConnection = DriverManager.getConnection("jdbc:mysql://localhost:3306/networksimulatorusers", "root", "root");
-            PreparedStatement stmt = dbConnection.prepareStatement("SELECT * FROM users WHERE usbSerialNum = ?");
-            stmt.setString(1, serialNumber);
-            ResultSet resultSet = stmt.executeQuery();
-            if (resultSet.next()) {
-                User user = new User(
-                        resultSet.getString("usbSerialNum"),
-                        resultSet.getString("userName"),
-                        resultSet.getString("password"),
-                        resultSet.getString("role")
-                );
-                dbConnection.close();
-                return user;
-            }
-            dbConnection.close();
-        } catch (ClassNotFoundException e) {
-            System.out.println("Driver not found");
+            return UserRepository.shared().findBySerial(serialNumber);
         } catch (SQLException e) {
             System.out.println("SQL error: " + e.getMessage());
         }
@@ -247,7 +211,7 @@ public class AuthentifiactionWindow extends JFrame {
     @Override
     public void setVisible(boolean visible) {
         if (visible) {
-            File usbDrive = detectUsbDrive();
+            RemovableMedia usbDrive = detectUsbDrive();
             if (usbDrive == null) {
                 showPlugInUsbDialog();
                 return;
@@ -0,0 +1,100 @@
+package Windows;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+
+// Device icons shared by every view. Each icon is decoded once, from the icon directory when
+// it is there and from the copy bundled in Windows/icons otherwise, and every size asked for
+// is scaled once into an image compatible with the screen so drawing it is a plain blit.
+public final class IconCache {
+    public static final String COMPUTER = "computerIcon.png";
+    public static final String SWITCH = "switchIcon.png";
+    public static final String ROUTER = "routerIcon.png";
+
+    private static final String ICON_DIR = "D:\\eclipse\\";
+    private static final IconCache SHARED = new IconCache();
+
+    private final Map<String, BufferedImage> originals = new HashMap<>();
+    private final Map<String, BufferedImage> scaled = new HashMap<>();
+
+    public static IconCache shared() {
+        return SHARED;
+    }
+
+    // The icon scaled to size x size, or null if it can be loaded from neither place
+    public synchronized BufferedImage getIcon(String name, int size) {
+        String key = name + '@' + size;
+        BufferedImage icon = scaled.get(key);
+        if (icon == null && !scaled.containsKey(key)) {
+            BufferedImage original = getOriginal(name);
+            icon = original != null ? scale(original, size) : null;
+            scaled.put(key, icon);
+        }
+        return icon;
+    }
+
+    private BufferedImage getOriginal(String name) {
+        if (originals.containsKey(name)) {
+            return originals.get(name);
+        }
+        BufferedImage original = null;
+        File file = new File(ICON_DIR + name);
+        try {
+            if (file.isFile()) {
+                original = ImageIO.read(file);
+            }
+        } catch (IOException e) {
+            System.err.println("Could not read icon " + file + ": " + e.getMessage());
+        }
+        if (original == null) {
+            URL bundled = IconCache.class.getResource("icons/" + name);
+            try {
+                original = bundled != null ? ImageIO.read(bundled) : null;
+            } catch (IOException e) {
+                System.err.println("Could not read bundled icon " + name + ": " + e.getMessage());
+            }
+        }
+        if (original == null) {
+            System.err.println("Icon not found: " + name);
+        }
+        originals.put(name, original);
+        return original;
+    }
+
+    private static BufferedImage scale(BufferedImage source, int size) {
+        // Halve in steps while far above the target, a single bilinear pass would alias
+        BufferedImage current = source;
+        int width = source.getWidth();
+        int height = source.getHeight();
+        while (width / 2 >= size && height / 2 >= size) {
+            width /= 2;
+            height /= 2;
+            current = draw(current, width, height, new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB));
+        }
+        return draw(current, size, size, createCompatibleImage(size));
+    }
+
+    private static BufferedImage draw(BufferedImage source, int width, int height, BufferedImage target) {
+        Graphics2D g = target.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+        g.drawImage(source, 0, 0, width, height, null);
+        g.dispose();
+        return target;
+    }
+
+    private static BufferedImage createCompatibleImage(int size) {
+        if (!GraphicsEnvironment.isHeadless()) {
+            GraphicsConfiguration configuration = GraphicsEnvironment.getLocalGraphicsEnvironment()
+                    .getDefaultScreenDevice().getDefaultConfiguration();
+            return configuration.createCompatibleImage(size, size, Transparency.TRANSLUCENT);
+        }
+        return new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB_PRE);
+    }
+}
@@ -0,0 +1,215 @@
+package Windows;
+
+import Data.Adjacency;
+import Data.Device;
+import Data.SpanningTree;
+import Data.Topology;
+import Data.TopologyListener;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// The links of the canvas, rendered once into transparent TILE_SIZE tiles and blitted on
+// each paint. A tile is dropped when a link crossing it may have changed: moves drop the
+// tiles under the moved device's links at the old and the new position, link changes drop
+// all tiles. The live device, the one being dragged, is left out of the tiles and its links
+// are drawn directly on top, so a drag never re-renders tiles.
+// Tiles are laid out in view pixels at the current scale, panning reuses them and zooming
+// starts over. Zoomed out, a tile draws at most tileLinkBudget links, a sample of them.
+// Links the spanning tree blocks are drawn grey, with a dot near the end whose port blocks.
+public class LinkLayer implements TopologyListener {
+    private static final int TILE_SIZE = 256;
+    private static final int MAX_TILES = 128;
+    private static final Color BLOCKED_LINK_COLOR = new Color(0xB0BEC5);
+    private static final Color BLOCKED_PORT_COLOR = new Color(0xE65100);
+    private static final int BLOCKED_PORT_SIZE = 10;
+
+    private final Topology topology;
+    private final SpatialIndex index;
+    private final SpanningTree spanningTree;
+    private final int deviceSize;
+    private Device liveDevice;
+    private double scale = 1;
+    private int tileLinkBudget = Integer.MAX_VALUE;
+
+    private final Map<Long, BufferedImage> tiles = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, BufferedImage> eldest) {
+            return size() > MAX_TILES;
+        }
+    };
+
+    public LinkLayer(Topology topology, SpatialIndex index, SpanningTree spanningTree, int deviceSize) {
+        this.topology = topology;
+        this.index = index;
+        this.spanningTree = spanningTree;
+        this.deviceSize = deviceSize;
+    }
+
+    // 0 hides the links altogether
+    public void setScale(double scale, int tileLinkBudget) {
+        if (scale != this.scale || tileLinkBudget != this.tileLinkBudget) {
+            this.scale = scale;
+            this.tileLinkBudget = tileLinkBudget;
+            tiles.clear();
+        }
+    }
+
+    // clip is in view pixels, world coordinates times the scale
+    public void paint(Graphics g, Rectangle clip, GraphicsConfiguration configuration) {
+        if (tileLinkBudget == 0) {
+            return;
+        }
+        int minTileX = Math.floorDiv(clip.x, TILE_SIZE);
+        int minTileY = Math.floorDiv(clip.y, TILE_SIZE);
+        int maxTileX = Math.floorDiv(clip.x + clip.width - 1, TILE_SIZE);
+        int maxTileY = Math.floorDiv(clip.y + clip.height - 1, TILE_SIZE);
+        for (int ty = minTileY; ty <= maxTileY; ty++) {
+            for (int tx = minTileX; tx <= maxTileX; tx++) {
+                long key = ((long) tx << 32) | (ty & 0xFFFFFFFFL);
+                BufferedImage tile = tiles.get(key);
+                if (tile == null) {
+                    tile = render(tx, ty, configuration);
+                    tiles.put(key, tile);
+                }
+                g.drawImage(tile, tx * TILE_SIZE, ty * TILE_SIZE, null);
+            }
+        }
+
+        if (liveDevice != null) {
+            g.setColor(Color.BLACK);
+            Adjacency adjacency = topology.getAdjacency();
+            int i = adjacency.indexOf(liveDevice);
+            for (int k = i >= 0 ? adjacency.start(i) : 0, end = i >= 0 ? adjacency.end(i) : 0; k < end; k++) {
+                drawLink(g, liveDevice, adjacency.device(adjacency.neighbor(k)));
+            }
+        }
+    }
+
+    // Draws the device's links live instead of from the tiles, null to bake them back in
+    public void setLiveDevice(Device device) {
+        if (device == liveDevice) {
+            return;
+        }
+        Device previous = liveDevice;
+        liveDevice = device;
+        if (previous != null) {
+            invalidate(linkArea(previous, previous.getX(), previous.getY()));
+        }
+        if (device != null) {
+            invalidate(linkArea(device, device.getX(), device.getY()));
+        }
+    }
+
+    public void invalidate(Rectangle area) {
+        for (Iterator<Long> it = tiles.keySet().iterator(); it.hasNext(); ) {
+            long key = it.next();
+            int tx = (int) (key >> 32);
+            int ty = (int) key;
+            if (area.intersects(tx * TILE_SIZE, ty * TILE_SIZE, TILE_SIZE, TILE_SIZE)) {
+                it.remove();
+            }
+        }
+    }
+
+    public void invalidateAll() {
+        tiles.clear();
+    }
+
+    @Override
+    public void deviceAdded(Device device) {
+        invalidateAll();
+    }
+
+    @Override
+    public void deviceRemoved(Device device) {
+        invalidateAll();
+    }
+
+    @Override
+    public void deviceRenamed(Device device, String oldName) {
+    }
+
+    @Override
+    public void deviceChanged(Device device) {
+        invalidateAll(); // the old neighbours are gone by now, start over
+    }
+
+    @Override
+    public void deviceMoved(Device device, int oldX, int oldY) {
+        if (device == liveDevice || tiles.isEmpty()) {
+            return;
+        }
+        Rectangle area = linkArea(device, oldX, oldY);
+        area.add(linkArea(device, device.getX(), device.getY()));
+        invalidate(area);
+    }
+
+    // View pixels covered by the device's links with the device at x, y
+    private Rectangle linkArea(Device device, int x, int y) {
+        int half = deviceSize / 2;
+        Rectangle area = new Rectangle(x + half, y + half, 1, 1);
+        Adjacency adjacency = topology.getAdjacency();
+        int i = adjacency.indexOf(device);
+        if (i >= 0) {
+            for (int k = adjacency.start(i); k < adjacency.end(i); k++) {
+                Device linked = adjacency.device(adjacency.neighbor(k));
+                area.add(new Rectangle(linked.getX() + half, linked.getY() + half, 1, 1));
+            }
+        }
+        return new Rectangle((int) Math.floor(area.x * scale) - 1, (int) Math.floor(area.y * scale) - 1,
+                (int) Math.ceil(area.width * scale) + 2, (int) Math.ceil(area.height * scale) + 2);
+    }
+
+    private void drawLink(Graphics g, Device from, Device to) {
+        double half = deviceSize / 2;
+        Device blocked = SpanningTree.isBridge(from) && SpanningTree.isBridge(to) ? spanningTree.getBlockedEnd(from, to) : null;
+        Color color = g.getColor();
+        if (blocked != null) {
+            g.setColor(BLOCKED_LINK_COLOR);
+        }
+        g.drawLine((int) Math.round((from.getX() + half) * scale), (int) Math.round((from.getY() + half) * scale),
+                (int) Math.round((to.getX() + half) * scale), (int) Math.round((to.getY() + half) * scale));
+        if (blocked == null) {
+            return;
+        }
+        // The dot sits just outside the blocking device's box, or a third of the way on short links
+        Device other = blocked == from ? to : from;
+        double dx = other.getX() - blocked.getX();
+        double dy = other.getY() - blocked.getY();
+        double length = Math.hypot(dx, dy);
+        if (length > 0) {
+            double along = Math.min(deviceSize * 0.75, length / 3) / length;
+            int size = Math.max(3, (int) Math.round(BLOCKED_PORT_SIZE * scale));
+            int x = (int) Math.round((blocked.getX() + half + dx * along) * scale) - size / 2;
+            int y = (int) Math.round((blocked.getY() + half + dy * along) * scale) - size / 2;
+            g.setColor(BLOCKED_PORT_COLOR);
+            g.fillOval(x, y, size, size);
+        }
+        g.setColor(color);
+    }
+
+    private BufferedImage render(int tx, int ty, GraphicsConfiguration configuration) {
+        BufferedImage tile = configuration != null
+                ? configuration.createCompatibleImage(TILE_SIZE, TILE_SIZE, Transparency.TRANSLUCENT)
+                : new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D g = tile.createGraphics();
+        g.translate(-tx * TILE_SIZE, -ty * TILE_SIZE);
+        g.setColor(Color.BLACK);
+        Rectangle world = new Rectangle((int) Math.floor(tx * TILE_SIZE / scale) - 1, (int) Math.floor(ty * TILE_SIZE / scale) - 1,
+                (int) Math.ceil(TILE_SIZE / scale) + 2, (int) Math.ceil(TILE_SIZE / scale) + 2);
+        int[] budget = {tileLinkBudget};
+        index.linksIn(world, (from, to) -> {
+            if (from != liveDevice && to != liveDevice) {
+                drawLink(g, from, to);
+                return --budget[0] > 0;
+            }
+            return true;
+        });
+        g.dispose();
+        return tile;
+    }
+}
@@ -2,32 +2,83 @@ package Windows;
 
 import Data.Computer;
 import Data.Device;
+import Data.Ipv4;
+import Data.Router;
 import Data.Switch;
+import Data.Topology;
+import Data.TopologyListener;
 import Data.User;
+import Layout.ForceLayout;
+import Storage.BinaryTopologyFormat;
+import Storage.IncrementalTopologyFile;
+import Storage.TopologyJournal;
+import Storage.TopologyReader;
+import Storage.WriteBehindSaver;
 
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
 import java.io.*;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
 import java.util.List;
 import java.util.stream.Collectors;
 
 public class MainWindow extends JFrame implements ActionListener {
 
-    private JButton addComputerButton, addSwitchButton;
-    private JPanel devicePanel;
-    private ArrayList<Device> devices;
+    private JButton addComputerButton, addSwitchButton, addRouterButton;
+    private TopologyCanvas devicePanel;
+    private JProgressBar loadProgressBar;
+    private boolean loading;
+    private WriteBehindSaver saver;
+    private TopologyJournal journal;
+    // Without a journal every edit is saved to the user file directly
+    private final TopologyListener directSave = new TopologyListener() {
+        @Override
+        public void deviceAdded(Device device) {
+            saver.markDirty();
+        }
+
+        @Override
+        public void deviceRemoved(Device device) {
+            saver.markDirty();
+        }
+
+        @Override
+        public void deviceRenamed(Device device, String oldName) {
+            saver.markDirty();
+        }
+
+        @Override
+        public void deviceChanged(Device device) {
+            saver.markDirty();
+        }
+
+        @Override
+        public void deviceMoved(Device device, int oldX, int oldY) {
+            saver.markDirty();
+        }
+    };
+    private final IncrementalTopologyFile userFile = new IncrementalTopologyFile();
+    private Topology topology;
     private User user;
     private AdministratorWindow adminWindow;
+    private JMenuItem autoLayoutItem;
+    private SwingWorker<Void, int[]> layoutWorker;
     private static final String DATA_DIR = "users_data/";
+    private static final int DEVICE_SIZE = 80;
+    private static final long LAYOUT_FRAME_NANOS = 200_000_000L; // publish layout progress at most 5 times a second
 
     public void actionPerformed(ActionEvent ae) {
         if (addComputerButton.equals(ae.getSource())) {
             showAddComputerDialog();
         } else if (addSwitchButton.equals(ae.getSource())) {
-            showAddSwitchDialog();
+            showAddSwitchDialog(false);
+        } else if (addRouterButton.equals(ae.getSource())) {
+            showAddSwitchDialog(true);
         }
     }
 
@@ -38,31 +89,55 @@ public class MainWindow extends JFrame implements ActionListener {
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         setLocationRelativeTo(null);
 
-        devices = new ArrayList<>();
+        topology = new Topology();
 
         createDataDirectory();
-
-        devicePanel = new JPanel() {
+        saver = new WriteBehindSaver(() -> Paths.get(getUserFilePath(this.user.getUserName())),
+                this::captureConfiguration, this::onSaveFailed, WriteBehindSaver.DEFAULT_QUIET_PERIOD_MILLIS);
+        addWindowListener(new WindowAdapter() {
             @Override
-            protected void paintComponent(Graphics g) {
-                super.paintComponent(g);
-                drawConnections(g);
+            public void windowClosing(WindowEvent e) {
+                if (journal != null) {
+                    // Fold the journal into the user file on the way out
+                    journal.flushMoves();
+                    if (journal.hasRecords()) {
+                        saver.save();
+                    }
+                }
+                stopAutoLayout();
+                saver.close();
+                if (journal != null) {
+                    journal.close();
+                }
             }
-        };
-        devicePanel.setLayout(null);
+        });
+
+        devicePanel = new TopologyCanvas(DEVICE_SIZE);
+        devicePanel.setClickHandler(this::onDeviceClicked);
+        devicePanel.setDragFinishedHandler(device -> {
+            if (journal != null) {
+                journal.flushMoves(); // one record per drag
+            }
+        });
         devicePanel.setPreferredSize(new Dimension(800, 600)); // Ensure initial size
-        JScrollPane scrollPane = new JScrollPane(devicePanel);
-        add(scrollPane, BorderLayout.CENTER);
+        add(devicePanel, BorderLayout.CENTER); // the canvas pans and zooms itself
 
         addComputerButton = new JButton("Add Computer");
         addSwitchButton = new JButton("Add Switch");
+        addRouterButton = new JButton("Add Router");
         JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.CENTER));
         buttonPanel.add(addComputerButton);
         buttonPanel.add(addSwitchButton);
+        buttonPanel.add(addRouterButton);
+        loadProgressBar = new JProgressBar(0, 100);
+        loadProgressBar.setStringPainted(true);
+        loadProgressBar.setVisible(false);
+        buttonPanel.add(loadProgressBar);
         add(buttonPanel, BorderLayout.SOUTH);
 
         addComputerButton.addActionListener(this);
         addSwitchButton.addActionListener(this);
+        addRouterButton.addActionListener(this);
 
         JMenuBar menuBar = new JMenuBar();
         JMenu userMenu = new JMenu("User");
@@ -75,9 +150,20 @@ public class MainWindow extends JFrame implements ActionListener {
             userMenu.add(adminItem);
         }
         menuBar.add(userMenu);
+        JMenu layoutMenu = new JMenu("Layout");
+        autoLayoutItem = new JMenuItem("Auto Layout");
+        autoLayoutItem.addActionListener(e -> {
+            if (layoutWorker != null) {
+                stopAutoLayout();
+            } else if (!loading) {
+                startAutoLayout(null);
+            }
+        });
+        layoutMenu.add(autoLayoutItem);
+        menuBar.add(layoutMenu);
         setJMenuBar(menuBar);
 
-        // Load configuration after UI setup but before setVisible
+        // Start loading the configuration after UI setup, devices appear when it completes
         loadUserConfiguration();
 
         setVisible(true);
@@ -86,8 +172,6 @@ public class MainWindow extends JFrame implements ActionListener {
         SwingUtilities.invokeLater(() -> {
             devicePanel.revalidate();
             devicePanel.repaint();
-            scrollPane.revalidate();
-            scrollPane.repaint();
         });
     }
 
@@ -102,29 +186,72 @@ public class MainWindow extends JFrame implements ActionListener {
         return DATA_DIR + username + ".txt";
     }
 
+    private String getUserJournalPath(String username) {
+        return DATA_DIR + username + TopologyJournal.EXTENSION;
+    }
+
+    // Binary snapshot of the text file, only trusted while it is newer than the text file
+    private String getUserSnapshotPath(String username) {
+        return DATA_DIR + username + BinaryTopologyFormat.EXTENSION;
+    }
+
     private void saveUserConfiguration() {
-        String filePath = getUserFilePath(user.getUserName());
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(filePath))) {
-            for (Device device : devices) {
-                int x = device.label.getX();
-                int y = device.label.getY();
-                if (device instanceof Computer) {
-                    Computer computer = (Computer) device;
-                    String linkedName = computer.getLinkedDevice() != null ? computer.getLinkedDevice().getName() : "None";
-                    writer.write(String.format("Computer,%s,%s,%s,%d,%d\n", computer.getName(), computer.getIp(), linkedName, x, y));
-                } else if (device instanceof Switch) {
-                    Switch switchDevice = (Switch) device;
-                    String linkedNames = switchDevice.getLinkedDevices().stream()
-                            .map(Device::getName)
-                            .collect(Collectors.joining(";"));
-                    writer.write(String.format("Switch,%s,%s,%s,%d,%d\n", switchDevice.getName(), switchDevice.getIp(), linkedNames, x, y));
-                }
+        if (loading) {
+            return; // Never overwrite the file with a half-loaded topology
+        }
+        saver.save();
+    }
+
+    // Called by the saver thread, the model is only ever read on the EDT
+    private WriteBehindSaver.Snapshot captureConfiguration() throws Exception {
+        if (SwingUtilities.isEventDispatchThread()) {
+            return captureConfigurationOnEdt();
+        }
+        WriteBehindSaver.Snapshot[] snapshot = new WriteBehindSaver.Snapshot[1];
+        Exception[] failure = new Exception[1];
+        SwingUtilities.invokeAndWait(() -> {
+            try {
+                snapshot[0] = captureConfigurationOnEdt();
+            } catch (IOException e) {
+                failure[0] = e;
             }
+        });
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+        return snapshot[0];
+    }
+
+    private WriteBehindSaver.Snapshot captureConfigurationOnEdt() throws IOException {
+        if (journal == null) {
+            return userFile.capture(topology, null);
+        }
+        // The journal records so far are covered by this snapshot once it is written
+        TopologyJournal capturedJournal = journal;
+        int generation = capturedJournal.rotate();
+        return userFile.capture(topology, () -> capturedJournal.discardRotated(generation));
+    }
+
+    private void openJournal() {
+        try {
+            journal = new TopologyJournal(Paths.get(getUserJournalPath(user.getUserName())),
+                    TopologyJournal.DEFAULT_COMPACTION_THRESHOLD, saver::save, this::onSaveFailed);
+            topology.removeListener(directSave);
+            topology.addListener(journal);
         } catch (IOException e) {
-            JOptionPane.showMessageDialog(this, "Error saving configuration: " + e.getMessage(), "Save Error", JOptionPane.ERROR_MESSAGE);
+            journal = null;
+            topology.removeListener(directSave);
+            topology.addListener(directSave);
+            JOptionPane.showMessageDialog(this, "Error opening change journal: " + e.getMessage(), "Load Error", JOptionPane.ERROR_MESSAGE);
         }
     }
 
+    private void onSaveFailed(Exception e) {
+        Throwable cause = e.getCause() != null ? e.getCause() : e;
+        SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(this,
+                "Error saving configuration: " + cause.getMessage(), "Save Error", JOptionPane.ERROR_MESSAGE));
+    }
+
     private void loadUserConfiguration() {
         String filePath = getUserFilePath(user.getUserName());
         File file = new File(filePath);
@@ -139,123 +266,105 @@ public class MainWindow extends JFrame implements ActionListener {
             }
         }
 
-        // First pass: Create all devices
-        List<Device> tempDevices = new ArrayList<>();
-        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                String[] parts = line.split(",", 6);
-                if (parts.length < 6) {
-                    System.err.println("Skipping invalid line: " + line);
-                    continue;
-                }
+        // Parse off the EDT, the window stays responsive and shows progress meanwhile
+        setLoading(true);
+        File snapshot = new File(getUserSnapshotPath(user.getUserName()));
+        Path journalFile = Paths.get(getUserJournalPath(user.getUserName()));
+        TopologyReader reader = new TopologyReader();
+        new SwingWorker<Topology, Integer>() {
+            @Override
+            protected Topology doInBackground() throws Exception {
+                Topology loaded = loadBase();
+                // Edits made since the user file was last written
+                TopologyJournal.replay(loaded, journalFile);
+                return loaded;
+            }
 
-                String type = parts[0];
-                String name = parts[1];
-                String ip = parts[2];
-                int x, y;
+            private Topology loadBase() throws IOException {
+                if (snapshot.exists() && snapshot.lastModified() > file.lastModified()) {
+                    try {
+                        return new BinaryTopologyFormat().read(snapshot.toPath());
+                    } catch (IOException e) {
+                        System.err.println("Ignoring unreadable snapshot " + snapshot + ": " + e.getMessage());
+                    }
+                }
+                Topology loaded = reader.read(file.toPath(), this::publish);
+                // Nobody else sees the topology yet, refresh the snapshot for the next open
                 try {
-                    x = Integer.parseInt(parts[4]);
-                    y = Integer.parseInt(parts[5]);
-                    // Delay clamping until after window is visible
-                } catch (NumberFormatException e) {
-                    JOptionPane.showMessageDialog(this, "Invalid coordinates in file for device: " + name, "Load Error", JOptionPane.WARNING_MESSAGE);
-                    x = 50;
-                    y = 50;
-                    placeDeviceWithoutOverlap(createDeviceLabel(name, ip, null, type.equals("Computer") ? "D:\\eclipse\\computerIcon.png" : "D:\\eclipse\\switchIcon.png", type.equals("Computer")));
-                    continue;
+                    new BinaryTopologyFormat().write(loaded, snapshot.toPath());
+                } catch (IOException e) {
+                    System.err.println("Could not write snapshot " + snapshot + ": " + e.getMessage());
                 }
+                return loaded;
+            }
 
-                JLabel label = createDeviceLabel(name, ip, null, type.equals("Computer") ? "D:\\eclipse\\computerIcon.png" : "D:\\eclipse\\switchIcon.png", type.equals("Computer"));
-                label.setBounds(x, y, 80, 80);
+            @Override
+            protected void process(List<Integer> chunks) {
+                loadProgressBar.setValue(chunks.get(chunks.size() - 1));
+            }
 
-                Device device;
-                if (type.equals("Computer")) {
-                    device = new Computer(name, ip, label, null);
-                } else {
-                    device = new Switch(name, ip, label);
+            @Override
+            protected void done() {
+                Topology loaded;
+                try {
+                    loaded = get();
+                } catch (Exception e) {
+                    setLoading(false);
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    JOptionPane.showMessageDialog(MainWindow.this, "Error loading configuration: " + cause.getMessage(), "Load Error", JOptionPane.ERROR_MESSAGE);
+                    return;
                 }
-                tempDevices.add(device);
-                devicePanel.add(label);
+                onTopologyLoaded(loaded, reader);
             }
-        } catch (IOException e) {
-            JOptionPane.showMessageDialog(this, "Error loading configuration: " + e.getMessage(), "Load Error", JOptionPane.ERROR_MESSAGE);
-            return;
-        }
-
-        devices = new ArrayList<>(tempDevices);
-
-        // Second pass: Collect linking information
-        Map<String, String> computerLinks = new HashMap<>();
-        Map<String, List<String>> switchLinks = new HashMap<>();
-        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                String[] parts = line.split(",", 6);
-                if (parts.length < 6) continue;
+        }.execute();
+    }
 
-                String type = parts[0];
-                String name = parts[1];
-                String linkedInfo = parts[3];
+    private void onTopologyLoaded(Topology loaded, TopologyReader reader) {
+        topology = loaded;
+        setLoading(false);
+        userFile.invalidate(); // first save lays the file out in slots
+        topology.addListener(userFile);
+        openJournal();
 
-                if (type.equals("Computer") && !linkedInfo.equals("None")) {
-                    computerLinks.put(name, linkedInfo);
-                } else if (type.equals("Switch") && !linkedInfo.isEmpty()) {
-                    switchLinks.put(name, new ArrayList<>(Arrays.asList(linkedInfo.split(";"))));
-                }
-            }
-        } catch (IOException e) {
-            JOptionPane.showMessageDialog(this, "Error reading links: " + e.getMessage(), "Load Error", JOptionPane.ERROR_MESSAGE);
-            return;
+        for (String warning : reader.getWarnings()) {
+            System.err.println(warning);
         }
-
-        // Apply linking using a copy of devices
-        List<Device> devicesCopy = new ArrayList<>(devices);
-        for (Map.Entry<String, String> entry : computerLinks.entrySet()) {
-            String name = entry.getKey();
-            String linkedName = entry.getValue();
-            Device device = findDeviceByName(name, devicesCopy);
-            Device linkedDevice = findDeviceByName(linkedName, devicesCopy);
-            if (device instanceof Computer && linkedDevice != null) {
-                ((Computer) device).setLinkedDevice(linkedDevice);
-            }
-        }
-
-        for (Map.Entry<String, List<String>> entry : switchLinks.entrySet()) {
-            String name = entry.getKey();
-            List<String> linkedNames = entry.getValue();
-            Device device = findDeviceByName(name, devicesCopy);
-            if (device instanceof Switch) {
-                List<Device> linkedDevices = new ArrayList<>();
-                for (String linkedName : linkedNames) {
-                    Device linkedDevice = findDeviceByName(linkedName, devicesCopy);
-                    if (linkedDevice != null) {
-                        linkedDevices.add(linkedDevice);
-                    }
-                }
-                ((Switch) device).setLinkedDevices(linkedDevices);
+        if (!reader.getUnplacedDevices().isEmpty()) {
+            JOptionPane.showMessageDialog(this, "Invalid coordinates in file for device: " +
+                    reader.getUnplacedDevices().stream().map(Device::getName).collect(Collectors.joining(", ")),
+                    "Load Error", JOptionPane.WARNING_MESSAGE);
+        }
+        // The Swing view is only a projection of the model, show it once the model is complete
+        devicePanel.setTopology(topology);
+        List<Device> unplaced = reader.getUnplacedDevices();
+        if (unplaced.size() > 1) {
+            // Pile them up on one free spot, the layout fans them out next to their neighbours
+            placeDeviceWithoutOverlap(unplaced.get(0));
+            for (Device device : unplaced) {
+                device.setPosition(unplaced.get(0).getX(), unplaced.get(0).getY());
+            }
+            startAutoLayout(unplaced);
+        } else {
+            for (Device device : unplaced) {
+                placeDeviceWithoutOverlap(device);
             }
         }
 
-        // Clamp positions after window is visible
-        SwingUtilities.invokeLater(() -> {
-            for (Device device : devices) {
-                int x = device.label.getX();
-                int y = device.label.getY();
-                x = Math.max(0, Math.min(x, devicePanel.getWidth() - 80));
-                y = Math.max(0, Math.min(y, devicePanel.getHeight() - 80));
-                device.label.setBounds(x, y, 80, 80);
+        // The canvas pans, so only negative positions need clamping
+        for (Device device : topology.getDevices()) {
+            if (device.getX() < 0 || device.getY() < 0) {
+                device.setPosition(Math.max(0, device.getX()), Math.max(0, device.getY()));
             }
-            devicePanel.revalidate();
-            devicePanel.repaint();
-        });
+        }
     }
 
-    private Device findDeviceByName(String name, List<Device> deviceList) {
-        return deviceList.stream()
-                .filter(d -> d.getName().equals(name))
-                .findFirst()
-                .orElse(null);
+    private void setLoading(boolean loading) {
+        this.loading = loading;
+        addComputerButton.setEnabled(!loading);
+        addSwitchButton.setEnabled(!loading);
+        addRouterButton.setEnabled(!loading);
+        loadProgressBar.setValue(0);
+        loadProgressBar.setVisible(loading);
     }
 
     public void onUserNameChanged(String oldUserName, String newUserName) {
@@ -263,6 +372,18 @@ public class MainWindow extends JFrame implements ActionListener {
         String newFilePath = getUserFilePath(newUserName);
         File oldFile = new File(oldFilePath);
         File newFile = new File(newFilePath);
+        new File(getUserSnapshotPath(oldUserName)).delete(); // rebuilt from the text file on next open
+
+        // The journal holds edits not yet in the user file, it moves along with it
+        boolean reopenJournal = journal != null;
+        if (reopenJournal) {
+            topology.removeListener(journal);
+            journal.close();
+            journal = null;
+            moveJournalFile(Paths.get(getUserJournalPath(oldUserName)), Paths.get(getUserJournalPath(newUserName)));
+            moveJournalFile(TopologyJournal.rotatedFileOf(Paths.get(getUserJournalPath(oldUserName))),
+                    TopologyJournal.rotatedFileOf(Paths.get(getUserJournalPath(newUserName))));
+        }
 
         if (oldFile.exists()) {
             try {
@@ -280,6 +401,20 @@ public class MainWindow extends JFrame implements ActionListener {
         }
         user.setUserName(newUserName);
         setTitle("Network Simulator - " + newUserName);
+        if (reopenJournal) {
+            openJournal();
+        }
+    }
+
+    private void moveJournalFile(Path from, Path to) {
+        if (!Files.exists(from)) {
+            return;
+        }
+        try {
+            Files.move(from, to, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            JOptionPane.showMessageDialog(this, "Error renaming change journal: " + e.getMessage(), "Rename Error", JOptionPane.ERROR_MESSAGE);
+        }
     }
 
     private void showUserInfoDialog() {
@@ -314,40 +449,8 @@ public class MainWindow extends JFrame implements ActionListener {
         }
     }
 
-    private void drawConnections(Graphics g) {
-        g.setColor(Color.BLACK);
-        for (Device device : devices) {
-            if (device instanceof Computer) {
-                Computer computer = (Computer) device;
-                Device linkedDevice = computer.getLinkedDevice();
-                if (linkedDevice != null) {
-                    drawLineBetweenLabels(g, computer.label, linkedDevice.label);
-                }
-            } else if (device instanceof Switch) {
-                Switch switchDevice = (Switch) device;
-                for (Device linkedDevice : switchDevice.getLinkedDevices()) {
-                    if (linkedDevice != null) {
-                        drawLineBetweenLabels(g, switchDevice.label, linkedDevice.label);
-                    }
-                }
-            }
-        }
-    }
-
     private Device findDeviceByName(String name) {
-        return findDeviceByName(name, devices);
-    }
-
-    private void drawLineBetweenLabels(Graphics g, JLabel label1, JLabel label2) {
-        Point p1 = getLabelCenter(label1);
-        Point p2 = getLabelCenter(label2);
-        g.drawLine(p1.x, p1.y, p2.x, p2.y);
-    }
-
-    private Point getLabelCenter(JLabel label) {
-        int x = label.getX() + label.getWidth() / 2;
-        int y = label.getY() + label.getHeight() / 2;
-        return new Point(x, y);
+        return topology.findDeviceByName(name);
     }
 
     private void showAddComputerDialog() {
@@ -356,7 +459,7 @@ public class MainWindow extends JFrame implements ActionListener {
         JTextField ipField = new JTextField();
         JComboBox<String> linkedDeviceCombo = new JComboBox<>();
         linkedDeviceCombo.addItem("None");
-        for (Device d : devices) {
+        for (Device d : topology.getDevices()) {
             if (!(d instanceof Computer) || ((Computer) d).getLinkedDevice() == null) {
                 linkedDeviceCombo.addItem(d.getName());
             }
@@ -376,44 +479,40 @@ public class MainWindow extends JFrame implements ActionListener {
 
         okButton.addActionListener(e -> {
             String name = nameField.getText().trim();
-            String ip = validateAndFormatIP(ipField.getText(), dialog);
+            long ip = validateIP(ipField.getText(), dialog);
             String linkedDeviceName = (String) linkedDeviceCombo.getSelectedItem();
 
             if (name.isEmpty()) {
                 JOptionPane.showMessageDialog(dialog, "Name cannot be empty!");
                 return;
             }
-            if (ip == null) {
+            if (ip < 0) {
                 return;
             }
 
-            if (devices.stream().anyMatch(d -> d.getName().equals(name))) {
+            if (findDeviceByName(name) != null) {
                 JOptionPane.showMessageDialog(dialog, "Device name already exists!");
                 return;
             }
 
             Device linkedDevice = linkedDeviceName.equals("None") ? null : findDeviceByName(linkedDeviceName);
-            JLabel label = createDeviceLabel(name, ip, linkedDevice, "D:\\eclipse\\computerIcon.png", true);
-            placeDeviceWithoutOverlap(label);
-
-            Computer computer = new Computer(name, ip, label, linkedDevice);
+            Computer computer = new Computer(name, (int) ip, linkedDevice);
             if (linkedDevice != null) {
                 computer.setLinkedDevice(linkedDevice);
             }
-            devices.add(computer);
-            devicePanel.add(label);
-            devicePanel.revalidate();
-            devicePanel.repaint();
-            saveUserConfiguration();
+            placeDeviceWithoutOverlap(computer);
+            topology.addDevice(computer);
+            devicePanel.repaintDevice(computer);
             dialog.dispose();
         });
 
         dialog.setVisible(true);
     }
 
-    private void showAddSwitchDialog() {
+    // Routers link like switches, their routes are edited from the device dialog afterwards
+    private void showAddSwitchDialog(boolean router) {
         List<Device> linkedDevices = new ArrayList<>();
-        JDialog dialog = createDeviceDialog("Add Switch");
+        JDialog dialog = createDeviceDialog(router ? "Add Router" : "Add Switch");
         JTextField nameField = new JTextField();
         JTextField ipField = new JTextField();
         JLabel linkedLabel = new JLabel("0");
@@ -430,7 +529,7 @@ public class MainWindow extends JFrame implements ActionListener {
             JPanel checkBoxPanel = new JPanel();
             checkBoxPanel.setLayout(new BoxLayout(checkBoxPanel, BoxLayout.Y_AXIS));
             List<JCheckBox> checkBoxes = new ArrayList<>();
-            for (Device d : devices) {
+            for (Device d : topology.getDevices()) {
                 if (!(d instanceof Computer) || ((Computer) d).getLinkedDevice() == null) {
                     JCheckBox checkBox = new JCheckBox(d.getName());
                     checkBox.setSelected(linkedDevices.contains(d));
@@ -481,31 +580,26 @@ public class MainWindow extends JFrame implements ActionListener {
 
         okButton.addActionListener(e -> {
             String name = nameField.getText().trim();
-            String ip = validateAndFormatIP(ipField.getText(), dialog);
+            long ip = validateIP(ipField.getText(), dialog);
 
             if (name.isEmpty()) {
                 JOptionPane.showMessageDialog(dialog, "Name cannot be empty!");
                 return;
             }
-            if (ip == null) {
+            if (ip < 0) {
                 return;
             }
 
-            if (devices.stream().anyMatch(d -> d.getName().equals(name))) {
+            if (findDeviceByName(name) != null) {
                 JOptionPane.showMessageDialog(dialog, "Device name already exists!");
                 return;
             }
 
-            JLabel label = createDeviceLabel(name, ip, linkedDevices, "D:\\eclipse\\switchIcon.png", false);
-            placeDeviceWithoutOverlap(label);
-
-            Switch newSwitch = new Switch(name, ip, label);
+            Switch newSwitch = router ? new Router(name, (int) ip) : new Switch(name, (int) ip);
             newSwitch.setLinkedDevices(new ArrayList<>(linkedDevices));
-            devices.add(newSwitch);
-            devicePanel.add(label);
-            devicePanel.revalidate();
-            devicePanel.repaint();
-            saveUserConfiguration();
+            placeDeviceWithoutOverlap(newSwitch);
+            topology.addDevice(newSwitch);
+            devicePanel.repaintDevice(newSwitch);
             dialog.dispose();
         });
 
@@ -531,154 +625,89 @@ public class MainWindow extends JFrame implements ActionListener {
         return panel;
     }
 
-    private JLabel createDeviceLabel(String name, String ip, Object linked, String iconPath, boolean isComputer) {
-        JLabel label = new JLabel(name);
-        String linkedText = isComputer ? (linked != null ? ((Device) linked).getName() : "None") :
-                linked == null || ((List<Device>) linked).isEmpty() ? "None" :
-                        ((List<Device>) linked).stream().map(Device::getName).collect(Collectors.joining(", "));
-        label.setToolTipText("<html>Name: " + name + "<br>IP: " + ip + "<br>Linked: " + linkedText + "</html>");
-
-        label.addMouseListener(new MouseAdapter() {
+    // Runs a force-directed layout of the given devices, or of all with null, off the EDT and
+    // shows the positions as it goes
+    private void startAutoLayout(Collection<Device> movable) {
+        stopAutoLayout();
+        Topology laidOut = topology;
+        ForceLayout layout = new ForceLayout(laidOut, movable);
+        Device[] devices = layout.getMovableDevices();
+        autoLayoutItem.setText("Stop Layout");
+        layoutWorker = new SwingWorker<Void, int[]>() {
             @Override
-            public void mouseEntered(MouseEvent e) {
-                Device device = devices.stream()
-                        .filter(d -> d.label == label)
-                        .findFirst()
-                        .orElse(null);
-                if (device instanceof Computer) {
-                    Computer computer = (Computer) device;
-                    label.setToolTipText("<html>Name: " + computer.getName() +
-                            "<br>IP: " + computer.getIp() +
-                            "<br>Linked: " + computer.getLinkedDeviceName() + "</html>");
-                } else if (device instanceof Switch) {
-                    Switch switchDevice = (Switch) device;
-                    label.setToolTipText("<html>Name: " + switchDevice.getName() +
-                            "<br>IP: " + switchDevice.getIp() +
-                            "<br>Linked: " + switchDevice.getLinkedDevicesNames() + "</html>");
+            protected Void doInBackground() {
+                long lastFrame = System.nanoTime();
+                while (!isCancelled() && layout.step()) {
+                    if (System.nanoTime() - lastFrame >= LAYOUT_FRAME_NANOS) {
+                        publish(layout.getPositions());
+                        lastFrame = System.nanoTime();
+                    }
                 }
+                publish(layout.getPositions());
+                return null;
             }
 
             @Override
-            public void mouseClicked(MouseEvent e) {
-                String currentName = label.getText();
-                if (isComputer) {
-                    onComputerMouseClicked(currentName);
-                } else {
-                    onSwitchMouseClicked(currentName);
+            protected void process(List<int[]> frames) {
+                if (topology == laidOut && !isCancelled()) {
+                    devicePanel.moveDevices(devices, frames.get(frames.size() - 1));
                 }
             }
-        });
-
-        ImageIcon icon = null;
-        try {
-            icon = new ImageIcon(new ImageIcon(iconPath).getImage().getScaledInstance(64, 64, Image.SCALE_SMOOTH));
-        } catch (Exception e) {
-            JOptionPane.showMessageDialog(this, "Error loading icon: " + iconPath, "Icon Error", JOptionPane.WARNING_MESSAGE);
-        }
-        if (icon != null) {
-            label.setIcon(icon);
-        }
-        label.setHorizontalTextPosition(JLabel.CENTER);
-        label.setVerticalTextPosition(JLabel.BOTTOM);
-        label.setSize(80, 80);
-
-        Point[] offset = {null};
-        label.addMouseListener(new MouseAdapter() {
-            public void mousePressed(MouseEvent e) {
-                offset[0] = new Point(e.getX(), e.getY());
-            }
-        });
-
-        label.addMouseMotionListener(new MouseMotionAdapter() {
-            public void mouseDragged(MouseEvent e) {
-                int x = label.getX() + e.getX() - offset[0].x;
-                int y = label.getY() + e.getY() - offset[0].y;
-
-                int minX = 0;
-                int minY = 0;
-                int maxX = devicePanel.getWidth() - label.getWidth();
-                int maxY = devicePanel.getHeight() - label.getHeight();
 
-                x = Math.max(minX, Math.min(x, maxX));
-                y = Math.max(minY, Math.min(y, maxY));
-
-                label.setLocation(x, y);
-                devicePanel.repaint();
-                saveUserConfiguration();
+            @Override
+            protected void done() {
+                if (layoutWorker == this) {
+                    layoutWorker = null;
+                    autoLayoutItem.setText("Auto Layout");
+                }
+                if (journal != null) {
+                    journal.flushMoves(); // one record per device for the whole layout
+                }
             }
-        });
+        };
+        layoutWorker.execute();
+    }
 
-        return label;
+    private void stopAutoLayout() {
+        if (layoutWorker != null) {
+            layoutWorker.cancel(false);
+            layoutWorker = null;
+            autoLayoutItem.setText("Auto Layout");
+        }
     }
 
-    private void placeDeviceWithoutOverlap(JLabel label) {
+    private void placeDeviceWithoutOverlap(Device device) {
         if (devicePanel == null) {
-            label.setBounds(50, 50, 80, 80);
+            device.setPosition(50, 50);
             return;
         }
 
         int padding = 100;
-        boolean placed = false;
-
-        for (int x = 50; x < devicePanel.getWidth() - 80; x += padding) {
-            for (int y = 50; y < devicePanel.getHeight() - 80; y += padding) {
-                Rectangle newBounds = new Rectangle(x, y, 80, 80);
-                boolean overlap = false;
-
-                for (Device d : devices) {
-                    if (d.label.getBounds().intersects(newBounds)) {
-                        overlap = true;
-                        break;
-                    }
-                }
-
-                if (!overlap) {
-                    label.setBounds(newBounds);
-                    placed = true;
-                    break;
+        SpatialIndex index = devicePanel.getSpatialIndex();
+        Rectangle view = devicePanel.getVisibleWorld();
+        int left = Math.max(0, view.x) + 50;
+        int top = Math.max(0, view.y) + 50;
+        for (int x = left; x < view.x + view.width - DEVICE_SIZE; x += padding) {
+            for (int y = top; y < view.y + view.height - DEVICE_SIZE; y += padding) {
+                if (index.isFree(new Rectangle(x, y, DEVICE_SIZE, DEVICE_SIZE), device)) {
+                    device.setPosition(x, y);
+                    return;
                 }
             }
-            if (placed) break;
         }
 
-        if (!placed) {
-            label.setBounds(50, 50, 80, 80);
-            for (Device d : devices) {
-                if (d.label.getBounds().intersects(label.getBounds())) {
-                    label.setLocation(label.getX() + padding, label.getY());
-                }
-            }
+        // No free grid cell on screen, continue to the right of the first row
+        int x = left;
+        while (!index.isFree(new Rectangle(x, top, DEVICE_SIZE, DEVICE_SIZE), device)) {
+            x += padding;
         }
+        device.setPosition(x, top);
     }
 
-    private void onComputerMouseClicked(String name) {
-        Computer computer = devices.stream()
-                .filter(d -> d instanceof Computer && d.getName().equals(name))
-                .map(d -> (Computer) d)
-                .findFirst()
-                .orElse(null);
-
-        if (computer == null) {
-            JOptionPane.showMessageDialog(this, "Selected device is not a Computer.");
-            return;
+    private void onDeviceClicked(Device device) {
+        if (device instanceof Computer || device instanceof Switch) {
+            showDeviceInfoDialog(device);
         }
-
-        showDeviceInfoDialog(computer);
-    }
-
-    private void onSwitchMouseClicked(String name) {
-        Switch switchDevice = devices.stream()
-                .filter(d -> d instanceof Switch && d.getName().equals(name))
-                .map(d -> (Switch) d)
-                .findFirst()
-                .orElse(null);
-
-        if (switchDevice == null) {
-            JOptionPane.showMessageDialog(this, "Selected device is not a Switch.");
-            return;
-        }
-
-        showDeviceInfoDialog(switchDevice);
     }
 
     private void showDeviceInfoDialog(Device device) {
@@ -704,16 +733,9 @@ public class MainWindow extends JFrame implements ActionListener {
             int confirm = JOptionPane.showConfirmDialog(dialog,
                     "Delete " + device.getName() + "?", "Confirm", JOptionPane.YES_NO_OPTION);
             if (confirm == JOptionPane.YES_OPTION) {
-                if (device instanceof Computer) {
-                    ((Computer) device).setLinkedDevice(null);
-                } else {
-                    ((Switch) device).setLinkedDevices(new ArrayList<>());
-                }
-                devices.remove(device);
-                devicePanel.remove(device.label);
-                devicePanel.revalidate();
-                devicePanel.repaint();
-                saveUserConfiguration();
+                Rectangle damage = devicePanel.damageOf(device);
+                topology.removeDevice(device);
+                devicePanel.repaint(damage);
                 dialog.dispose();
             }
         });
@@ -727,17 +749,137 @@ public class MainWindow extends JFrame implements ActionListener {
         });
 
         dialog.add(contentPanel, BorderLayout.CENTER);
-        dialog.add(createButtonPanel(editButton, deleteButton), BorderLayout.SOUTH);
+        if (device instanceof Router) {
+            JButton routesButton = new JButton("Routes");
+            routesButton.addActionListener(e -> showRoutesDialog((Router) device, dialog));
+            dialog.add(createButtonPanel(editButton, routesButton, deleteButton), BorderLayout.SOUTH);
+        } else {
+            dialog.add(createButtonPanel(editButton, deleteButton), BorderLayout.SOUTH);
+        }
         dialog.setVisible(true);
     }
 
+    private void showRoutesDialog(Router router, JDialog parentDialog) {
+        JDialog routesDialog = new JDialog(parentDialog, "Routes of " + router.getName(), true);
+        routesDialog.setSize(360, 400);
+        routesDialog.setLayout(new BorderLayout(10, 10));
+        routesDialog.setLocationRelativeTo(parentDialog);
+
+        // Rows are formatted when shown, a router may hold a large table
+        RouteListModel routes = new RouteListModel(router);
+        JList<String> routeList = new JList<>(routes);
+        routeList.setPrototypeCellValue("255.255.255.255/32 > next-hop-name");
+
+        JTextField prefixField = new JTextField();
+        JComboBox<String> nextHopCombo = new JComboBox<>();
+        for (Device linked : router.getLinkedDevices()) {
+            nextHopCombo.addItem(linked.getName());
+        }
+        JPanel inputPanel = new JPanel(new GridLayout(2, 2, 10, 10));
+        inputPanel.setBorder(BorderFactory.createEmptyBorder(10, 10, 0, 10));
+        inputPanel.add(new JLabel("Prefix (e.g., 10.0.0.0/8):"));
+        inputPanel.add(prefixField);
+        inputPanel.add(new JLabel("Next Hop:"));
+        inputPanel.add(nextHopCombo);
+
+        JButton addButton = new JButton("Add");
+        JButton removeButton = new JButton("Remove");
+        addButton.addActionListener(e -> {
+            String text = prefixField.getText().trim();
+            int slash = text.indexOf('/');
+            long prefix = slash > 0 ? Ipv4.parse(text, 0, slash) : Ipv4.INVALID;
+            if (prefix < 0) {
+                JOptionPane.showMessageDialog(routesDialog, "Route must be an IP address and a prefix length (e.g., 10.0.0.0/8)!");
+                return;
+            }
+            int length;
+            try {
+                length = Integer.parseInt(text.substring(slash + 1).trim());
+            } catch (NumberFormatException ex) {
+                length = -1;
+            }
+            if (length < 0 || length > 32) {
+                JOptionPane.showMessageDialog(routesDialog, "Prefix length must be between 0 and 32!");
+                return;
+            }
+            Device nextHop = nextHopCombo.getSelectedItem() != null ? findDeviceByName((String) nextHopCombo.getSelectedItem()) : null;
+            if (nextHop == null) {
+                JOptionPane.showMessageDialog(routesDialog, "Link the router to its next hop first!");
+                return;
+            }
+            router.addRoute((int) prefix, length, nextHop);
+            routes.reload();
+            prefixField.setText("");
+        });
+        removeButton.addActionListener(e -> {
+            int row = routeList.getSelectedIndex();
+            if (row >= 0) {
+                routes.remove(row);
+            }
+        });
+
+        routesDialog.add(inputPanel, BorderLayout.NORTH);
+        routesDialog.add(new JScrollPane(routeList), BorderLayout.CENTER);
+        routesDialog.add(createButtonPanel(addButton, removeButton), BorderLayout.SOUTH);
+        routesDialog.setVisible(true);
+    }
+
+    private static class RouteListModel extends AbstractListModel<String> {
+        private final Router router;
+        private int[] prefixes = new int[0];
+        private int[] lengths = new int[0];
+        private Device[] nextHops = new Device[0];
+
+        RouteListModel(Router router) {
+            this.router = router;
+            reload();
+        }
+
+        void reload() {
+            int previous = prefixes.length;
+            int count = router.getRouteCount();
+            prefixes = new int[count];
+            lengths = new int[count];
+            nextHops = new Device[count];
+            int[] row = {0};
+            router.forEachRoute((prefix, length, nextHop) -> {
+                prefixes[row[0]] = prefix;
+                lengths[row[0]] = length;
+                nextHops[row[0]++] = nextHop;
+            });
+            if (previous > 0) {
+                fireIntervalRemoved(this, 0, previous - 1);
+            }
+            if (count > 0) {
+                fireIntervalAdded(this, 0, count - 1);
+            }
+        }
+
+        void remove(int row) {
+            router.removeRoute(prefixes[row], lengths[row]);
+            reload();
+        }
+
+        @Override
+        public int getSize() {
+            return prefixes.length;
+        }
+
+        @Override
+        public String getElementAt(int index) {
+            StringBuilder text = new StringBuilder(48);
+            Ipv4.append(prefixes[index], text);
+            return text.append('/').append(lengths[index]).append(" > ").append(nextHops[index].getName()).toString();
+        }
+    }
+
     private void computerEditDialog(Computer computer, JDialog parentDialog) {
         JDialog editDialog = createDeviceDialog("Edit Computer");
         JTextField nameField = new JTextField(computer.getName());
         JTextField ipField = new JTextField(computer.getIp());
         JComboBox<String> linkedDeviceCombo = new JComboBox<>();
         linkedDeviceCombo.addItem("None");
-        for (Device d : devices) {
+        for (Device d : topology.getDevices()) {
             if (!d.getName().equals(computer.getName()) &&
                     (!(d instanceof Computer) || ((Computer) d).getLinkedDevice() == null)) {
                 linkedDeviceCombo.addItem(d.getName());
@@ -759,29 +901,30 @@ public class MainWindow extends JFrame implements ActionListener {
 
         saveButton.addActionListener(e -> {
             String newName = nameField.getText().trim();
-            String newIp = validateAndFormatIP(ipField.getText(), editDialog);
+            long newIp = validateIP(ipField.getText(), editDialog);
             String newLinkedName = (String) linkedDeviceCombo.getSelectedItem();
 
             if (newName.isEmpty()) {
                 JOptionPane.showMessageDialog(editDialog, "Name cannot be empty!");
                 return;
             }
-            if (newIp == null) {
+            if (newIp < 0) {
                 return;
             }
 
-            if (devices.stream().anyMatch(d -> d != computer && d.getName().equals(newName))) {
+            Device existing = findDeviceByName(newName);
+            if (existing != null && existing != computer) {
                 JOptionPane.showMessageDialog(editDialog, "Device name already exists!");
                 return;
             }
 
             Device newLinkedDevice = newLinkedName.equals("None") ? null : findDeviceByName(newLinkedName);
+            Rectangle damage = devicePanel.damageOf(computer);
             computer.setName(newName);
-            computer.setIp(newIp);
+            computer.setIp((int) newIp);
             computer.setLinkedDevice(newLinkedDevice);
-            computer.label.setText(newName);
-            devicePanel.repaint();
-            saveUserConfiguration();
+            damage.add(devicePanel.damageOf(computer));
+            devicePanel.repaint(damage);
             editDialog.dispose();
             parentDialog.dispose();
         });
@@ -790,7 +933,7 @@ public class MainWindow extends JFrame implements ActionListener {
     }
 
     private void switchEditDialog(Switch switchDevice, JDialog parentDialog) {
-        JDialog editDialog = createDeviceDialog("Edit Switch");
+        JDialog editDialog = createDeviceDialog(switchDevice instanceof Router ? "Edit Router" : "Edit Switch");
         JTextField nameField = new JTextField(switchDevice.getName());
         JTextField ipField = new JTextField(switchDevice.getIp());
         JLabel linkedLabel = new JLabel(String.valueOf(switchDevice.getLinkedDevices().size()));
@@ -807,7 +950,7 @@ public class MainWindow extends JFrame implements ActionListener {
             JPanel checkBoxPanel = new JPanel();
             checkBoxPanel.setLayout(new BoxLayout(checkBoxPanel, BoxLayout.Y_AXIS));
             List<JCheckBox> checkBoxes = new ArrayList<>();
-            for (Device d : devices) {
+            for (Device d : topology.getDevices()) {
                 if (!d.getName().equals(switchDevice.getName()) &&
                         (!(d instanceof Computer) || ((Computer) d).getLinkedDevice() == null)) {
                     JCheckBox checkBox = new JCheckBox(d.getName());
@@ -832,7 +975,10 @@ public class MainWindow extends JFrame implements ActionListener {
                     }
                 }
                 linkedLabel.setText(String.valueOf(newLinkedDevices.size()));
+                Rectangle damage = devicePanel.damageOf(switchDevice);
                 switchDevice.setLinkedDevices(newLinkedDevices);
+                damage.add(devicePanel.damageOf(switchDevice));
+                devicePanel.repaint(damage);
                 linkDialog.dispose();
             });
 
@@ -860,26 +1006,27 @@ public class MainWindow extends JFrame implements ActionListener {
 
         saveButton.addActionListener(e -> {
             String newName = nameField.getText().trim();
-            String newIp = validateAndFormatIP(ipField.getText(), editDialog);
+            long newIp = validateIP(ipField.getText(), editDialog);
 
             if (newName.isEmpty()) {
                 JOptionPane.showMessageDialog(editDialog, "Name cannot be empty!");
                 return;
             }
-            if (newIp == null) {
+            if (newIp < 0) {
                 return;
             }
 
-            if (devices.stream().anyMatch(d -> d != switchDevice && d.getName().equals(newName))) {
+            Device existing = findDeviceByName(newName);
+            if (existing != null && existing != switchDevice) {
                 JOptionPane.showMessageDialog(editDialog, "Device name already exists!");
                 return;
             }
 
+            Rectangle damage = devicePanel.damageOf(switchDevice);
             switchDevice.setName(newName);
-            switchDevice.setIp(newIp);
-            switchDevice.label.setText(newName);
-            devicePanel.repaint();
-            saveUserConfiguration();
+            switchDevice.setIp((int) newIp);
+            damage.add(devicePanel.damageOf(switchDevice));
+            devicePanel.repaint(damage);
             editDialog.dispose();
             parentDialog.dispose();
         });
@@ -887,32 +1034,40 @@ public class MainWindow extends JFrame implements ActionListener {
         editDialog.setVisible(true);
     }
 
-    private String validateAndFormatIP(String ip, JDialog dialog) {
+    // The address as an unsigned value, or Ipv4.INVALID after telling the user what is wrong
+    private long validateIP(String ip, JDialog dialog) {
         if (ip == null || ip.trim().isEmpty()) {
             JOptionPane.showMessageDialog(dialog, "IP Address cannot be empty!");
-            return null;
+            return Ipv4.INVALID;
+        }
+        long value = Ipv4.parse(ip.trim());
+        if (value >= 0) {
+            return value;
         }
 
+        // Only invalid input gets here, find the message that fits
         String[] segments = ip.trim().split("\\.");
         if (segments.length != 4) {
             JOptionPane.showMessageDialog(dialog, "IP Address must have exactly four segments (e.g., 192.168.1.100)!");
-            return null;
+            return Ipv4.INVALID;
         }
-
-        int[] values = new int[4];
-        for (int i = 0; i < 4; i++) {
+        for (String segment : segments) {
             try {
-                values[i] = Integer.parseInt(segments[i].trim());
-                if (values[i] < 0 || values[i] > 255) {
+                int number = Integer.parseInt(segment.trim());
+                if (number < 0 || number > 255) {
                     JOptionPane.showMessageDialog(dialog, "Each IP segment must be between 0 and 255!");
-                    return null;
+                    return Ipv4.INVALID;
                 }
             } catch (NumberFormatException e) {
                 JOptionPane.showMessageDialog(dialog, "IP segments must be valid numbers!");
-                return null;
+                return Ipv4.INVALID;
             }
         }
-
-        return String.format("%03d.%03d.%03d.%03d", values[0], values[1], values[2], values[3]);
+        // Accepted before, e.g. spaces around a segment or leading zeros past three digits
+        long lenient = 0;
+        for (String segment : segments) {
+            lenient = (lenient << 8) | Integer.parseInt(segment.trim());
+        }
+        return lenient;
     }
 }
\ No newline at end of file
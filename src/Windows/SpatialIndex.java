@@ -0,0 +1,391 @@
+package Windows;
+
+import Data.Adjacency;
+import Data.Device;
+import Data.Topology;
+import Data.TopologyListener;
+
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Uniform grid over device boxes and link bounding boxes, kept up to date through the
+// topology's listener events. Each device sits in the cell of its top-left corner, so a box
+// query only looks at the cells it covers plus one device size to the left and top. Links
+// are registered in every cell their bounding box covers; links spanning more than
+// MAX_LINK_CELLS cells go to a separate list that queries test one by one. The link grid is
+// rebuilt when the topology hands out a new adjacency snapshot and patched on moves.
+// Device counts are also kept per block of 2^level x 2^level cells for zoomed out views.
+public class SpatialIndex implements TopologyListener {
+    private static final int MAX_LINK_CELLS = 64;
+    public static final int DENSITY_LEVELS = 16;
+
+    private final Topology topology;
+    private final int deviceSize;
+    private final int cellSize;
+
+    private final Map<Long, List<Device>> deviceCells = new HashMap<>();
+    private final Map<Device, Long> cellOfDevice = new IdentityHashMap<>();
+    private final List<Map<Long, int[]>> densityLevels = new ArrayList<>(DENSITY_LEVELS);
+
+    // Links are identified by the adjacency slot of their lower-numbered end
+    private Adjacency links;
+    private final Map<Long, IntList> linkCells = new HashMap<>();
+    private final BitSet oversizedLinks = new BitSet();
+    private int[] linkOwner = new int[0];     // row of each slot
+    private int[] linkCellRange = new int[0]; // minCellX, minCellY, maxCellX, maxCellY per slot
+    private int[] visited = new int[0];
+    private int visitStamp;
+
+    public interface LinkVisitor {
+        // Returns false to stop the walk
+        boolean visit(Device from, Device to);
+    }
+
+    public interface DensityVisitor {
+        void visit(int x, int y, int size, int devices);
+    }
+
+    private static class IntList {
+        int[] items = new int[4];
+        int size;
+
+        void add(int value) {
+            if (size == items.length) {
+                items = Arrays.copyOf(items, size * 2);
+            }
+            items[size++] = value;
+        }
+
+        void remove(int value) {
+            for (int i = 0; i < size; i++) {
+                if (items[i] == value) {
+                    items[i] = items[--size];
+                    return;
+                }
+            }
+        }
+    }
+
+    public SpatialIndex(Topology topology, int deviceSize, int cellSize) {
+        this.topology = topology;
+        this.deviceSize = deviceSize;
+        this.cellSize = Math.max(cellSize, deviceSize);
+        for (int level = 0; level < DENSITY_LEVELS; level++) {
+            densityLevels.add(new HashMap<>());
+        }
+        for (Device device : topology.getDevices()) {
+            insert(device);
+        }
+    }
+
+    // Topmost device under the point, devices later in the topology are painted on top
+    public Device deviceAt(int x, int y) {
+        Device found = null;
+        int foundIndex = -1;
+        for (Device device : devicesIn(new Rectangle(x, y, 1, 1))) {
+            int index = topology.indexOf(device);
+            if (index > foundIndex) {
+                found = device;
+                foundIndex = index;
+            }
+        }
+        return found;
+    }
+
+    // Devices whose box intersects the area, in no particular order
+    public List<Device> devicesIn(Rectangle area) {
+        List<Device> result = new ArrayList<>();
+        int minCellX = Math.floorDiv(area.x - deviceSize + 1, cellSize);
+        int minCellY = Math.floorDiv(area.y - deviceSize + 1, cellSize);
+        int maxCellX = Math.floorDiv(area.x + area.width - 1, cellSize);
+        int maxCellY = Math.floorDiv(area.y + area.height - 1, cellSize);
+        long cells = (long) (maxCellX - minCellX + 1) * (maxCellY - minCellY + 1);
+        if (cells > deviceCells.size()) {
+            // Larger than the occupied grid, walking the occupied cells is cheaper
+            for (List<Device> cell : deviceCells.values()) {
+                collect(cell, area, result);
+            }
+            return result;
+        }
+        for (int cy = minCellY; cy <= maxCellY; cy++) {
+            for (int cx = minCellX; cx <= maxCellX; cx++) {
+                List<Device> cell = deviceCells.get(key(cx, cy));
+                if (cell != null) {
+                    collect(cell, area, result);
+                }
+            }
+        }
+        return result;
+    }
+
+    // True if no device other than ignored overlaps the area
+    public boolean isFree(Rectangle area, Device ignored) {
+        for (Device device : devicesIn(area)) {
+            if (device != ignored) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int getCellSize() {
+        return cellSize;
+    }
+
+    // Visits the non-empty blocks of 2^level x 2^level cells intersecting the area, in world
+    // coordinates, with the number of devices whose top-left corner lies in the block
+    public void densityIn(Rectangle area, int level, DensityVisitor visitor) {
+        Map<Long, int[]> counts = densityLevels.get(level);
+        int size = cellSize << level;
+        int minX = Math.floorDiv(area.x - deviceSize + 1, size);
+        int minY = Math.floorDiv(area.y - deviceSize + 1, size);
+        int maxX = Math.floorDiv(area.x + area.width - 1, size);
+        int maxY = Math.floorDiv(area.y + area.height - 1, size);
+        if ((long) (maxX - minX + 1) * (maxY - minY + 1) > counts.size()) {
+            for (Map.Entry<Long, int[]> block : counts.entrySet()) {
+                int bx = (int) (block.getKey() >> 32);
+                int by = (int) (long) block.getKey();
+                if (bx >= minX && bx <= maxX && by >= minY && by <= maxY) {
+                    visitor.visit(bx * size, by * size, size, block.getValue()[0]);
+                }
+            }
+            return;
+        }
+        for (int by = minY; by <= maxY; by++) {
+            for (int bx = minX; bx <= maxX; bx++) {
+                int[] count = counts.get(key(bx, by));
+                if (count != null) {
+                    visitor.visit(bx * size, by * size, size, count[0]);
+                }
+            }
+        }
+    }
+
+    // Visits each link whose bounding box, between device centers, intersects the area once,
+    // until the visitor returns false
+    public void linksIn(Rectangle area, LinkVisitor visitor) {
+        Adjacency adjacency = topology.getAdjacency();
+        if (adjacency != links) {
+            rebuildLinks(adjacency);
+        }
+        if (++visitStamp == 0) {
+            Arrays.fill(visited, 0);
+            visitStamp = 1;
+        }
+        int half = deviceSize / 2;
+        int minX = area.x - half;
+        int minY = area.y - half;
+        int maxX = area.x + area.width - 1 - half;
+        int maxY = area.y + area.height - 1 - half;
+        int minCellX = Math.floorDiv(minX, cellSize);
+        int minCellY = Math.floorDiv(minY, cellSize);
+        int maxCellX = Math.floorDiv(maxX, cellSize);
+        int maxCellY = Math.floorDiv(maxY, cellSize);
+        long cells = (long) (maxCellX - minCellX + 1) * (maxCellY - minCellY + 1);
+        if (cells > linkCells.size()) {
+            for (IntList cell : linkCells.values()) {
+                if (!visitCell(cell, minX, minY, maxX, maxY, visitor)) {
+                    return;
+                }
+            }
+        } else {
+            for (int cy = minCellY; cy <= maxCellY; cy++) {
+                for (int cx = minCellX; cx <= maxCellX; cx++) {
+                    IntList cell = linkCells.get(key(cx, cy));
+                    if (cell != null && !visitCell(cell, minX, minY, maxX, maxY, visitor)) {
+                        return;
+                    }
+                }
+            }
+        }
+        for (int slot = oversizedLinks.nextSetBit(0); slot >= 0; slot = oversizedLinks.nextSetBit(slot + 1)) {
+            if (!visitLink(slot, minX, minY, maxX, maxY, visitor)) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void deviceAdded(Device device) {
+        insert(device);
+    }
+
+    @Override
+    public void deviceRemoved(Device device) {
+        remove(device);
+    }
+
+    @Override
+    public void deviceRenamed(Device device, String oldName) {
+    }
+
+    @Override
+    public void deviceChanged(Device device) {
+        // Link changes give the topology a new adjacency, the link grid follows on the next query
+    }
+
+    @Override
+    public void deviceMoved(Device device, int oldX, int oldY) {
+        Long oldKey = cellOfDevice.get(device);
+        long newKey = key(Math.floorDiv(device.getX(), cellSize), Math.floorDiv(device.getY(), cellSize));
+        if (oldKey == null || oldKey != newKey) {
+            remove(device);
+            insert(device);
+        }
+        // A move keeps the adjacency, patch the device's own links
+        if (links != null && links == topology.getAdjacency()) {
+            int i = links.indexOf(device);
+            for (int k = links.start(i); k < links.end(i); k++) {
+                int slot = canonicalSlot(i, k);
+                unregisterLink(slot);
+                registerLink(slot);
+            }
+        }
+    }
+
+    private void collect(List<Device> cell, Rectangle area, List<Device> result) {
+        for (Device device : cell) {
+            if (device.getX() < area.x + area.width && device.getX() + deviceSize > area.x
+                    && device.getY() < area.y + area.height && device.getY() + deviceSize > area.y) {
+                result.add(device);
+            }
+        }
+    }
+
+    private void insert(Device device) {
+        long key = key(Math.floorDiv(device.getX(), cellSize), Math.floorDiv(device.getY(), cellSize));
+        deviceCells.computeIfAbsent(key, k -> new ArrayList<>(4)).add(device);
+        cellOfDevice.put(device, key);
+        int cx = (int) (key >> 32);
+        int cy = (int) key;
+        for (int level = 0; level < DENSITY_LEVELS; level++) {
+            densityLevels.get(level).computeIfAbsent(key(cx >> level, cy >> level), k -> new int[1])[0]++;
+        }
+    }
+
+    private void remove(Device device) {
+        Long key = cellOfDevice.remove(device);
+        if (key == null) {
+            return;
+        }
+        List<Device> cell = deviceCells.get(key);
+        cell.remove(device);
+        if (cell.isEmpty()) {
+            deviceCells.remove(key);
+        }
+        int cx = (int) (key >> 32);
+        int cy = (int) (long) key;
+        for (int level = 0; level < DENSITY_LEVELS; level++) {
+            Map<Long, int[]> counts = densityLevels.get(level);
+            long blockKey = key(cx >> level, cy >> level);
+            if (--counts.get(blockKey)[0] == 0) {
+                counts.remove(blockKey);
+            }
+        }
+    }
+
+    private void rebuildLinks(Adjacency adjacency) {
+        links = adjacency;
+        linkCells.clear();
+        oversizedLinks.clear();
+        int slots = adjacency.size() == 0 ? 0 : adjacency.end(adjacency.size() - 1);
+        linkOwner = new int[slots];
+        linkCellRange = new int[slots * 4];
+        visited = new int[slots];
+        visitStamp = 0;
+        for (int i = 0; i < adjacency.size(); i++) {
+            for (int k = adjacency.start(i); k < adjacency.end(i); k++) {
+                linkOwner[k] = i;
+            }
+        }
+        for (int i = 0; i < adjacency.size(); i++) {
+            for (int k = adjacency.start(i); k < adjacency.end(i); k++) {
+                if (adjacency.neighbor(k) > i) {
+                    registerLink(k);
+                }
+            }
+        }
+    }
+
+    // Slot of the link in the row of its lower-numbered end
+    private int canonicalSlot(int i, int k) {
+        int j = links.neighbor(k);
+        return j > i ? k : links.find(j, i);
+    }
+
+    private void registerLink(int slot) {
+        Device from = links.device(linkOwner[slot]);
+        Device to = links.device(links.neighbor(slot));
+        int minCellX = Math.floorDiv(Math.min(from.getX(), to.getX()), cellSize);
+        int minCellY = Math.floorDiv(Math.min(from.getY(), to.getY()), cellSize);
+        int maxCellX = Math.floorDiv(Math.max(from.getX(), to.getX()), cellSize);
+        int maxCellY = Math.floorDiv(Math.max(from.getY(), to.getY()), cellSize);
+        int r = slot * 4;
+        linkCellRange[r] = minCellX;
+        linkCellRange[r + 1] = minCellY;
+        linkCellRange[r + 2] = maxCellX;
+        linkCellRange[r + 3] = maxCellY;
+        if ((long) (maxCellX - minCellX + 1) * (maxCellY - minCellY + 1) > MAX_LINK_CELLS) {
+            oversizedLinks.set(slot);
+            return;
+        }
+        for (int cy = minCellY; cy <= maxCellY; cy++) {
+            for (int cx = minCellX; cx <= maxCellX; cx++) {
+                linkCells.computeIfAbsent(key(cx, cy), k -> new IntList()).add(slot);
+            }
+        }
+    }
+
+    private void unregisterLink(int slot) {
+        if (oversizedLinks.get(slot)) {
+            oversizedLinks.clear(slot);
+            return;
+        }
+        int r = slot * 4;
+        for (int cy = linkCellRange[r + 1]; cy <= linkCellRange[r + 3]; cy++) {
+            for (int cx = linkCellRange[r]; cx <= linkCellRange[r + 2]; cx++) {
+                long key = key(cx, cy);
+                IntList cell = linkCells.get(key);
+                if (cell != null) {
+                    cell.remove(slot);
+                    if (cell.size == 0) {
+                        linkCells.remove(key);
+                    }
+                }
+            }
+        }
+    }
+
+    private boolean visitCell(IntList cell, int minX, int minY, int maxX, int maxY, LinkVisitor visitor) {
+        for (int n = 0; n < cell.size; n++) {
+            int slot = cell.items[n];
+            if (visited[slot] != visitStamp) {
+                visited[slot] = visitStamp;
+                if (!visitLink(slot, minX, minY, maxX, maxY, visitor)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private boolean visitLink(int slot, int minX, int minY, int maxX, int maxY, LinkVisitor visitor) {
+        Device from = links.device(linkOwner[slot]);
+        Device to = links.device(links.neighbor(slot));
+        if (Math.max(from.getX(), to.getX()) < minX || Math.min(from.getX(), to.getX()) > maxX
+                || Math.max(from.getY(), to.getY()) < minY || Math.min(from.getY(), to.getY()) > maxY) {
+            return true;
+        }
+        return visitor.visit(from, to);
+    }
+
+    private static long key(int cellX, int cellY) {
+        return ((long) cellX << 32) | (cellY & 0xFFFFFFFFL);
+    }
+}
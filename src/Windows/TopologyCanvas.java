@@ -0,0 +1,417 @@
+package Windows;
+
+import Data.Adjacency;
+import Data.Computer;
+import Data.Device;
+import Data.Router;
+import Data.SpanningTree;
+import Data.Switch;
+import Data.Topology;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Consumer;
+
+// Draws the whole topology itself instead of one JLabel per device. Only devices and links
+// crossing the clip rectangle are painted, found through a SpatialIndex, so a repaint costs
+// what is on screen. Hit testing, dragging and tooltips are handled here too. Changes repaint
+// only the area they touch, see damageOf(). Links blocked by the spanning tree are drawn grey
+// with a mark at the blocking end; a change there may be far from the edit that caused it,
+// so the first paint after one repaints everything.
+//
+// The wheel zooms around the cursor and dragging the background pans. Device positions are
+// world coordinates; the view shows them times the scale, shifted by viewX/viewY. How much
+// detail is drawn depends on the scale:
+//     DETAIL_SCALE and up   icons, names from LABEL_SCALE up, every link
+//     HEAT_SCALE and up     one square per device, a sample of the links
+//     below                 device density per grid block, no links
+public class TopologyCanvas extends JComponent {
+    private static final int ICON_SIZE = 64;
+    private static final int CELL_SIZE = 256;
+
+    private static final double MIN_SCALE = 1.0 / 1024;
+    private static final double MAX_SCALE = 4;
+    private static final double ZOOM_STEP = 1.25;
+    private static final double LABEL_SCALE = 0.75;
+    private static final double DETAIL_SCALE = 0.3;
+    private static final double HEAT_SCALE = 0.06;
+    private static final int SAMPLED_LINKS_PER_TILE = 2000;
+    private static final int MIN_HEAT_BLOCK_PIXELS = 4;
+
+    private static final Color COMPUTER_COLOR = new Color(0x37474F);
+    private static final Color SWITCH_COLOR = new Color(0x1565C0);
+    private static final Color ROUTER_COLOR = new Color(0x2E7D32);
+    private static final Color[] HEAT_COLORS = new Color[32];
+
+    static {
+        for (int i = 0; i < HEAT_COLORS.length; i++) {
+            HEAT_COLORS[i] = new Color(198, 40, 40, 64 + i * (255 - 64) / (HEAT_COLORS.length - 1));
+        }
+    }
+
+    private final int deviceSize;
+    private Topology topology = new Topology();
+    private SpatialIndex index;
+    private SpanningTree spanningTree;
+    private LinkLayer linkLayer;
+
+    private double scale = 1;
+    private double zoomSteps; // scale is ZOOM_STEP to the rounded power of this, so icon sizes repeat
+    private int viewX; // view origin in world coordinates times the scale
+    private int viewY;
+
+    private Consumer<Device> clickHandler;
+    private Consumer<Device> dragFinishedHandler;
+
+    private Device dragged;
+    private int dragOffsetX;
+    private int dragOffsetY;
+    private Point panFrom;
+
+    public TopologyCanvas(int deviceSize) {
+        this.deviceSize = deviceSize;
+        this.index = new SpatialIndex(topology, deviceSize, CELL_SIZE);
+        this.spanningTree = new SpanningTree(topology);
+        this.linkLayer = new LinkLayer(topology, index, spanningTree, deviceSize);
+        setOpaque(true);
+        setBackground(UIManager.getColor("Panel.background"));
+        setToolTipText(""); // registers with the tooltip manager, the text comes from getToolTipText(MouseEvent)
+
+        MouseAdapter mouse = new MouseAdapter() {
+            @Override
+            public void mousePressed(MouseEvent e) {
+                dragged = SwingUtilities.isLeftMouseButton(e) && scale >= HEAT_SCALE ? deviceAt(e.getX(), e.getY()) : null;
+                linkLayer.setLiveDevice(dragged);
+                if (dragged != null) {
+                    dragOffsetX = toWorldX(e.getX()) - dragged.getX();
+                    dragOffsetY = toWorldY(e.getY()) - dragged.getY();
+                } else {
+                    panFrom = e.getPoint();
+                }
+            }
+
+            @Override
+            public void mouseDragged(MouseEvent e) {
+                if (panFrom != null) {
+                    panBy(panFrom.x - e.getX(), panFrom.y - e.getY());
+                    panFrom = e.getPoint();
+                    return;
+                }
+                if (dragged == null) {
+                    return;
+                }
+                int x = Math.max(0, toWorldX(e.getX()) - dragOffsetX);
+                int y = Math.max(0, toWorldY(e.getY()) - dragOffsetY);
+                Rectangle damage = damageOf(dragged);
+                dragged.setPosition(x, y);
+                damage.add(damageOf(dragged));
+                repaint(damage);
+            }
+
+            @Override
+            public void mouseReleased(MouseEvent e) {
+                if (dragged != null && dragFinishedHandler != null) {
+                    dragFinishedHandler.accept(dragged);
+                }
+                dragged = null;
+                panFrom = null;
+                linkLayer.setLiveDevice(null);
+            }
+
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                Device device = scale >= HEAT_SCALE ? deviceAt(e.getX(), e.getY()) : null;
+                if (device != null && clickHandler != null) {
+                    clickHandler.accept(device);
+                }
+            }
+
+            @Override
+            public void mouseWheelMoved(MouseWheelEvent e) {
+                zoomAt(e.getX(), e.getY(), -e.getPreciseWheelRotation());
+            }
+        };
+        addMouseListener(mouse);
+        addMouseMotionListener(mouse);
+        addMouseWheelListener(mouse);
+    }
+
+    public void setTopology(Topology topology) {
+        this.topology.removeListener(index);
+        this.topology.removeListener(spanningTree);
+        this.topology.removeListener(linkLayer);
+        this.topology = topology;
+        index = new SpatialIndex(topology, deviceSize, CELL_SIZE);
+        spanningTree = new SpanningTree(topology);
+        linkLayer = new LinkLayer(topology, index, spanningTree, deviceSize);
+        linkLayer.setScale(scale, tileLinkBudget());
+        topology.addListener(index);
+        topology.addListener(spanningTree);
+        topology.addListener(linkLayer);
+        dragged = null;
+        repaint();
+    }
+
+    public void setClickHandler(Consumer<Device> clickHandler) {
+        this.clickHandler = clickHandler;
+    }
+
+    public void setDragFinishedHandler(Consumer<Device> dragFinishedHandler) {
+        this.dragFinishedHandler = dragFinishedHandler;
+    }
+
+    public int getDeviceSize() {
+        return deviceSize;
+    }
+
+    public SpatialIndex getSpatialIndex() {
+        return index;
+    }
+
+    public SpanningTree getSpanningTree() {
+        return spanningTree;
+    }
+
+    public double getScale() {
+        return scale;
+    }
+
+    // Zooms in by ZOOM_STEP per step, out for negative steps, keeping the world point under
+    // (x, y) in place
+    public void zoomAt(int x, int y, double steps) {
+        double minSteps = Math.log(MIN_SCALE) / Math.log(ZOOM_STEP);
+        double maxSteps = Math.log(MAX_SCALE) / Math.log(ZOOM_STEP);
+        zoomSteps = Math.max(minSteps, Math.min(maxSteps, zoomSteps + steps));
+        double newScale = Math.pow(ZOOM_STEP, Math.round(zoomSteps));
+        if (newScale == scale) {
+            return;
+        }
+        double worldX = (x + viewX) / scale;
+        double worldY = (y + viewY) / scale;
+        scale = newScale;
+        viewX = (int) Math.round(worldX * scale - x);
+        viewY = (int) Math.round(worldY * scale - y);
+        linkLayer.setScale(scale, tileLinkBudget());
+        repaint();
+    }
+
+    public void panBy(int dx, int dy) {
+        viewX += dx;
+        viewY += dy;
+        repaint();
+    }
+
+    // Part of the world currently on screen
+    public Rectangle getVisibleWorld() {
+        return toWorld(new Rectangle(viewX, viewY, getWidth(), getHeight()));
+    }
+
+    // Device under a point of the component
+    public Device deviceAt(int x, int y) {
+        return index.deviceAt(toWorldX(x), toWorldY(y));
+    }
+
+    // Area the device paints, in component coordinates: its box, its name and its links.
+    // Take it before and after a change and repaint both.
+    public Rectangle damageOf(Device device) {
+        Rectangle area = new Rectangle(device.getX(), device.getY(), deviceSize, deviceSize);
+        String name = device.getName();
+        if (name != null && scale >= LABEL_SCALE) {
+            // Names are drawn at a fixed font size whatever the scale
+            int textWidth = (int) Math.ceil(getFontMetrics(getLabelFont()).stringWidth(name) / scale);
+            if (textWidth > deviceSize) {
+                area.add(new Rectangle(device.getX() + (deviceSize - textWidth) / 2, device.getY(), textWidth, deviceSize));
+            }
+        }
+        Adjacency adjacency = topology.getAdjacency();
+        int i = adjacency.indexOf(device);
+        if (i >= 0) {
+            int half = deviceSize / 2;
+            for (int k = adjacency.start(i); k < adjacency.end(i); k++) {
+                Device linked = adjacency.device(adjacency.neighbor(k));
+                area.add(new Rectangle(linked.getX() + half, linked.getY() + half, 1, 1));
+            }
+        }
+        return new Rectangle((int) Math.floor(area.x * scale) - viewX - 1, (int) Math.floor(area.y * scale) - viewY - 1,
+                (int) Math.ceil(area.width * scale) + 2, (int) Math.ceil(area.height * scale) + 2);
+    }
+
+    public void repaintDevice(Device device) {
+        repaint(damageOf(device));
+    }
+
+    // Moves many devices at once, positions holds x0, y0, x1, y1, ... Cheaper than moving them
+    // one by one while link tiles are cached, those are dropped once up front.
+    public void moveDevices(Device[] devices, int[] positions) {
+        linkLayer.invalidateAll();
+        for (int i = 0; i < devices.length; i++) {
+            if (topology.indexOf(devices[i]) >= 0) {
+                devices[i].setPosition(positions[2 * i], positions[2 * i + 1]);
+            }
+        }
+        repaint();
+    }
+
+    @Override
+    public String getToolTipText(MouseEvent e) {
+        Device device = scale >= HEAT_SCALE ? deviceAt(e.getX(), e.getY()) : null;
+        if (device instanceof Computer) {
+            return "<html>Name: " + device.getName() +
+                    "<br>IP: " + device.getIp() +
+                    "<br>Linked: " + ((Computer) device).getLinkedDeviceName() + "</html>";
+        } else if (device instanceof Router) {
+            return "<html>Name: " + device.getName() +
+                    "<br>IP: " + device.getIp() +
+                    "<br>Linked: " + ((Router) device).getLinkedDevicesNames() +
+                    "<br>Routes: " + ((Router) device).getRouteCount() + "</html>";
+        } else if (device instanceof Switch) {
+            return "<html>Name: " + device.getName() +
+                    "<br>IP: " + device.getIp() +
+                    "<br>Linked: " + ((Switch) device).getLinkedDevicesNames() +
+                    spanningTreeText(device) + "</html>";
+        }
+        return null;
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        Rectangle clip = g.getClipBounds();
+        if (clip == null) {
+            clip = new Rectangle(0, 0, getWidth(), getHeight());
+        }
+        if (spanningTree.takeChanged()) {
+            linkLayer.invalidateAll();
+            if (!clip.contains(0, 0, getWidth(), getHeight())) {
+                repaint();
+            }
+        }
+        if (isOpaque()) {
+            g.setColor(getBackground());
+            g.fillRect(clip.x, clip.y, clip.width, clip.height);
+        }
+        // Paint in view coordinates, world times the scale
+        Graphics view = g.create();
+        try {
+            view.translate(-viewX, -viewY);
+            Rectangle viewClip = new Rectangle(clip.x + viewX, clip.y + viewY, clip.width, clip.height);
+            Rectangle worldClip = toWorld(viewClip);
+            if (scale < HEAT_SCALE) {
+                paintDensity(view, worldClip);
+            } else {
+                linkLayer.paint(view, viewClip, getGraphicsConfiguration());
+                paintDevices(view, worldClip);
+            }
+        } finally {
+            view.dispose();
+        }
+    }
+
+    private void paintDevices(Graphics g, Rectangle worldClip) {
+        List<Device> visible = index.devicesIn(worldClip);
+        visible.sort(Comparator.comparingInt(topology::indexOf)); // keep the stacking order of the device list
+        int size = Math.max(2, (int) Math.round(deviceSize * scale));
+        if (scale < DETAIL_SCALE) {
+            for (Device device : visible) {
+                g.setColor(device instanceof Computer ? COMPUTER_COLOR : device instanceof Router ? ROUTER_COLOR : SWITCH_COLOR);
+                g.fillRect(toView(device.getX()), toView(device.getY()), size, size);
+            }
+            return;
+        }
+
+        int iconSize = (int) Math.round(ICON_SIZE * scale);
+        int iconInset = (size - iconSize) / 2;
+        Image computerIcon = IconCache.shared().getIcon(IconCache.COMPUTER, iconSize);
+        Image switchIcon = IconCache.shared().getIcon(IconCache.SWITCH, iconSize);
+        Image routerIcon = IconCache.shared().getIcon(IconCache.ROUTER, iconSize);
+        boolean labels = scale >= LABEL_SCALE;
+        g.setFont(getLabelFont());
+        FontMetrics metrics = g.getFontMetrics();
+        int textY = iconSize + metrics.getAscent();
+        g.setColor(UIManager.getColor("Label.foreground"));
+        for (Device device : visible) {
+            int x = toView(device.getX());
+            int y = toView(device.getY());
+            Image icon = device instanceof Computer ? computerIcon : device instanceof Router ? routerIcon : switchIcon;
+            if (icon != null) {
+                g.drawImage(icon, x + iconInset, y, null);
+            }
+            String name = device.getName();
+            if (labels && name != null) {
+                g.drawString(name, x + (size - metrics.stringWidth(name)) / 2, y + textY);
+            }
+        }
+    }
+
+    private String spanningTreeText(Device device) {
+        Device rootPort = spanningTree.getRootPort(device);
+        if (rootPort == null) {
+            return "<br>Spanning tree: root bridge";
+        }
+        StringBuilder text = new StringBuilder("<br>Root port: ").append(rootPort.getName())
+                .append(", cost ").append(spanningTree.getRootPathCost(device));
+        Adjacency adjacency = topology.getAdjacency();
+        int i = adjacency.indexOf(device);
+        String separator = "<br>Blocked: ";
+        for (int k = i >= 0 ? adjacency.start(i) : 0, end = i >= 0 ? adjacency.end(i) : 0; k < end; k++) {
+            Device peer = adjacency.device(adjacency.neighbor(k));
+            if (spanningTree.isBlocked(device, peer)) {
+                text.append(separator).append(peer.getName());
+                separator = ", ";
+            }
+        }
+        return text.toString();
+    }
+
+    // One square per block of grid cells, darker the more devices it holds
+    private void paintDensity(Graphics g, Rectangle worldClip) {
+        int level = 0;
+        while (level < SpatialIndex.DENSITY_LEVELS - 1 && (index.getCellSize() << level) * scale < MIN_HEAT_BLOCK_PIXELS) {
+            level++;
+        }
+        int blockSize = index.getCellSize() << level;
+        double full = Math.log1p((double) blockSize * blockSize / ((double) deviceSize * deviceSize));
+        index.densityIn(worldClip, level, (x, y, size, devices) -> {
+            int shade = (int) Math.min(HEAT_COLORS.length - 1, Math.log1p(devices) / full * (HEAT_COLORS.length - 1));
+            g.setColor(HEAT_COLORS[shade]);
+            int left = toView(x);
+            int top = toView(y);
+            g.fillRect(left, top, Math.max(1, toView(x + size) - left), Math.max(1, toView(y + size) - top));
+        });
+    }
+
+    private int tileLinkBudget() {
+        if (scale < HEAT_SCALE) {
+            return 0;
+        }
+        return scale < DETAIL_SCALE ? SAMPLED_LINKS_PER_TILE : Integer.MAX_VALUE;
+    }
+
+    private int toView(int world) {
+        return (int) Math.round(world * scale);
+    }
+
+    private int toWorldX(int x) {
+        return (int) Math.floor((x + viewX) / scale);
+    }
+
+    private int toWorldY(int y) {
+        return (int) Math.floor((y + viewY) / scale);
+    }
+
+    // World rectangle covering a rectangle in view coordinates
+    private Rectangle toWorld(Rectangle view) {
+        int x = (int) Math.floor(view.x / scale);
+        int y = (int) Math.floor(view.y / scale);
+        return new Rectangle(x, y, (int) Math.ceil((view.x + view.width) / scale) - x + 1,
+                (int) Math.ceil((view.y + view.height) / scale) - y + 1);
+    }
+
+    private Font getLabelFont() {
+        return getFont() != null ? getFont() : UIManager.getFont("Label.font");
+    }
+}
@@ -0,0 +1,180 @@
+package Windows;
+
+import Data.User;
+import Database.UserRepository;
+
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import java.sql.SQLException;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// The administrator window's users, read from the database a PAGE_SIZE page at a time as the
+// table asks for rows, so only the pages in view are ever loaded. Pages are read on a
+// background thread by keyset, the users after the last name of the page before; rows show
+// blank until theirs arrives. Jumping past pages not read yet first finds the page's start
+// with one offset query over the name index, from the nearest page start known.
+// At most MAX_PAGES pages are kept. Everything but the loading itself runs on the EDT.
+public class UserTableModel extends AbstractTableModel {
+    private static final int PAGE_SIZE = 100;
+    private static final int MAX_PAGES = 50;
+    private static final String[] COLUMNS = {"Username", "Role", "USB Serial Number"};
+
+    private final UserRepository repository;
+    private final ExecutorService loader = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "User loader");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Map<Integer, List<User>> pages = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, List<User>> eldest) {
+            return size() > MAX_PAGES;
+        }
+    };
+    private final TreeMap<Integer, String> pageStarts = new TreeMap<>(); // page -> name before its first row
+    private final Set<Integer> loading = new HashSet<>();
+    private String role;
+    private String search;
+    private int rowCount;
+    private int generation; // bumped by refresh(), loads for an older one are dropped
+
+    public UserTableModel(UserRepository repository) {
+        this.repository = repository;
+        refresh();
+    }
+
+    // role null for all, search matches the start of the user name or USB serial
+    public void setFilter(String role, String search) {
+        this.role = role;
+        this.search = search;
+        refresh();
+    }
+
+    // Forgets the loaded pages, after the users changed
+    public void refresh() {
+        generation++;
+        pages.clear();
+        pageStarts.clear();
+        pageStarts.put(0, null);
+        loading.clear();
+        int requested = generation;
+        String role = this.role;
+        String search = this.search;
+        loader.submit(() -> {
+            try {
+                int count = repository.count(role, search);
+                SwingUtilities.invokeLater(() -> {
+                    if (requested == generation) {
+                        rowCount = count;
+                        fireTableDataChanged();
+                    }
+                });
+            } catch (SQLException e) {
+                System.out.println("SQL error: " + e.getMessage());
+            }
+        });
+        fireTableDataChanged();
+    }
+
+    // null until the row's page is loaded
+    public User getUserAt(int row) {
+        int page = row / PAGE_SIZE;
+        List<User> users = pages.get(page);
+        if (users == null) {
+            load(page);
+            return null;
+        }
+        int i = row % PAGE_SIZE;
+        return i < users.size() ? users.get(i) : null;
+    }
+
+    public void close() {
+        loader.shutdownNow();
+    }
+
+    @Override
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMNS.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMNS[column];
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        User user = getUserAt(row);
+        if (user == null) {
+            return null;
+        }
+        switch (column) {
+            case 0:
+                return user.getUserName();
+            case 1:
+                return user.getRole();
+            default:
+                return user.getUsbSerialNumber();
+        }
+    }
+
+    private void load(int page) {
+        if (!loading.add(page)) {
+            return; // on its way, or failed until the next refresh
+        }
+        Map.Entry<Integer, String> start = pageStarts.floorEntry(page);
+        int fromPage = start.getKey();
+        String fromName = start.getValue();
+        int requested = generation;
+        String role = this.role;
+        String search = this.search;
+        loader.submit(() -> {
+            try {
+                String after = fromName;
+                List<User> users;
+                if (fromPage < page) {
+                    after = repository.findUserNameAfter(role, search, fromName, (page - fromPage) * PAGE_SIZE - 1);
+                }
+                if (fromPage < page && after == null) {
+                    users = List.of(); // fewer users than counted, some were deleted since
+                } else {
+                    users = repository.findPage(role, search, after, PAGE_SIZE);
+                }
+                String pageStart = after;
+                SwingUtilities.invokeLater(() -> loaded(requested, page, pageStart, users));
+            } catch (SQLException e) {
+                System.out.println("SQL error: " + e.getMessage());
+            }
+        });
+    }
+
+    private void loaded(int requested, int page, String pageStart, List<User> users) {
+        if (requested != generation) {
+            return;
+        }
+        loading.remove(page);
+        pages.put(page, users);
+        pageStarts.put(page, pageStart);
+        if (users.size() == PAGE_SIZE) {
+            pageStarts.put(page + 1, users.get(PAGE_SIZE - 1).getUserName());
+        }
+        int first = page * PAGE_SIZE;
+        int last = Math.min(rowCount, first + PAGE_SIZE) - 1;
+        if (first <= last) {
+            fireTableRowsUpdated(first, last);
+        }
+    }
+}
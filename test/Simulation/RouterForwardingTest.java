@@ -0,0 +1,97 @@
+package Simulation;
+
+import Data.Computer;
+import Data.Device;
+import Data.Router;
+import Data.Switch;
+import Data.Topology;
+
+import java.util.List;
+
+// Routers on a shared segment must route only the frames addressed to them, not the copies a
+// switch floods to every port. Run with assertions enabled (-ea).
+public class RouterForwardingTest {
+    public static void main(String[] args) {
+        oneRouterOnSegment();
+        twoRoutersOnSegment();
+        acrossTransitSegment();
+        System.out.println("RouterForwardingTest passed");
+    }
+
+    // c1, c2 and r1 on s1, c1 sends to c2: r1 sees the flood and must leave it alone
+    private static void oneRouterOnSegment() {
+        Topology topology = new Topology();
+        Switch s1 = add(topology, new Switch("S1", "10.0.0.100"));
+        Computer c1 = add(topology, new Computer("C1", "10.0.0.1", s1));
+        Computer c2 = add(topology, new Computer("C2", "10.0.0.2", s1));
+        Router r1 = add(topology, new Router("R1", "10.0.0.254"));
+        r1.setLinkedDevices(List.of(s1));
+        r1.addRoute(0x0A000000, 8, s1);
+
+        Simulator simulator = new Simulator(topology);
+        simulator.send(c1, c2, 100, 0);
+        simulator.run();
+        assertCounts(simulator, 1, 1, 0);
+    }
+
+    // Two routers pointing back into the segment would bounce each other's copies until maxHops
+    private static void twoRoutersOnSegment() {
+        Topology topology = new Topology();
+        Switch s1 = add(topology, new Switch("S1", "10.0.0.100"));
+        Computer c1 = add(topology, new Computer("C1", "10.0.0.1", s1));
+        Computer c2 = add(topology, new Computer("C2", "10.0.0.2", s1));
+        Router r1 = add(topology, new Router("R1", "10.0.0.253"));
+        Router r2 = add(topology, new Router("R2", "10.0.0.254"));
+        r1.setLinkedDevices(List.of(s1));
+        r2.setLinkedDevices(List.of(s1));
+        r1.addRoute(0x0A000000, 8, s1);
+        r2.addRoute(0x0A000000, 8, s1);
+
+        Simulator simulator = new Simulator(topology);
+        simulator.send(c1, c2, 100, 0);
+        simulator.send(c2, c1, 100, 1_000_000);
+        simulator.run();
+        assertCounts(simulator, 2, 2, 0);
+        assert simulator.getTransmittedPackets(r1, s1) == 0 : "R1 forwarded a frame not addressed to it";
+        assert simulator.getTransmittedPackets(r2, s1) == 0 : "R2 forwarded a frame not addressed to it";
+    }
+
+    // c1 - s1 - r1 - s2 - r2 - s3 - c3: c1 addresses r1, r1 hands over to r2 on s2, r2 to c3
+    private static void acrossTransitSegment() {
+        Topology topology = new Topology();
+        Switch s1 = add(topology, new Switch("S1", "10.1.0.100"));
+        Switch s2 = add(topology, new Switch("S2", "10.2.0.100"));
+        Switch s3 = add(topology, new Switch("S3", "10.3.0.100"));
+        Computer c1 = add(topology, new Computer("C1", "10.1.0.1", s1));
+        Computer c3 = add(topology, new Computer("C3", "10.3.0.1", s3));
+        Router r1 = add(topology, new Router("R1", "10.2.0.1"));
+        Router r2 = add(topology, new Router("R2", "10.2.0.2"));
+        r1.setLinkedDevices(List.of(s1, s2));
+        r2.setLinkedDevices(List.of(s2, s3));
+        r1.addRoute(0x0A010000, 16, s1);
+        r1.addRoute(0x0A030000, 16, s2);
+        r2.addRoute(0x0A030000, 16, s3);
+        r2.addRoute(0x0A010000, 16, s2);
+
+        Simulator simulator = new Simulator(topology);
+        simulator.send(c1, c3, 100, 0);
+        simulator.send(c3, c1, 100, 1_000_000);
+        simulator.run();
+        assertCounts(simulator, 2, 2, 0);
+        assert simulator.getTransmittedPackets(r1, s2) == 1 : "R1 should have sent one frame onto S2";
+        assert simulator.getTransmittedPackets(r2, s2) == 1 : "R2 should have sent one frame onto S2";
+    }
+
+    private static <T extends Device> T add(Topology topology, T device) {
+        topology.addDevice(device);
+        return device;
+    }
+
+    private static void assertCounts(Simulator simulator, long sent, long delivered, long dropped) {
+        String counts = "sent " + simulator.getPacketsSent() + " delivered " + simulator.getPacketsDelivered()
+                + " dropped " + simulator.getPacketsDropped();
+        assert simulator.getPacketsSent() == sent : counts;
+        assert simulator.getPacketsDelivered() == delivered : counts;
+        assert simulator.getPacketsDropped() == dropped : counts;
+    }
+}
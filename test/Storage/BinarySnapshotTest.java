@@ -0,0 +1,87 @@
+package Storage;
+
+import Data.Computer;
+import Data.Router;
+import Data.Switch;
+import Data.Topology;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+// Reads back damaged binary snapshots: every one must fail with an IOException, the only
+// failure the loader falls back to the text file on. Run with assertions enabled (-ea).
+public class BinarySnapshotTest {
+    public static void main(String[] args) throws Exception {
+        Path file = Files.createTempFile("topology", BinaryTopologyFormat.EXTENSION);
+        try {
+            Topology topology = new Topology();
+            Switch s1 = new Switch("S1", "10.0.0.100");
+            Router r1 = new Router("R1", "10.0.0.254");
+            topology.addDevice(s1);
+            topology.addDevice(r1);
+            Computer c1 = new Computer("C1", "10.0.0.1", s1);
+            Computer c2 = new Computer("C2", "not an ip", s1);
+            topology.addDevice(c1);
+            topology.addDevice(c2);
+            r1.setLinkedDevices(List.of(s1));
+            r1.addRoute(0x0A000000, 8, s1);
+
+            BinaryTopologyFormat format = new BinaryTopologyFormat();
+            format.write(topology, file);
+            byte[] valid = Files.readAllBytes(file);
+            Topology loaded = format.read(file);
+            assert loaded.size() == 4 : "Read back " + loaded.size() + " devices";
+            assert ((Router) loaded.findDeviceByName("R1")).getRouteCount() == 1 : "Route not read back";
+
+            for (int cut = 0; cut < valid.length; cut++) {
+                Files.write(file, Arrays.copyOf(valid, cut));
+                assertCorrupt(format, file, "truncated at " + cut);
+            }
+
+            // The first device's name id, just after the header and the string table
+            byte[] badName = valid.clone();
+            ByteBuffer.wrap(badName).putInt(nameIdOffset(valid), 1000);
+            Files.write(file, badName);
+            assertCorrupt(format, file, "name id out of range");
+
+            // The first string's length, past the end of the file
+            byte[] badLength = valid.clone();
+            ByteBuffer.wrap(badLength).putInt(20, valid.length);
+            Files.write(file, badLength);
+            assertCorrupt(format, file, "string length out of range");
+
+            // The last route's next hop, pointed at C1 which R1 is not linked to
+            byte[] unlinked = valid.clone();
+            ByteBuffer.wrap(unlinked).putInt(valid.length - 4, topology.indexOf(c1));
+            Files.write(file, unlinked);
+            loaded = format.read(file);
+            assert ((Router) loaded.findDeviceByName("R1")).getRouteCount() == 0 : "Kept a route through C1";
+        } finally {
+            Files.deleteIfExists(file);
+        }
+        System.out.println("BinarySnapshotTest passed");
+    }
+
+    private static int nameIdOffset(byte[] snapshot) {
+        ByteBuffer buffer = ByteBuffer.wrap(snapshot);
+        int stringCount = buffer.getInt(12);
+        int offset = 20;
+        for (int s = 0; s < stringCount; s++) {
+            offset += 4 + buffer.getInt(offset);
+        }
+        return offset + 1; // after the type byte
+    }
+
+    private static void assertCorrupt(BinaryTopologyFormat format, Path file, String what) {
+        try {
+            format.read(file);
+            throw new AssertionError("Read a snapshot with " + what);
+        } catch (IOException e) {
+            // Expected
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package Storage;
+
+import Data.Device;
+import Data.Router;
+import Data.Switch;
+import Data.Topology;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+// Saves a topology with routers through the slotted users_data file, twice so the second save
+// writes in place, and checks the routes read back. Run with assertions enabled (-ea).
+public class RouterRoundTripTest {
+    public static void main(String[] args) throws Exception {
+        Path file = Files.createTempFile("topology", ".txt");
+        try {
+            Topology topology = new Topology();
+            Switch s1 = new Switch("S1", "10.0.0.1");
+            Switch s2 = new Switch("S2", "10.0.0.2");
+            Router r1 = new Router("R1", "10.0.0.254");
+            topology.addDevice(s1);
+            topology.addDevice(s2);
+            topology.addDevice(r1);
+            r1.setLinkedDevices(List.of(s1, s2));
+            r1.addRoute(0x0A000000, 8, s1);
+            r1.addRoute(0xC0A80000, 16, s2);
+
+            IncrementalTopologyFile slotted = new IncrementalTopologyFile();
+            topology.addListener(slotted);
+            save(file, topology, slotted); // full rewrite
+            assertRoutes(file, 2);
+
+            r1.addRoute(0xAC100000, 12, s2);
+            save(file, topology, slotted); // in place
+            assertRoutes(file, 3);
+
+            r1.setLinkedDevices(List.of(s1)); // drops the routes through S2
+            save(file, topology, slotted);
+            assertRoutes(file, 1);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+        System.out.println("RouterRoundTripTest passed");
+    }
+
+    private static void save(Path file, Topology topology, IncrementalTopologyFile slotted) {
+        WriteBehindSaver saver = new WriteBehindSaver(() -> file, () -> slotted.capture(topology, null),
+                e -> {
+                    throw new AssertionError("Save failed", e);
+                }, 0);
+        saver.markDirty();
+        saver.close();
+    }
+
+    private static void assertRoutes(Path file, int expected) throws Exception {
+        TopologyReader reader = new TopologyReader();
+        Topology loaded = reader.read(file, null);
+        Device router = loaded.findDeviceByName("R1");
+        assert router instanceof Router : "R1 did not load as a router";
+        int routes = ((Router) router).getRouteCount();
+        assert routes == expected : "Expected " + expected + " routes, read " + routes + ", warnings " + reader.getWarnings();
+        assert reader.getWarnings().isEmpty() : "Warnings " + reader.getWarnings();
+    }
+}